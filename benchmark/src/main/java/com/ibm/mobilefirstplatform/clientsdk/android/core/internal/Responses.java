@@ -0,0 +1,69 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+
+/**
+ * Builds the in-memory responses and bodies shared by the benchmarks.
+ */
+final class Responses {
+
+    static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final Request REQUEST = new Request.Builder().url("http://www.example.com/api/v1/items").build();
+
+    private Responses() {
+    }
+
+    /**
+     * Returns a JSON object of about the given size, in UTF-8.
+     *
+     * @param size the approximate size of the body in bytes
+     * @return the body
+     */
+    static byte[] jsonBody(int size) {
+        StringBuilder json = new StringBuilder(size + 64).append("{\"items\":[");
+        for (int i = 0; json.length() < size; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i).append(",\"name\":\"item ").append(i).append("\",\"price\":").append(i * 0.25).append('}');
+        }
+        return json.append("]}").toString().getBytes(okhttp3.internal.Util.UTF_8);
+    }
+
+    /**
+     * Returns a 200 response whose body has not been read yet. A body can only be read once, so a new response
+     * is needed for every invocation.
+     *
+     * @param body the body of the response
+     * @return the response
+     */
+    static Response newResponse(byte[] body) {
+        return new Response.Builder()
+                .request(REQUEST)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .header("Content-Type", JSON.toString())
+                .body(ResponseBody.create(JSON, body))
+                .build();
+    }
+}
@@ -96,5 +96,37 @@ public class AuthorizationPreferencesTests extends InstrumentationTestCase {
 	}
 
 
+	//in this test we check that the authorization header follows the tokens and the policy without being rebuilt by the caller
+	public void testAuthorizationHeaderFollowsTokens() throws Exception {
+
+		preferences.persistencePolicy.set(MCAAuthorizationManager.PersistencePolicy.ALWAYS);
+		preferences.accessToken.clear();
+		preferences.idToken.clear();
+		Assert.assertNull(preferences.getAuthorizationHeader());
+
+		preferences.accessToken.set("access");
+		Assert.assertNull(preferences.getAuthorizationHeader());
+
+		preferences.idToken.set("id");
+		Assert.assertEquals("Bearer access id", preferences.getAuthorizationHeader());
+
+		//the saved tokens are only used while the policy allows it
+		preferences.flush();
+		AuthorizationManagerPreferences preferences6 = new AuthorizationManagerPreferences(getInstrumentation().getTargetContext());
+		Assert.assertEquals("Bearer access id", preferences6.getAuthorizationHeader());
+		preferences6.persistencePolicy.set(MCAAuthorizationManager.PersistencePolicy.NEVER);
+		Assert.assertNull(preferences6.getAuthorizationHeader());
+
+		//the tokens are kept in runtime when they are no longer saved on local storage
+		preferences.persistencePolicy.set(MCAAuthorizationManager.PersistencePolicy.NEVER);
+		preferences.accessToken.updateStateByPolicy();
+		preferences.idToken.updateStateByPolicy();
+		Assert.assertEquals("Bearer access id", preferences.getAuthorizationHeader());
+
+		preferences.idToken.clear();
+		Assert.assertNull(preferences.getAuthorizationHeader());
+	}
+
+
 
 }
\ No newline at end of file
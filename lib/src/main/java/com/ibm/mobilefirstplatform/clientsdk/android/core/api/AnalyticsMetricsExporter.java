@@ -0,0 +1,90 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+
+/**
+ * Forwards request metrics to the analytics {@link Logger}, which sends them to the analytics service
+ * along with the other analytics data of the app. The snapshots are sent in batches, one analytics entry
+ * for every batch, so that exporting many endpoints does not create as many entries.
+ */
+public class AnalyticsMetricsExporter implements MetricsExporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 20;
+
+    static final String MESSAGE = "Request metrics";
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + AnalyticsMetricsExporter.class.getSimpleName());
+
+    private final int batchSize;
+
+    public AnalyticsMetricsExporter() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize the maximum number of snapshots in each analytics entry
+     */
+    public AnalyticsMetricsExporter(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void export(List<RequestMetricsSnapshot> snapshots) {
+        for (int start = 0; start < snapshots.size(); start += batchSize) {
+            List<RequestMetricsSnapshot> batch = snapshots.subList(start, Math.min(start + batchSize, snapshots.size()));
+            try {
+                logger.analytics(MESSAGE, toJSON(batch));
+            } catch (JSONException e) {
+                logger.warn("Could not export request metrics. Error: " + e.getMessage());
+            }
+        }
+    }
+
+    static JSONObject toJSON(List<RequestMetricsSnapshot> batch) throws JSONException {
+        JSONArray metrics = new JSONArray();
+        for (RequestMetricsSnapshot snapshot : batch) {
+            JSONObject entry = new JSONObject();
+            entry.put("host", snapshot.getHost());
+            if (snapshot.getEndpoint() != null) {
+                entry.put("endpoint", snapshot.getEndpoint());
+            }
+            entry.put("requests", snapshot.getRequestCount());
+            entry.put("errors", snapshot.getErrorCount());
+            entry.put("bytesSent", snapshot.getBytesSent());
+            entry.put("bytesReceived", snapshot.getBytesReceived());
+            entry.put("bytesPerSecond", snapshot.getBytesPerSecond());
+            entry.put("p50", snapshot.getLatencyP50());
+            entry.put("p95", snapshot.getLatencyP95());
+            entry.put("p99", snapshot.getLatencyP99());
+            entry.put("max", snapshot.getMaxLatency());
+            entry.put("mean", snapshot.getMeanLatency());
+            entry.put("startTime", snapshot.getStartTime());
+            entry.put("endTime", snapshot.getEndTime());
+            metrics.put(entry);
+        }
+        return new JSONObject().put("metrics", metrics);
+    }
+}
@@ -18,6 +18,7 @@ import android.content.Context;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.AbstractClient;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.DummyAuthorizationManager;
 
+import java.io.File;
 import java.net.CookiePolicy;
 import java.net.MalformedURLException;
 
@@ -43,6 +44,9 @@ public class BMSClient extends AbstractClient {
     private String bluemixRegionSuffix = null;
     private String defaultProtocol = HTTPS_SCHEME;
 
+    private static final String RESPONSE_CACHE_DIRECTORY = "bms_response_cache";
+    private static final String OFFLINE_QUEUE_DIRECTORY = "bms_offline_queue";
+
     protected static AbstractClient instance = null;
 
     /**
@@ -101,6 +105,30 @@ public class BMSClient extends AbstractClient {
 		cookieManager.setCookiePolicy(CookiePolicy.ACCEPT_ALL);
 	}
 
+    /**
+     * Enables a disk cache for the responses to GET requests, stored in the cache directory of the app.
+     * Responses are cached and revalidated according to their Cache-Control, ETag and Last-Modified headers,
+     * or to the {@link CachePolicy} of each request. Responses to authorized requests are cached separately for each user.
+     *
+     * @param context Android application context
+     * @param maxSize the maximum size of the cache, in bytes
+     */
+    public void enableResponseCache(Context context, long maxSize) {
+        enableResponseCache(new File(context.getCacheDir(), RESPONSE_CACHE_DIRECTORY), maxSize);
+    }
+
+    /**
+     * Enables the offline queue, stored in the files directory of the app so that the system does not remove it.
+     * Requests set with {@link Request#setQueuedWhenOffline(boolean)} that cannot reach the server are stored,
+     * and sent again in order when the device connects, even after the app was restarted.
+     * The app needs the android.permission.ACCESS_NETWORK_STATE permission.
+     *
+     * @param context Android application context
+     */
+    public void enableOfflineQueue(Context context) {
+        enableOfflineQueue(context, new File(context.getFilesDir(), OFFLINE_QUEUE_DIRECTORY));
+    }
+
     /**
      * @deprecated As of release 2.2.0. if you use the new initialize methoud this function return null.
      * Will be removed as release 3.x
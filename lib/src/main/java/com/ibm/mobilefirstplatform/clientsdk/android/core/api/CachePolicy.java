@@ -0,0 +1,45 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * Determines how a GET {@link Request} uses the response cache enabled with
+ * {@link BMSClient#enableResponseCache(android.content.Context, long)}.
+ * When the response cache is not enabled, every policy goes to the network.
+ */
+public enum CachePolicy {
+
+    /**
+     * Follow the caching headers of the server. Fresh cached responses are used as they are,
+     * and stale ones are revalidated with their ETag or Last-Modified validators.
+     */
+    DEFAULT,
+
+    /**
+     * Always get the response from the network. The response is still stored in the cache for later requests.
+     */
+    NETWORK_ONLY,
+
+    /**
+     * Use a cached response whenever there is one, even if it is stale. Only go to the network if nothing is cached.
+     */
+    CACHE_FIRST,
+
+    /**
+     * Deliver a cached response immediately, even if it is stale, and refresh the cache from the network in the background.
+     * If nothing is cached, the response comes from the network.
+     */
+    STALE_WHILE_REVALIDATE
+}
@@ -0,0 +1,122 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * The thresholds of the per-host circuit breakers, enabled with {@link BMSClient#setCircuitBreakerConfig(CircuitBreakerConfig)}.
+ *
+ * Each host has a window of the outcomes of its most recent requests. A request fails when no response is received,
+ * or when the response has a 5xx status. It is slow when the server took longer than the slow call duration to respond.
+ * Once the window holds the minimum number of requests, the circuit opens when the rate of failed requests
+ * or the rate of slow requests reaches its threshold.
+ */
+public class CircuitBreakerConfig {
+
+    private float failureRateThreshold = 0.5f;
+    private float slowCallRateThreshold = 1.0f;
+    private long slowCallDuration = 10000;
+    private int windowSize = 20;
+    private int minimumCalls = 10;
+    private long openDuration = 30000;
+    private int halfOpenCalls = 3;
+
+    /**
+     * @return the rate of failed requests that opens the circuit, between 0 and 1. The default is 0.5.
+     */
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(float failureRateThreshold) {
+        this.failureRateThreshold = checkRate(failureRateThreshold);
+    }
+
+    /**
+     * @return the rate of slow requests that opens the circuit, between 0 and 1. The default is 1,
+     * so the circuit only opens for slow requests when all the requests in the window are slow.
+     */
+    public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public void setSlowCallRateThreshold(float slowCallRateThreshold) {
+        this.slowCallRateThreshold = checkRate(slowCallRateThreshold);
+    }
+
+    /**
+     * @return the time after which a response counts as slow, in milliseconds. The default is 10 seconds.
+     */
+    public long getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    public void setSlowCallDuration(long slowCallDuration) {
+        this.slowCallDuration = slowCallDuration;
+    }
+
+    /**
+     * @return the number of most recent requests whose outcomes are kept for each host. The default is 20.
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("The window size must be at least 1: " + windowSize);
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return the number of requests the window must hold before the rates are evaluated. The default is 10.
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = Math.max(minimumCalls, 1);
+    }
+
+    /**
+     * @return how long the circuit stays open before trial requests are allowed, in milliseconds. The default is 30 seconds.
+     */
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * @return the number of trial requests that must succeed to close the circuit again. The default is 3.
+     */
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    public void setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = Math.max(halfOpenCalls, 1);
+    }
+
+    private static float checkRate(float rate) {
+        if (rate <= 0 || rate > 1) {
+            throw new IllegalArgumentException("A rate threshold must be greater than 0 and at most 1: " + rate);
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * Notified when the circuit breaker of a host changes state, for example so that the app can show
+ * that a service is unavailable instead of waiting for requests to time out.
+ * Listeners are added with {@link BMSClient#addCircuitBreakerListener(CircuitBreakerListener)}.
+ */
+public interface CircuitBreakerListener {
+
+    /**
+     * Called on the thread that completed the request which caused the change.
+     *
+     * @param host          the host whose circuit breaker changed state
+     * @param previousState the previous state
+     * @param newState      the new state
+     */
+    void onStateChange(String host, CircuitBreakerState previousState, CircuitBreakerState newState);
+}
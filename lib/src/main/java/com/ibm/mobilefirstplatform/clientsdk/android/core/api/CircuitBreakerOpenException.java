@@ -0,0 +1,38 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import java.io.IOException;
+
+
+/**
+ * Reported to {@link ResponseListener#onFailure(Response, Throwable, org.json.JSONObject)} when a request is not sent
+ * because the circuit breaker of its host is open.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    private final String host;
+
+    public CircuitBreakerOpenException(String host) {
+        super("The circuit breaker for " + host + " is open, so the request was not sent");
+        this.host = host;
+    }
+
+    /**
+     * @return the host whose circuit breaker is open
+     */
+    public String getHost() {
+        return host;
+    }
+}
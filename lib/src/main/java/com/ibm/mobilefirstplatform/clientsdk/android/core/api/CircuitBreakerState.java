@@ -0,0 +1,38 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * The state of the circuit breaker of a host, enabled with {@link BMSClient#setCircuitBreakerConfig(CircuitBreakerConfig)}.
+ */
+public enum CircuitBreakerState {
+
+    /**
+     * Requests to the host are sent normally, and their outcomes are recorded.
+     */
+    CLOSED,
+
+    /**
+     * Too many recent requests to the host failed or were slow. Requests fail right away with a
+     * {@link CircuitBreakerOpenException}, without being sent, until the open duration has passed.
+     */
+    OPEN,
+
+    /**
+     * The open duration has passed, and a few trial requests are sent to find out whether the host has recovered.
+     * If they all succeed, the circuit closes. If one of them fails, it opens again.
+     */
+    HALF_OPEN
+}
@@ -0,0 +1,108 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import okhttp3.internal.http.HttpDate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+
+/**
+ * The default {@link RetryPolicy}. It retries requests that failed without a response, such as timeouts and
+ * lost connections, and requests that received a 429 (Too Many Requests), 503 (Service Unavailable) or
+ * 504 (Gateway Timeout) response.
+ *
+ * Before retry number n, it waits a random time between 0 and <code>initialDelay * 2^n</code>, capped at the
+ * maximum delay. The random jitter spreads out the retries of clients that failed at the same time.
+ * When the response has a <code>Retry-After</code> header, the request is retried after the time the server asked for,
+ * or not at all if that is longer than the maximum delay.
+ */
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    public static final long DEFAULT_INITIAL_DELAY = 500;
+    public static final long DEFAULT_MAX_DELAY = 30000;
+
+    private static final String RETRY_AFTER = "Retry-After";
+    private static final Random random = new Random();
+
+    private final long initialDelay;
+    private final long maxDelay;
+
+    /**
+     * Creates a policy with an initial delay of 500 milliseconds and a maximum delay of 30 seconds.
+     */
+    public ExponentialBackoffRetryPolicy() {
+        this(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param initialDelay the upper bound of the delay before the first retry, in milliseconds
+     * @param maxDelay     the upper bound of any delay, in milliseconds
+     */
+    public ExponentialBackoffRetryPolicy(long initialDelay, long maxDelay) {
+        if (initialDelay < 0 || maxDelay < 0) {
+            throw new IllegalArgumentException("Retry delays cannot be negative");
+        }
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    @Override
+    public long getRetryDelay(int retryCount, Response response, Throwable error) {
+        if (response != null && !isRetryableStatus(response.getStatus())) {
+            return NO_RETRY;
+        }
+
+        long retryAfter = response != null ? getRetryAfter(response) : -1;
+        if (retryAfter >= 0) {
+            return retryAfter <= maxDelay ? retryAfter : NO_RETRY;
+        }
+
+        // Shifting by more than 30 bits could overflow, and the delay is capped long before that anyway
+        long ceiling = Math.min(maxDelay, initialDelay << Math.min(retryCount, 30));
+        return (long)(random.nextDouble() * ceiling);
+    }
+
+    /**
+     * @param status the status of a failed response
+     * @return true if a request that received a response with the given status can be retried
+     */
+    protected boolean isRetryableStatus(int status) {
+        return status == 429 || status == 503 || status == 504;
+    }
+
+    // Retry-After is either a number of seconds or an HTTP date. Returns -1 if there is no valid header.
+    private long getRetryAfter(Response response) {
+        Map<String, List<String>> headers = response.getHeaders();
+        if (headers == null) {
+            return -1;
+        }
+
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (RETRY_AFTER.equalsIgnoreCase(header.getKey()) && header.getValue() != null && !header.getValue().isEmpty()) {
+                String value = header.getValue().get(0).trim();
+                try {
+                    return Math.max(Long.parseLong(value) * 1000, 0);
+                } catch (NumberFormatException e) {
+                    Date date = HttpDate.parse(value);
+                    return date != null ? Math.max(date.getTime() - System.currentTimeMillis(), 0) : -1;
+                }
+            }
+        }
+        return -1;
+    }
+}
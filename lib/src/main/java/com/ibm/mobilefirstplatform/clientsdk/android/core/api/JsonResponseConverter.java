@@ -0,0 +1,62 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import android.util.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+
+/**
+ * <p>
+ * A {@link ResponseConverter} that reads a JSON body one token at a time with a {@link JsonReader}, without building
+ * the whole body as a String and a JSONObject first. Large arrays can be processed one element at a time, and objects
+ * can be mapped straight to POJOs.
+ * </p>
+ *
+ * <pre>
+ * List&lt;Item&gt; items = ((ResponseImpl) response).getResponseAs(new JsonResponseConverter&lt;List&lt;Item&gt;&gt;() {
+ *     protected List&lt;Item&gt; read(JsonReader reader) throws IOException {
+ *         List&lt;Item&gt; items = new ArrayList&lt;&gt;();
+ *         reader.beginArray();
+ *         while (reader.hasNext()) {
+ *             items.add(Item.read(reader));
+ *         }
+ *         reader.endArray();
+ *         return items;
+ *     }
+ * });
+ * </pre>
+ *
+ * @param <T> the type that the JSON body is converted into
+ */
+public abstract class JsonResponseConverter<T> implements ResponseConverter<T> {
+
+    @Override
+    public T convert(InputStream body, Charset charset) throws IOException {
+        return read(new JsonReader(new InputStreamReader(body, charset)));
+    }
+
+    /**
+     * Reads the JSON body from the given reader.
+     *
+     * @param reader the reader positioned before the first token of the body
+     * @return the converted body
+     * @throws IOException if the body could not be read, or is not the expected JSON
+     */
+    protected abstract T read(JsonReader reader) throws IOException;
+}
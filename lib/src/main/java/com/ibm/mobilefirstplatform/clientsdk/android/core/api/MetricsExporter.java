@@ -0,0 +1,31 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import java.util.List;
+
+
+/**
+ * Receives the request metrics periodically, once set with {@link BMSClient#setMetricsExporter(MetricsExporter, long)},
+ * for example to forward them to an analytics service. {@link AnalyticsMetricsExporter} forwards them to the analytics Logger.
+ */
+public interface MetricsExporter {
+
+    /**
+     * Called on a background thread with a snapshot of the metrics of every host and endpoint.
+     *
+     * @param snapshots the snapshots, one for each host and one for each of its endpoints
+     */
+    void export(List<RequestMetricsSnapshot> snapshots);
+}
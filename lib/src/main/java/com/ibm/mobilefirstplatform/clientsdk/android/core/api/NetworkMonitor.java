@@ -181,6 +181,29 @@ public class NetworkMonitor {
         return (activeNetworkInfo != null && activeNetworkInfo.isConnected());
     }
 
+    /**
+     * Check if the data sent over the current network connection may be charged for, as on a mobile data network.
+     *
+     * <p><b>Note:</b> Below Android API 16, only Wifi and Ethernet connections are considered unmetered.</p>
+     *
+     * @return Whether the current network connection is metered. Without a connection, this method returns true.
+     */
+    @TargetApi(16)
+    public boolean isActiveNetworkMetered() {
+        if (!isInternetAccessAvailable()) {
+            return true;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            ConnectivityManager connectivityManager
+                    = (ConnectivityManager)context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            return connectivityManager.isActiveNetworkMetered();
+        }
+
+        NetworkConnectionType connectionType = getCurrentConnectionType();
+        return connectionType != NetworkConnectionType.WIFI && connectionType != NetworkConnectionType.ETHERNET;
+    }
+
 
     protected TelephonyManager getTelephonyManager() {
         return this.telephonyManager;
@@ -22,7 +22,9 @@ public interface ProgressListener {
 
     /**
      * This method will be called repeatedly as a download or upload is in progress.
-     * Specifically, this method will be called once for every 2 KiB downloaded or uploaded.
+     * Specifically, this method will be called once when a download starts and then once for every chunk
+     * of up to 8 KiB received. Uploads call it at most once for every 64 KiB or 100 milliseconds,
+     * and once more when the upload completes.
      *
      * If the ProgressListener is used for downloading and the response does not include a
      * "Content-Length" header, the totalBytesExpected parameter will be 0.
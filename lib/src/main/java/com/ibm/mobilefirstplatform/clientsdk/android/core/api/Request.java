@@ -19,14 +19,19 @@ import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.BaseRequest;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ResponseImpl;
 import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.RefreshableAuthorizationManager;
 import okhttp3.Call;
+import okhttp3.Headers;
 import okhttp3.RequestBody;
 import okhttp3.Callback;
+import okio.Sink;
 
 import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
 import java.util.List;
 import java.util.Map;
 
@@ -38,6 +43,9 @@ public class Request extends BaseRequest {
 
     private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + Request.class.getSimpleName());
 
+    // Resumable uploads save their progress in this directory, under the cache directory of the app
+    private static final String RESUMABLE_UPLOADS_DIRECTORY = "bms_resumable_uploads";
+
     private int oauthFailCounter = 0; // Number of times the request failed authentication
     private RequestBody savedRequestBody; // Used to resend the original request after successful authentication
     private Context context;
@@ -78,6 +86,26 @@ public class Request extends BaseRequest {
         super(url, method, timeout, autoRetries);
     }
 
+    // Creates a request from a template, see RequestTemplate
+    Request(Request template, Headers headers) {
+        super(template, headers);
+    }
+
+    // Copies this request for a template, with its query parameters resolved into its URL
+    Request copyForTemplate() throws MalformedURLException {
+        Map<String, String> queryParameters = getQueryParameters();
+        String resolvedUrl = queryParameters.isEmpty() ? getUrl() : getURLWithQueryParameters(getUrl(), queryParameters).toString();
+
+        Request prototype = new Request(resolvedUrl, getMethod(), getTimeout(), numberOfRetries);
+        copySettingsTo(prototype);
+        prototype.setQueryParameters(null);
+        return prototype;
+    }
+
+    Headers getHeadersForTemplate() {
+        return buildHeaders();
+    }
+
     /**
      * Returns the URL for this resource request.
      *
@@ -220,7 +248,7 @@ public class Request extends BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param context           The context that will be passed to authentication listener.
@@ -241,7 +269,7 @@ public class Request extends BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param context           The context that will be passed to authentication listener.
@@ -263,7 +291,7 @@ public class Request extends BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param context           The context that will be passed to authentication listener.
@@ -285,7 +313,7 @@ public class Request extends BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param context           The context that will be passed to authentication listener.
@@ -307,7 +335,7 @@ public class Request extends BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param context           The context that will be passed to authentication listener.
@@ -320,6 +348,75 @@ public class Request extends BaseRequest {
         super.download(data, progressListener, responseListener);
     }
 
+    /**
+     * <p>
+     * Download this resource asynchronously, without a request body, streaming the response body into the given file.
+     * The body is written in chunks as it arrives, so it is never held in memory as a whole,
+     * which makes this method suitable for large downloads.
+     * The download progress will be monitored with a {@link ProgressListener}.
+     * </p>
+     *
+     * <p>
+     * <b>Note: </b>The response body is consumed by this method, so the {@link Response} passed to the
+     * <code>ResponseListener</code> has an empty body. If the download fails, the file is deleted.
+     * </p>
+     *
+     * @param context           The context that will be passed to authentication listener.
+     * @param destination       The file to write the response body to. Any existing content is replaced.
+     * @param progressListener  The listener that monitors the download progress
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when this request finishes
+     */
+    public void downloadTo(Context context, File destination, ProgressListener progressListener, ResponseListener responseListener) {
+        setContext(context);
+        super.downloadTo(destination, progressListener, responseListener);
+    }
+
+    /**
+     * <p>
+     * Download this resource asynchronously, without a request body, streaming the response body into the given stream.
+     * The body is written in chunks as it arrives, so it is never held in memory as a whole,
+     * which makes this method suitable for large downloads.
+     * The download progress will be monitored with a {@link ProgressListener}.
+     * </p>
+     *
+     * <p>
+     * <b>Note: </b>The response body is consumed by this method, so the {@link Response} passed to the
+     * <code>ResponseListener</code> has an empty body. The stream is flushed but not closed.
+     * </p>
+     *
+     * @param context           The context that will be passed to authentication listener.
+     * @param destination       The stream to write the response body to
+     * @param progressListener  The listener that monitors the download progress
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when this request finishes
+     */
+    public void downloadTo(Context context, OutputStream destination, ProgressListener progressListener, ResponseListener responseListener) {
+        setContext(context);
+        super.downloadTo(destination, progressListener, responseListener);
+    }
+
+    /**
+     * <p>
+     * Download this resource asynchronously, without a request body, streaming the response body into the given sink.
+     * The body is written in chunks as it arrives, so it is never held in memory as a whole,
+     * which makes this method suitable for large downloads.
+     * The download progress will be monitored with a {@link ProgressListener}.
+     * </p>
+     *
+     * <p>
+     * <b>Note: </b>The response body is consumed by this method, so the {@link Response} passed to the
+     * <code>ResponseListener</code> has an empty body. The sink is flushed but not closed.
+     * </p>
+     *
+     * @param context           The context that will be passed to authentication listener.
+     * @param destination       The sink to write the response body to
+     * @param progressListener  The listener that monitors the download progress
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when this request finishes
+     */
+    public void downloadTo(Context context, Sink destination, ProgressListener progressListener, ResponseListener responseListener) {
+        setContext(context);
+        super.downloadTo(destination, progressListener, responseListener);
+    }
+
     // endregion
 
 
@@ -368,6 +465,98 @@ public class Request extends BaseRequest {
     }
 
 
+    /**
+     * <p>
+     * Upload a file asynchronously, in chunks of 1 MiB that can be resumed after a failure.
+     * This method does not set any Content-Type header; if such a header is required, it must be set before calling this method.
+     * </p>
+     *
+     * <p>
+     * Every chunk is sent as a separate request with a <code>Content-Range: bytes first-last/total</code> header,
+     * and the server acknowledges it with a 308 or 2xx response. If the upload fails, calling this method again
+     * with the same file continues from the last acknowledged chunk, even after the app was restarted.
+     * </p>
+     *
+     * @param context           The context that will be passed to authentication listener.
+     * @param file              The file to upload
+     * @param progressListener  The listener that monitors the upload progress of the whole file
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when this upload finishes
+     */
+    public void uploadResumable(Context context, File file, ProgressListener progressListener, ResponseListener responseListener) {
+        uploadResumable(context, file, DEFAULT_UPLOAD_CHUNK_SIZE, progressListener, responseListener);
+    }
+
+    /**
+     * <p>
+     * Upload a file asynchronously, in chunks that can be resumed after a failure.
+     * This method does not set any Content-Type header; if such a header is required, it must be set before calling this method.
+     * </p>
+     *
+     * <p>
+     * Every chunk is sent as a separate request with a <code>Content-Range: bytes first-last/total</code> header,
+     * and the server acknowledges it with a 308 or 2xx response. If the upload fails, calling this method again
+     * with the same file continues from the last acknowledged chunk, even after the app was restarted.
+     * </p>
+     *
+     * @param context           The context that will be passed to authentication listener.
+     * @param file              The file to upload
+     * @param chunkSize         The maximum number of bytes sent with each request
+     * @param progressListener  The listener that monitors the upload progress of the whole file
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when this upload finishes
+     */
+    public void uploadResumable(Context context, File file, int chunkSize, ProgressListener progressListener, ResponseListener responseListener) {
+        setContext(context);
+        File stateDirectory = new File(context.getCacheDir(), RESUMABLE_UPLOADS_DIRECTORY);
+        super.uploadResumable(file, chunkSize, stateDirectory, progressListener, responseListener);
+    }
+
+    /**
+     * <p>
+     * Download this resource asynchronously into the given file, through partial files that let an interrupted download resume.
+     * </p>
+     *
+     * <p>
+     * The body is written to <code>destination.part</code>, and the ETag or Last-Modified header of the resource is saved
+     * next to it. If the download is interrupted, calling this method again with the same file only requests the missing bytes,
+     * even after the app was restarted. Once the partial file has the full length of the resource, it replaces the destination.
+     * </p>
+     *
+     * @param context           The context that will be passed to authentication listener.
+     * @param destination       The file to write the resource to
+     * @param progressListener  The listener that monitors the download progress
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when the download finishes
+     */
+    public void downloadResumable(Context context, File destination, ProgressListener progressListener, ResponseListener responseListener) {
+        downloadResumable(context, destination, 1, progressListener, responseListener);
+    }
+
+    /**
+     * <p>
+     * Download this resource asynchronously into the given file, through partial files that let an interrupted download resume.
+     * </p>
+     *
+     * <p>
+     * The body is written to <code>destination.part</code>, and the ETag or Last-Modified header of the resource is saved
+     * next to it. If the download is interrupted, calling this method again with the same file only requests the missing bytes,
+     * even after the app was restarted. Once the partial file has the full length of the resource, it replaces the destination.
+     * </p>
+     *
+     * <p>
+     * When the server accepts byte ranges, a resource of at least 1 MiB per range is split into up to
+     * <code>parallelRanges</code> ranges, which are downloaded in parallel and joined at the end.
+     * </p>
+     *
+     * @param context           The context that will be passed to authentication listener.
+     * @param destination       The file to write the resource to
+     * @param parallelRanges    The maximum number of byte ranges to download in parallel
+     * @param progressListener  The listener that monitors the download progress
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when the download finishes
+     */
+    public void downloadResumable(Context context, File destination, int parallelRanges, ProgressListener progressListener, ResponseListener responseListener) {
+        setContext(context);
+        super.downloadResumable(destination, parallelRanges, progressListener, responseListener);
+    }
+
     void setContext(Context context) {
         this.context = context;
     }
@@ -377,6 +566,32 @@ public class Request extends BaseRequest {
 
     @Override
     protected void sendRequest(final ProgressListener progressListener, final ResponseListener listener, final RequestBody requestBody) {
+        AuthorizationManager authorizationManager = BMSClient.getInstance().getAuthorizationManager();
+
+        // While the authorization is being obtained, or once it has expired, the cached header would be rejected,
+        // so the request waits for the new one. It only waits once, so tokens that still look expired are sent anyway.
+        if (authorizationManager instanceof RefreshableAuthorizationManager
+                && ((RefreshableAuthorizationManager) authorizationManager).isAuthorizationPending()) {
+            ((RefreshableAuthorizationManager) authorizationManager).awaitAuthorization(context, new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    sendAuthorizedRequest(progressListener, listener, requestBody);
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    if (listener != null) {
+                        listener.onFailure(response, t, extendedInfo);
+                    }
+                }
+            });
+            return;
+        }
+
+        sendAuthorizedRequest(progressListener, listener, requestBody);
+    }
+
+    private void sendAuthorizedRequest(ProgressListener progressListener, ResponseListener listener, RequestBody requestBody) {
         // Add authorization header if this request is being made to a protected resource
         AuthorizationManager authorizationManager = BMSClient.getInstance().getAuthorizationManager();
         String cachedAuthHeader = authorizationManager.getCachedAuthorizationHeader();
@@ -401,14 +616,11 @@ public class Request extends BaseRequest {
             // The request failed to complete, so no response was received from the server.
             @Override
             public void onFailure(Call call, IOException e){
-                // If auto-retries are enabled, and the request hasn't run out of retry attempts,
-                // then try to send the same request again. Otherwise, delegate to the user's ResponseListener.
-                // Note that we also retry requests that receive 504 responses, as seen in the onResponse() method.
-                if (numberOfRetries > 0) {
-                    numberOfRetries--;
-                    logger.debug("Resending " + call.request().method() +  " request to " + call.request().toString());
-                    sendOKHttpRequest(call.request(), getCallback(progressListener, responseListener));
-                } else {
+                // If auto-retries are enabled, and the retry policy allows it, then try to send the same request again.
+                // Otherwise, delegate to the user's ResponseListener.
+                // Note that failed responses, such as 504s, can be retried too, as seen in the onResponse() method.
+                if (!retry(call.request(), null, e, getCallback(progressListener, responseListener))
+                        && !queueWhenOffline(call.request(), e, responseListener)) {
                     if (responseListener != null) {
                         responseListener.onFailure(null, e, null);
                     }
@@ -419,68 +631,87 @@ public class Request extends BaseRequest {
             // This does not always indicate a successful response.
             @Override
             public void onResponse(Call call, okhttp3.Response response) throws IOException {
-                if (responseListener == null || response == null) {
+                if (response == null) {
                     return;
                 }
 
-                // If the request is made to a protected endpoint, see if we need to use AuthorizationManager
-                // to authenticate by resending the request with the correct authorization header.
-                AuthorizationManager authorizationManager = BMSClient.getInstance().getAuthorizationManager();
-
-                int responseCode = response.code();
-                Map<String, List<String>> responseHeaders = response.headers().toMultimap();
-                boolean isAuthorizationRequired = authorizationManager.isAuthorizationRequired(responseCode, responseHeaders);
-
-                if (isAuthorizationRequired) {
-
-                    // The first oauthFailCounter gets triggered by a 401 (the server is requesting authentication)
-                    // If the oauthFailCounter gets incremented again, then authentication has failed.
-                    if (oauthFailCounter++ < 2) {
-                        authorizationManager.obtainAuthorization(
-                                ctx,
-                                new ResponseListener() {
-                                    @Override
-                                    public void onSuccess(Response response) {
-                                        // this will take the auth hader that has been cached by obtainAuthorizationHeader
-                                        request.sendRequest(progressListener, responseListener, requestBody);
-                                    }
+                Response bmsResponse = null;
+                try {
+                    if (responseListener == null) {
+                        return;
+                    }
 
-                                    @Override
-                                    public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
-                                        responseListener.onFailure(response, t, extendedInfo);
+                    // If the request is made to a protected endpoint, see if we need to use AuthorizationManager
+                    // to authenticate by resending the request with the correct authorization header.
+                    AuthorizationManager authorizationManager = BMSClient.getInstance().getAuthorizationManager();
+
+                    int responseCode = response.code();
+                    Map<String, List<String>> responseHeaders = response.headers().toMultimap();
+                    boolean isAuthorizationRequired = authorizationManager.isAuthorizationRequired(responseCode, responseHeaders);
+
+                    if (isAuthorizationRequired) {
+
+                        // The first oauthFailCounter gets triggered by a 401 (the server is requesting authentication)
+                        // If the oauthFailCounter gets incremented again, then authentication has failed.
+                        if (oauthFailCounter++ < 2) {
+                            // The body of the challenge is not needed, so its connection can serve the authorization requests
+                            response.body().close();
+                            authorizationManager.obtainAuthorization(
+                                    ctx,
+                                    new ResponseListener() {
+                                        @Override
+                                        public void onSuccess(Response response) {
+                                            // this will take the auth hader that has been cached by obtainAuthorizationHeader
+                                            request.sendRequest(progressListener, responseListener, requestBody);
+                                        }
+
+                                        @Override
+                                        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                                            responseListener.onFailure(response, t, extendedInfo);
+                                        }
                                     }
-                                }
-                        );
-                    } else {
-                        responseListener.onFailure(new ResponseImpl(response), null, null);
-                    }
-                } else {
-
-                    // If the response is successful, delegate to the user's
-                    //      1) ResponseListener
-                    //      2) ProgressListener (if applicable)
-                    if (response.isSuccessful() || response.isRedirect()) {
-                        Response bmsResponse = new ResponseImpl(response);
-                        if (progressListener != null) {
-                            updateProgressListener(progressListener, bmsResponse);
+                            );
+                        } else {
+                            bmsResponse = withTimings(call, new ResponseImpl(response));
+                            responseListener.onFailure(bmsResponse, null, null);
                         }
-                        responseListener.onSuccess(bmsResponse);
-
-                        // If auto-retries are enabled, and the request hasn't run out of retry attempts,
-                        // then try to send the same request again. Otherwise, delegate to the user's ResponseListener.
-                    } else if (numberOfRetries > 0 && response.code() == 504) {
-                        numberOfRetries--;
-                        logger.debug("Resending " + request.getMethod() +  " request to " + request.getUrl());
-                        sendOKHttpRequest(response.request(), getCallback(progressListener, responseListener));
                     } else {
-                        responseListener.onFailure(new ResponseImpl(response), null, null);
+
+                        // If the response is successful, delegate to the user's
+                        //      1) ResponseListener
+                        //      2) ProgressListener (if applicable)
+                        if (response.isSuccessful() || response.isRedirect()) {
+                            try {
+                                bmsResponse = withTimings(call, createSuccessResponse(response, progressListener));
+                            } catch (IOException e) {
+                                responseListener.onFailure(null, e, null);
+                            }
+                            if (bmsResponse != null) {
+                                responseListener.onSuccess(bmsResponse);
+                            }
+
+                            // If auto-retries are enabled, and the retry policy allows it, then try to send the same request again.
+                            // Otherwise, delegate to the user's ResponseListener.
+                        } else if (!retry(call.request(), response, null, getCallback(progressListener, responseListener))) {
+                            bmsResponse = withTimings(call, new ResponseImpl(response));
+                            responseListener.onFailure(bmsResponse, null, null);
+                        }
                     }
+                } finally {
+                    releaseResponse(response, bmsResponse);
                 }
-                response.body().close();
             }
         };
     }
 
+    @Override
+    protected BaseRequest copy(String method) {
+        Request copy = new Request(getUrl(), method, getTimeout(), numberOfRetries);
+        copySettingsTo(copy);
+        copy.setContext(context);
+        return copy;
+    }
+
     protected int getNumberOfRetries() {
         return numberOfRetries;
     }
@@ -0,0 +1,150 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * The aggregated latencies, error rate and throughput of the requests to a host, or to one endpoint of a host,
+ * since request metrics were enabled with {@link BMSClient#setRequestMetricsEnabled(boolean)} or last reset.
+ *
+ * Endpoints are the method and path of requests, where the path segments that look like identifiers, such as
+ * numbers, UUIDs and long hexadecimal strings, are replaced with <code>{id}</code>. Latencies are measured from the
+ * start of a request to the end of its response body, in milliseconds. A request counts as an error when it
+ * received no response, or a response with a 5xx status.
+ */
+public class RequestMetricsSnapshot {
+
+    private final String host;
+    private final String endpoint;
+    private final long requestCount;
+    private final long errorCount;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final long latencyP50;
+    private final long latencyP95;
+    private final long latencyP99;
+    private final long maxLatency;
+    private final long meanLatency;
+    private final long startTime;
+    private final long endTime;
+
+    public RequestMetricsSnapshot(String host, String endpoint, long requestCount, long errorCount, long bytesSent, long bytesReceived,
+                                  long latencyP50, long latencyP95, long latencyP99, long maxLatency, long meanLatency,
+                                  long startTime, long endTime) {
+        this.host = host;
+        this.endpoint = endpoint;
+        this.requestCount = requestCount;
+        this.errorCount = errorCount;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.latencyP50 = latencyP50;
+        this.latencyP95 = latencyP95;
+        this.latencyP99 = latencyP99;
+        this.maxLatency = maxLatency;
+        this.meanLatency = meanLatency;
+        this.startTime = startTime;
+        this.endTime = endTime;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the endpoint, such as <code>GET /users/{id}/orders</code>, or null for the metrics of the whole host
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the rate of requests that were errors, between 0 and 1
+     */
+    public double getErrorRate() {
+        return requestCount > 0 ? (double)errorCount / requestCount : 0;
+    }
+
+    /**
+     * @return the number of bytes of request body sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the number of bytes of response body received
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return the bytes sent and received per second, averaged over the time between {@link #getStartTime()} and {@link #getEndTime()}
+     */
+    public double getBytesPerSecond() {
+        long duration = endTime - startTime;
+        return duration > 0 ? (bytesSent + bytesReceived) * 1000.0 / duration : 0;
+    }
+
+    /**
+     * @return the median latency, in milliseconds
+     */
+    public long getLatencyP50() {
+        return latencyP50;
+    }
+
+    /**
+     * @return the 95th percentile of latencies, in milliseconds
+     */
+    public long getLatencyP95() {
+        return latencyP95;
+    }
+
+    /**
+     * @return the 99th percentile of latencies, in milliseconds
+     */
+    public long getLatencyP99() {
+        return latencyP99;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public long getMeanLatency() {
+        return meanLatency;
+    }
+
+    /**
+     * @return when the metrics started being aggregated, in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return when this snapshot was taken, in milliseconds since the epoch
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * Determines how soon a {@link Request} is sent when the concurrency limits set with
+ * {@link BMSClient#setMaxConcurrentRequests(int)} and {@link BMSClient#setMaxConcurrentRequestsPerHost(int)}
+ * are reached and requests have to wait.
+ * Waiting requests are sent in a weighted round robin, so that higher priorities go first
+ * without lower priorities waiting forever.
+ */
+public enum RequestPriority {
+
+    /**
+     * Requests that the user is waiting for. They get four turns for every two turns of normal requests.
+     */
+    INTERACTIVE,
+
+    /**
+     * The default priority.
+     */
+    NORMAL,
+
+    /**
+     * Requests that can wait, such as large downloads or prefetching. They get one turn for every two turns of normal requests.
+     */
+    BACKGROUND
+}
@@ -0,0 +1,133 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import android.content.Context;
+
+import java.net.MalformedURLException;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Headers;
+
+
+/**
+ * <p>
+ * An immutable snapshot of a configured {@link Request}, to send the same request many times, from any thread.
+ * The relative URL is converted to an absolute URL, the query parameters are added to the URL, and the headers
+ * are built once, when the template is created. Each call then starts from a new request that already has them.
+ * </p>
+ *
+ * <pre>
+ * Request request = new Request("/api/items", Request.GET);
+ * request.setQueryParameter("limit", "50");
+ * request.addHeader("Accept", "application/json");
+ * RequestTemplate items = new RequestTemplate(request);
+ *
+ * items.send(context, listener);
+ * </pre>
+ *
+ * <p>
+ * Changing the request afterwards does not change the template. The Authorization header is not part of the template,
+ * since it is added to each request when it is sent, from the current authorization of the
+ * {@link com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager}.
+ * </p>
+ */
+public final class RequestTemplate {
+
+    // Never sent nor changed, so it can be read from any thread
+    private final Request prototype;
+    private final Headers headers;
+
+    /**
+     * Creates a template with the URL, method, query parameters, headers, timeouts, and other settings of the given request.
+     *
+     * @param request The request to copy the settings of
+     * @throws MalformedURLException if the URL of the request, with its query parameters, is not a valid URL
+     */
+    public RequestTemplate(Request request) throws MalformedURLException {
+        prototype = request.copyForTemplate();
+        headers = request.getHeadersForTemplate().newBuilder().removeAll("Authorization").build();
+    }
+
+    /**
+     * Creates a new request from this template. It can be changed before it is sent, without changing the template.
+     *
+     * @return A new request with the settings of this template
+     */
+    public Request newRequest() {
+        return new Request(prototype, headers);
+    }
+
+    /**
+     * Sends a new request from this template asynchronously, without a request body.
+     *
+     * @param context   The context that will be passed to authentication listener.
+     * @param listener  The listener whose onSuccess or onFailure methods will be called when this request finishes
+     */
+    public void send(Context context, ResponseListener listener) {
+        newRequest().send(context, listener);
+    }
+
+    /**
+     * Sends a new request from this template asynchronously, with the given string as the request body.
+     * If the Content-Type header was not set, this method will set it to "text/plain".
+     *
+     * @param context   The context that will be passed to authentication listener.
+     * @param text      The text to put in the request body
+     * @param listener  The listener whose onSuccess or onFailure methods will be called when this request finishes
+     */
+    public void send(Context context, String text, ResponseListener listener) {
+        newRequest().send(context, text, listener);
+    }
+
+    /**
+     * Sends a new request from this template asynchronously, with the given byte array as the request body.
+     * This method does not set any Content-Type header; if such a header is required, it must be part of the template.
+     *
+     * @param context   The context that will be passed to authentication listener.
+     * @param data      The byte array to put in the request body
+     * @param listener  The listener whose onSuccess or onFailure methods will be called when this request finishes
+     */
+    public void send(Context context, byte[] data, ResponseListener listener) {
+        newRequest().send(context, data, listener);
+    }
+
+    /**
+     * Returns the URL of the requests, with the query parameters of the template.
+     *
+     * @return The absolute URL of the requests
+     */
+    public String getUrl() {
+        return prototype.getUrl();
+    }
+
+    /**
+     * Returns the HTTP method of the requests.
+     *
+     * @return The name of the HTTP method
+     */
+    public String getMethod() {
+        return prototype.getMethod();
+    }
+
+    /**
+     * Returns the headers of the requests, not including the Authorization header.
+     *
+     * @return A map with all the headers, and the corresponding values for each one
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers.toMultimap();
+    }
+}
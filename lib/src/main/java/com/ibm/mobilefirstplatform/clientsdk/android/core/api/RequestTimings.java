@@ -0,0 +1,153 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * How long each phase of a request took, whether it reused a connection, and how many bytes it transferred.
+ * Timings are available from {@link com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ResponseImpl#getTimings()},
+ * and are reported for every request to the listeners added with
+ * {@link BMSClient#addRequestTimingsListener(RequestTimingsListener)}.
+ *
+ * Durations are in milliseconds. A phase that did not happen, such as DNS lookup, connection and TLS handshake
+ * on a reused connection, has a duration of -1. When a request is redirected, or sent again on a new connection,
+ * the durations and bytes of all its attempts are added up.
+ */
+public class RequestTimings {
+
+    private final String method;
+    private final String url;
+    private final long dnsDuration;
+    private final long connectDuration;
+    private final long secureConnectDuration;
+    private final long requestDuration;
+    private final long timeToFirstByte;
+    private final long responseDuration;
+    private final long totalDuration;
+    private final boolean connectionReused;
+    private final long bytesSent;
+    private final long bytesReceived;
+    private final boolean failed;
+
+    public RequestTimings(String method, String url, long dnsDuration, long connectDuration, long secureConnectDuration,
+                          long requestDuration, long timeToFirstByte, long responseDuration, long totalDuration,
+                          boolean connectionReused, long bytesSent, long bytesReceived, boolean failed) {
+        this.method = method;
+        this.url = url;
+        this.dnsDuration = dnsDuration;
+        this.connectDuration = connectDuration;
+        this.secureConnectDuration = secureConnectDuration;
+        this.requestDuration = requestDuration;
+        this.timeToFirstByte = timeToFirstByte;
+        this.responseDuration = responseDuration;
+        this.totalDuration = totalDuration;
+        this.connectionReused = connectionReused;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+        this.failed = failed;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the time spent resolving the host name, or -1 if it was not resolved for this request
+     */
+    public long getDnsDuration() {
+        return dnsDuration;
+    }
+
+    /**
+     * @return the time spent opening the TCP connection, not including the TLS handshake, or -1 if a connection was reused
+     */
+    public long getConnectDuration() {
+        return connectDuration;
+    }
+
+    /**
+     * @return the time spent in the TLS handshake, or -1 if there was none
+     */
+    public long getSecureConnectDuration() {
+        return secureConnectDuration;
+    }
+
+    /**
+     * @return the time spent writing the request headers and body, or -1 if the request was not sent
+     */
+    public long getRequestDuration() {
+        return requestDuration;
+    }
+
+    /**
+     * @return the time from the end of the request to the first byte of the response, or -1 if there was no response
+     */
+    public long getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * @return the time spent reading the response headers and body, or -1 if the body was not read to the end yet
+     */
+    public long getResponseDuration() {
+        return responseDuration;
+    }
+
+    /**
+     * @return the time from the start of the request to its end, or to now if it has not ended yet
+     */
+    public long getTotalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * @return true if the request was sent on a connection opened by an earlier request
+     */
+    public boolean isConnectionReused() {
+        return connectionReused;
+    }
+
+    /**
+     * @return the number of bytes of request body sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * @return the number of bytes of response body received
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return true if the request ended without a complete response, for example because of a timeout or a lost connection
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url + ": dns " + dnsDuration + " ms, connect " + connectDuration + " ms, tls " + secureConnectDuration
+                + " ms, request " + requestDuration + " ms, first byte " + timeToFirstByte + " ms, response " + responseDuration
+                + " ms, total " + totalDuration + " ms" + (connectionReused ? ", reused connection" : "")
+                + ", sent " + bytesSent + " B, received " + bytesReceived + " B" + (failed ? ", failed" : "");
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * Notified of the {@link RequestTimings} of every request once it has ended, for example to build latency dashboards
+ * from real devices. Listeners are added with {@link BMSClient#addRequestTimingsListener(RequestTimingsListener)}.
+ */
+public interface RequestTimingsListener {
+
+    /**
+     * Called on the thread that completed the request, so it should return quickly.
+     *
+     * @param timings the timings of the request
+     */
+    void onRequestTimings(RequestTimings timings);
+}
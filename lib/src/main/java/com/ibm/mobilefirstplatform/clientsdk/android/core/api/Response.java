@@ -41,8 +41,9 @@ public interface Response {
 
     /**
      * This method parses the response body as a String.
-     * If this method is called, then subsequent calls to {@link #getResponseByteStream()} or {@link #getResponseBytes()}
-     * will return null unless the {@link Request} was made using a <code>download()</code> method.
+     * The body is only read once, the first time any of its forms is asked for, and the result is kept,
+     * so calling this method again or calling the other body accessors does not read it again.
+     * If {@link #getResponseByteStream()} was called first, the body belongs to that stream and is not available here.
      *
      * @return The body of the response as a String. Empty string if there is no body.
      */
@@ -50,8 +51,9 @@ public interface Response {
 
     /**
      * This method parses the response body as a JSONObject.
-     * If this method is called, then subsequent calls to {@link #getResponseByteStream()} or {@link #getResponseBytes()}
-     * will return null unless the {@link Request} was made using a <code>download()</code> method.
+     * The body is only read once, the first time any of its forms is asked for, and the result is kept,
+     * so calling this method again or calling the other body accessors does not read it again.
+     * If {@link #getResponseByteStream()} was called first, the body belongs to that stream and is not available here.
      *
      * @return The body of the response as a JSONObject.
      */
@@ -59,8 +61,9 @@ public interface Response {
 
     /**
      * This method gets the bytes of the response body.
-     * If this method is called, then subsequent calls to {@link #getResponseByteStream()} or {@link #getResponseBytes()}
-     * will return null unless the {@link Request} was made using a <code>download()</code> method.
+     * The body is only read once, the first time any of its forms is asked for, and the result is kept,
+     * so calling this method again or calling the other body accessors does not read it again.
+     * If {@link #getResponseByteStream()} was called first, the body belongs to that stream and is not available here.
      *
      * @return the bytes of the response body. Will be null if there is no body.
      */
@@ -68,11 +71,8 @@ public interface Response {
 
     /**
      * This method gets the response body as an input stream.
-     *
-     * <p>
-     * <b>Important: </b>This method may not be used for requests made with any of the {@link Request} download() methods,
-     * since the stream will already be closed. Use {@link Response#getResponseBytes()} instead.
-     * </p>
+     * If the body has not been read yet, the stream reads it directly from the network, and the caller is responsible
+     * for closing it. Otherwise, the stream reads the bytes that were already read from the body.
      *
      * @return The input stream representing the response body. Will be null if there is no body.
      */
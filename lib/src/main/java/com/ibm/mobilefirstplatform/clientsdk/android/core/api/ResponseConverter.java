@@ -0,0 +1,40 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+
+/**
+ * Converts the body of a {@link Response} into an object of type T, reading it as it arrives instead of holding
+ * the whole body in memory first. Converters are used with
+ * {@link com.ibm.mobilefirstplatform.clientsdk.android.core.internal.ResponseImpl#getResponseAs(ResponseConverter)},
+ * for example to map JSON to POJOs with {@link JsonResponseConverter} or with a JSON library of the app's choice.
+ *
+ * @param <T> the type that the body is converted into
+ */
+public interface ResponseConverter<T> {
+
+    /**
+     * Reads the body and converts it. The stream is closed by the caller once this method returns.
+     *
+     * @param body    the body of the response
+     * @param charset the charset of the body, from its Content-Type, or UTF-8 by default
+     * @return the converted body
+     * @throws IOException if the body could not be read or converted
+     */
+    T convert(InputStream body, Charset charset) throws IOException;
+}
@@ -0,0 +1,39 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * Decides whether a failed attempt of a {@link Request} is retried, and how long to wait before retrying it.
+ *
+ * The policy is only consulted for requests that still have automatic retries left, and that are safe to resend:
+ * requests with an idempotent method (GET, HEAD, PUT, DELETE, OPTIONS or TRACE), and requests with any other method,
+ * such as POST, that have an <code>Idempotency-Key</code> header or that failed before a connection to the server was made.
+ * Retries also count against the retry budget of the client, set with {@link BMSClient#setRetryBudget(double)}.
+ */
+public interface RetryPolicy {
+
+    /**
+     * Returned by {@link #getRetryDelay(int, Response, Throwable)} when the request must not be retried.
+     */
+    long NO_RETRY = -1;
+
+    /**
+     * @param retryCount the number of times the request was already retried, 0 for the first retry
+     * @param response   the response of the failed attempt, or null if no response was received
+     * @param error      the error of the failed attempt, or null if a response was received
+     * @return the time to wait before retrying, in milliseconds, or {@link #NO_RETRY} to report the failure
+     */
+    long getRetryDelay(int retryCount, Response response, Throwable error);
+}
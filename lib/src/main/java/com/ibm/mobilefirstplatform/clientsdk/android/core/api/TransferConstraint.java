@@ -0,0 +1,40 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+
+/**
+ * Determines on which networks a {@link Request} may be sent, so that large uploads and downloads,
+ * or background sync, do not use the user's mobile data.
+ * A request whose constraint is not met waits until the device connects to a network that meets it,
+ * and a request in progress is paused when the device leaves such a network, then sent again when it is back.
+ * Constraints only have an effect while they are enabled with {@link BMSClient#enableTransferConstraints(android.content.Context)}.
+ */
+public enum TransferConstraint {
+
+    /**
+     * The default. The request is sent on any network.
+     */
+    ANY,
+
+    /**
+     * The request is only sent on networks whose data is not charged for, as reported by {@link NetworkMonitor#isActiveNetworkMetered()}.
+     */
+    UNMETERED,
+
+    /**
+     * The request is only sent while the device is connected via Wifi.
+     */
+    WIFI_ONLY
+}
@@ -13,16 +13,40 @@
 
 package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
 
+import android.content.Context;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.AnalyticsMetricsExporter;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerState;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ExponentialBackoffRetryPolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.MetricsExporter;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestMetricsSnapshot;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestPriority;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimings;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimingsListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RetryPolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.TransferConstraint;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import java.io.File;
+import java.io.IOException;
 import java.net.CookieManager;
+import java.util.List;
+
+import okhttp3.Cache;
 
 
 public abstract class AbstractClient {
 
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + AbstractClient.class.getSimpleName());
+
     protected static final CookieManager cookieManager = new CookieManager();
 
 	protected AuthorizationManager authorizationManager = null;
     private int defaultTimeout = 20000;
+    private RetryPolicy retryPolicy = new ExponentialBackoffRetryPolicy();
 
 	/**
 	 * Gets active authorization manager.
@@ -58,6 +82,369 @@ public abstract class AbstractClient {
         defaultTimeout = timeout;
     }
 
+    /**
+     * Enables a disk cache for the responses to GET requests. Responses are cached and revalidated according to
+     * their Cache-Control, ETag and Last-Modified headers, or to the {@link com.ibm.mobilefirstplatform.clientsdk.android.core.api.CachePolicy}
+     * of each request. Responses to authorized requests are cached separately for each user.
+     *
+     * @param directory the directory to store the cached responses in. It should be used by nothing else.
+     * @param maxSize   the maximum size of the cache, in bytes
+     */
+    public void enableResponseCache(File directory, long maxSize) {
+        HttpClientManager.getInstance().setCache(new Cache(directory, maxSize));
+    }
+
+    /**
+     * Stops caching responses. The responses that were already cached are kept on disk.
+     */
+    public void disableResponseCache() {
+        HttpClientManager.getInstance().setCache(null);
+    }
+
+    /**
+     * Removes every response from the disk cache, if it is enabled. This also happens when the authorization data is cleared.
+     */
+    public void clearResponseCache() {
+        Cache cache = HttpClientManager.getInstance().getCache();
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.evictAll();
+        } catch (IOException e) {
+            logger.error("Failed to clear the response cache: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * @return the number of requests that were answered by the response cache, including those
+     * that the server confirmed as unchanged. Will be 0 when the response cache is not enabled.
+     */
+    public int getResponseCacheHitCount() {
+        Cache cache = HttpClientManager.getInstance().getCache();
+        return cache != null ? cache.hitCount() : 0;
+    }
+
+    /**
+     * @return the number of requests that the response cache could not answer, and that were sent to the network.
+     * Will be 0 when the response cache is not enabled.
+     */
+    public int getResponseCacheMissCount() {
+        Cache cache = HttpClientManager.getInstance().getCache();
+        return cache != null ? cache.requestCount() - cache.hitCount() : 0;
+    }
+
+    /**
+     * @return the policy that decides whether and when failed requests are retried
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy that decides whether and when failed requests with automatic retries are retried,
+     * unless the request sets its own. The default is an {@link ExponentialBackoffRetryPolicy}.
+     *
+     * @param retryPolicy the retry policy, or null to never retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Caps the automatic retries of all requests to the given ratio of the requests sent, with a small reserve
+     * for the first failures. Once the budget is exhausted, failures are reported to the listener without retrying,
+     * so that a failing backend does not receive several times its usual load. The default ratio is 0.2.
+     *
+     * @param ratio the maximum number of retries per request sent
+     */
+    public void setRetryBudget(double ratio) {
+        RetryBudget.getInstance().setRatio(ratio);
+    }
+
+    /**
+     * Enables the offline queue. Requests set with
+     * {@link BaseRequest#setQueuedWhenOffline(boolean)} that cannot reach the server are stored in the given directory,
+     * and sent again in order when the device connects. Requests stored by a previous run of the app are sent as well.
+     * The app needs the android.permission.ACCESS_NETWORK_STATE permission.
+     *
+     * @param context   Android application context
+     * @param directory the directory to store the requests in
+     */
+    public void enableOfflineQueue(Context context, File directory) {
+        OfflineQueue.enable(context, directory);
+    }
+
+    /**
+     * Disables the offline queue. The stored requests are kept, and sent when the queue is enabled again.
+     */
+    public void disableOfflineQueue() {
+        OfflineQueue.disable();
+    }
+
+    /**
+     * Sets how long a stored request is kept. Older requests are discarded instead of being sent. The default is 24 hours.
+     *
+     * @param maxAge the maximum age of a stored request, in milliseconds
+     */
+    public void setOfflineQueueMaxAge(long maxAge) {
+        OfflineQueue offlineQueue = OfflineQueue.getInstance();
+        if (offlineQueue != null) {
+            offlineQueue.setMaxAge(maxAge);
+        }
+    }
+
+    /**
+     * Sets how many stored requests are sent at the same time when the device connects. The default is 1,
+     * which sends each request only after the server has responded to the previous one.
+     *
+     * @param concurrency the maximum number of stored requests in flight, at least 1
+     */
+    public void setOfflineQueueConcurrency(int concurrency) {
+        OfflineQueue offlineQueue = OfflineQueue.getInstance();
+        if (offlineQueue != null) {
+            offlineQueue.setConcurrency(concurrency);
+        }
+    }
+
+    /**
+     * @return the number of stored requests waiting to be sent, or 0 if the offline queue is not enabled
+     */
+    public int getOfflineQueueSize() {
+        OfflineQueue offlineQueue = OfflineQueue.getInstance();
+        return offlineQueue != null ? offlineQueue.size() : 0;
+    }
+
+    /**
+     * Starts applying the transfer constraints set with {@link BaseRequest#setTransferConstraint(TransferConstraint)}.
+     * Requests whose constraint is not met by the current network wait until the device connects to a network that
+     * meets it, and requests in progress are paused when the device leaves such a network.
+     * The app needs the android.permission.ACCESS_NETWORK_STATE permission.
+     *
+     * @param context Android application context
+     */
+    public void enableTransferConstraints(Context context) {
+        TransferGate.enable(context);
+    }
+
+    /**
+     * Stops applying transfer constraints. The requests that were waiting for a network are sent right away.
+     */
+    public void disableTransferConstraints() {
+        TransferGate.disable();
+    }
+
+    /**
+     * Enables a circuit breaker for each host. While the circuit of a host is open, requests to it fail right away
+     * with a {@link com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerOpenException},
+     * instead of waiting for their timeouts. Setting a new configuration resets every circuit to closed.
+     * Circuit breakers are disabled by default.
+     *
+     * @param config the thresholds of the circuit breakers, or null to disable them
+     */
+    public void setCircuitBreakerConfig(CircuitBreakerConfig config) {
+        CircuitBreaker.setConfig(config);
+    }
+
+    /**
+     * @return the thresholds of the circuit breakers, or null if they are disabled
+     */
+    public CircuitBreakerConfig getCircuitBreakerConfig() {
+        return CircuitBreaker.getConfig();
+    }
+
+    /**
+     * @param host the host name, such as "myapp.mybluemix.net"
+     * @return the state of the circuit breaker of the host
+     */
+    public CircuitBreakerState getCircuitBreakerState(String host) {
+        return CircuitBreaker.getState(host);
+    }
+
+    /**
+     * Adds a listener that is notified whenever the circuit breaker of a host changes state.
+     *
+     * @param listener the listener to add
+     */
+    public void addCircuitBreakerListener(CircuitBreakerListener listener) {
+        CircuitBreaker.addListener(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeCircuitBreakerListener(CircuitBreakerListener listener) {
+        CircuitBreaker.removeListener(listener);
+    }
+
+    /**
+     * Adds a listener that is notified of the {@link RequestTimings} of every request once it has ended:
+     * how long DNS lookup, connection, TLS handshake, sending, waiting for the first byte and receiving took,
+     * whether the connection was reused, and how many bytes were sent and received.
+     *
+     * @param listener the listener to add
+     */
+    public void addRequestTimingsListener(RequestTimingsListener listener) {
+        RequestTimingsRecorder.addListener(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeRequestTimingsListener(RequestTimingsListener listener) {
+        RequestTimingsRecorder.removeListener(listener);
+    }
+
+    /**
+     * Enables or disables the aggregation of request metrics: latency percentiles, error rates and throughput,
+     * for each host and for each endpoint of a host. Recording a request takes no locks. Disabled by default.
+     *
+     * @param enabled whether request metrics are aggregated
+     */
+    public void setRequestMetricsEnabled(boolean enabled) {
+        RequestMetricsRegistry.getInstance().setEnabled(enabled);
+    }
+
+    /**
+     * @return a snapshot of the request metrics of each host, each followed by the snapshots of its endpoints
+     */
+    public List<RequestMetricsSnapshot> getRequestMetrics() {
+        return RequestMetricsRegistry.getInstance().snapshot();
+    }
+
+    /**
+     * Discards the request metrics aggregated so far.
+     */
+    public void resetRequestMetrics() {
+        RequestMetricsRegistry.getInstance().reset();
+    }
+
+    /**
+     * Forwards a snapshot of the request metrics to the given exporter at a fixed interval, for example an
+     * {@link AnalyticsMetricsExporter} to send them with the analytics data of the app. The metrics keep being
+     * aggregated across exports, until they are reset. Request metrics must be enabled separately.
+     *
+     * @param exporter the exporter, or null to stop exporting
+     * @param interval the time between exports, in milliseconds
+     */
+    public void setMetricsExporter(MetricsExporter exporter, long interval) {
+        RequestMetricsRegistry.getInstance().setExporter(exporter, interval);
+    }
+
+    /**
+     * Enables or disables the detection of leaked responses, for debug builds. A response leaks when the stream from
+     * {@link Response#getResponseByteStream()} is neither closed
+     * nor read to the end, which keeps its connection out of the pool. Leaks are logged with the URL of the request
+     * and the stack that sent it, once the response has been garbage collected. Disabled by default.
+     *
+     * @param enabled whether leaked responses are reported
+     */
+    public void setResponseLeakDetectionEnabled(boolean enabled) {
+        ResponseLeakDetector.getInstance().setEnabled(enabled);
+    }
+
+    /**
+     * Sets how many requests can run at the same time. When the limit is reached, requests wait in a queue
+     * for their {@link RequestPriority}. The default is 64.
+     *
+     * @param maxRequests the maximum number of concurrent requests, at least 1
+     */
+    public void setMaxConcurrentRequests(int maxRequests) {
+        RequestScheduler.getInstance().setMaxRequests(maxRequests);
+    }
+
+    /**
+     * Sets how many requests to the same host can run at the same time. When the limit is reached, requests to that
+     * host wait in a queue, while requests to other hosts can still run. The default is 5.
+     *
+     * @param maxRequestsPerHost the maximum number of concurrent requests per host, at least 1
+     */
+    public void setMaxConcurrentRequestsPerHost(int maxRequestsPerHost) {
+        RequestScheduler.getInstance().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    /**
+     * @return the number of requests that are running
+     */
+    public int getRunningRequestCount() {
+        return RequestScheduler.getInstance().getRunningCount();
+    }
+
+    /**
+     * @param priority the priority of the requests
+     * @return the number of requests with the given priority that are waiting to run
+     */
+    public int getQueuedRequestCount(RequestPriority priority) {
+        return RequestScheduler.getInstance().getQueuedCount(priority);
+    }
+
+    /**
+     * @param priority the priority of the requests
+     * @return the average time that requests with the given priority waited in the queue before running, in milliseconds
+     */
+    public long getAverageQueueWaitTime(RequestPriority priority) {
+        return RequestScheduler.getInstance().getAverageWaitTime(priority);
+    }
+
+    /**
+     * @param priority the priority of the requests
+     * @return the longest time that a request with the given priority waited in the queue before running, in milliseconds
+     */
+    public long getMaxQueueWaitTime(RequestPriority priority) {
+        return RequestScheduler.getInstance().getMaxWaitTime(priority);
+    }
+
+    /**
+     * Enables or disables the coalescing of identical GET requests. While enabled, which is the default,
+     * a GET request sent without a progress listener while an identical one is still in flight does not make a
+     * network call of its own. It waits for the response of the first request, which is delivered to both.
+     * Requests are identical when they have the same URL, query parameters and headers, including Authorization.
+     *
+     * @param enabled whether identical GET requests in flight share a single network call
+     */
+    public void setRequestCoalescingEnabled(boolean enabled) {
+        InFlightRequests.setEnabled(enabled);
+    }
+
+    /**
+     * Sets the maximum total size of the response bodies kept in memory by requests with a
+     * {@link BaseRequest#setMemoryCacheTimeToLive(long) memory cache time to live}.
+     * The least recently used responses are evicted first. The default is 1 MiB.
+     *
+     * @param maxSize the maximum size in bytes. 0 keeps no responses in memory.
+     */
+    public void setMemoryCacheMaxSize(long maxSize) {
+        ResponseMemoryCache.getInstance().setMaxSize(maxSize);
+    }
+
+    /**
+     * Removes every response kept in memory. This also happens when the authorization data is cleared.
+     */
+    public void clearMemoryCache() {
+        ResponseMemoryCache.getInstance().clear();
+    }
+
+    /**
+     * @return the number of requests that were answered by a response kept in memory
+     */
+    public long getMemoryCacheHitCount() {
+        return ResponseMemoryCache.getInstance().getHitCount();
+    }
+
+    /**
+     * @return the number of requests that could have been answered from memory, but found no response there
+     */
+    public long getMemoryCacheMissCount() {
+        return ResponseMemoryCache.getInstance().getMissCount();
+    }
+
+    /**
+     * @return the number of responses removed from memory to stay within the maximum size
+     */
+    public long getMemoryCacheEvictionCount() {
+        return ResponseMemoryCache.getInstance().getEvictionCount();
+    }
+
     /**
      * @return cookieManager cookie manager
      */
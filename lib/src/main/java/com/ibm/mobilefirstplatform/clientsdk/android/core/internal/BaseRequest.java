@@ -16,12 +16,18 @@ package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
 import android.content.Context;
 
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CachePolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerOpenException;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ProgressListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestPriority;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RetryPolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.TransferConstraint;
 import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.identity.BaseAppIdentity;
 
+import okhttp3.CacheControl;
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.FormBody;
@@ -32,26 +38,30 @@ import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
+import okhttp3.internal.Util;
 
 import org.json.JSONObject;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
 import java.net.CookieManager;
 import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
 import java.net.URL;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
+import okio.Buffer;
+import okio.Okio;
+import okio.Sink;
 
 
 /**
@@ -62,6 +72,12 @@ public class BaseRequest {
 
     public static final int DEFAULT_TIMEOUT = 60000;
 
+    // Downloads are read in chunks of the size of Okio buffer segments (8 KiB)
+    protected static final int DOWNLOAD_SEGMENT_SIZE = 8192;
+
+    // Resumable uploads send files in chunks of this size (1 MiB) unless another size is given
+    public static final int DEFAULT_UPLOAD_CHUNK_SIZE = 1024 * 1024;
+
     // Header key
     public static final String CONTENT_TYPE = "Content-Type";
 
@@ -104,50 +120,36 @@ public class BaseRequest {
     // The number of times the user wants a request to automatically resend if it fails
     protected int numberOfRetries;
 
+    // Lets a POST request be retried, since the server can use the key to recognize a request it already processed
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    // The methods that can be sent again without changing the result on the server
+    private static final List<String> IDEMPOTENT_METHODS = Arrays.asList(GET, HEAD, PUT, DELETE, OPTIONS, TRACE);
+
     private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + BaseRequest.class.getSimpleName());
 
     private String url = null;
     private String method = null;
     private int timeout;
+    private int connectTimeout;
+    private int readTimeout;
+    private int writeTimeout;
+    private int callTimeout;
+    private CachePolicy cachePolicy = CachePolicy.DEFAULT;
+    private long memoryCacheTimeToLive;
+    private RequestPriority priority = RequestPriority.NORMAL;
+    private RetryPolicy retryPolicy;
+    private int retryCount;
+    private boolean queuedWhenOffline;
+    private String deduplicationKey;
+    private TransferConstraint transferConstraint = TransferConstraint.ANY;
+    private volatile TransferGate.Transfer transfer;
+    private volatile Call currentCall;
+    private volatile boolean cancelled;
 
     private Map<String, String> queryParameters;
     private Headers.Builder headers = new Headers.Builder();
 
-    private static final OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
-
-    static {
-        SSLSocketFactory tlsEnabledSSLSocketFactory;
-        try {
-            final TrustManager[] trustAllCerts = new TrustManager[] {
-                    new X509TrustManager() {
-                        @Override
-                        public void checkClientTrusted(java.security.cert.X509Certificate[] chain, String authType) throws CertificateException {
-                            logger.info("BaseRequest checkClientTrusted method : " + authType );
-                        }
-
-                        @Override
-                        public void checkServerTrusted(java.security.cert.X509Certificate[] chain, String authType) throws CertificateException {
-                            logger.info("BaseRequest checkServerTrusted method : " + authType );
-                        }
-
-                        @Override
-                        public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                            return new java.security.cert.X509Certificate[]{};
-                        }
-                    }
-            };
-            tlsEnabledSSLSocketFactory = new TLSEnabledSSLSocketFactory();
-            httpClient.sslSocketFactory(tlsEnabledSSLSocketFactory, (X509TrustManager)trustAllCerts[0]);
-        } catch (KeyManagementException e) {
-            e.printStackTrace();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (RuntimeException e) {
-            logger.error("BaseRequest RuntimeException : " + e.getLocalizedMessage());
-        }
-    }
-
-
     /**
      * Constructs a new request with the specified URL, using the specified HTTP method.
      *
@@ -178,7 +180,8 @@ public class BaseRequest {
      * @param url           The resource URL
      * @param method        The HTTP method to use.
      * @param timeout       The timeout in milliseconds for this request.
-     * @param autoRetries   The number of times to retry each request if it fails due to timeout or loss of network connection.
+     * @param autoRetries   The number of times to retry each request if it fails due to timeout, loss of network connection
+     *                      or a temporary server error, as decided by the {@link RetryPolicy}.
      */
     public BaseRequest(String url, String method, int timeout, int autoRetries) {
         this.url = url;
@@ -194,6 +197,22 @@ public class BaseRequest {
         setTimeout(timeout);
     }
 
+    /**
+     * Constructs a new request with the settings of a request template. The template already resolved the URL
+     * and its query parameters, and built the headers, so none of that is done again.
+     *
+     * @param template  The request that holds the settings of the template. It is only read, so it can be shared.
+     * @param headers   The headers of the template
+     */
+    protected BaseRequest(BaseRequest template, Headers headers) {
+        this.url = template.url;
+        this.method = template.method;
+        this.timeout = template.timeout;
+        this.numberOfRetries = template.numberOfRetries;
+        this.headers = headers.newBuilder();
+        template.copyOptionsTo(this);
+    }
+
     protected void removeTrailingSlash() {
         if(this.url != null && this.url.endsWith("/")){
             this.url = this.url.substring(0, this.url.length() - 1);
@@ -279,6 +298,15 @@ public class BaseRequest {
         return headers.build().values(headerName);
     }
 
+    /**
+     * Returns the headers of this resource request, as they will be sent.
+     *
+     * @return The headers
+     */
+    protected Headers buildHeaders() {
+        return headers.build();
+    }
+
     /**
      * Removes all the headers for this resource request with the given name.
      *
@@ -334,18 +362,234 @@ public class BaseRequest {
 
     /**
      * Sets the timeout for this resource request.
+     * The timeout is used as the connect, read and write timeout of this request only.
      *
      * @param timeout The timeout for this request procedure
      */
     public void setTimeout(int timeout) {
         this.timeout = timeout;
+        this.connectTimeout = timeout;
+        this.readTimeout = timeout;
+        this.writeTimeout = timeout;
+    }
+
+    /**
+     * Returns the connect timeout for this resource request.
+     *
+     * @return the connect timeout in milliseconds
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the maximum time allowed to establish a connection for this resource request.
+     *
+     * @param connectTimeout The connect timeout in milliseconds
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Returns the read timeout for this resource request.
+     *
+     * @return the read timeout in milliseconds
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the maximum time allowed between two reads of the response for this resource request.
+     *
+     * @param readTimeout The read timeout in milliseconds
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Returns the write timeout for this resource request.
+     *
+     * @return the write timeout in milliseconds
+     */
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    /**
+     * Sets the maximum time allowed between two writes of the request for this resource request.
+     *
+     * @param writeTimeout The write timeout in milliseconds
+     */
+    public void setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = writeTimeout;
+    }
+
+    /**
+     * Returns the total call timeout for this resource request.
+     *
+     * @return the call timeout in milliseconds, or 0 if there is none
+     */
+    public int getCallTimeout() {
+        return callTimeout;
+    }
 
+    /**
+     * Sets the total time allowed for each attempt of this resource request, from connecting until the
+     * response has been delivered to the listeners. If the deadline passes, the request fails with an
+     * {@link java.io.InterruptedIOException}. A value of 0, the default, means no call timeout.
+     *
+     * @param callTimeout The call timeout in milliseconds
+     */
+    public void setCallTimeout(int callTimeout) {
+        this.callTimeout = callTimeout;
+    }
 
+    /**
+     * Returns how this resource request uses the response cache.
+     *
+     * @return the cache policy of this resource request
+     */
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
 
-        httpClient.connectTimeout(timeout, TimeUnit.MILLISECONDS);
-        httpClient.readTimeout(timeout, TimeUnit.MILLISECONDS);
-        httpClient.writeTimeout(timeout, TimeUnit.MILLISECONDS);
+    /**
+     * Sets how this resource request uses the response cache, if one was enabled with
+     * {@link BMSClient#enableResponseCache(Context, long)}. Only GET requests are cached.
+     * The default is {@link CachePolicy#DEFAULT}, which follows the caching headers of the server.
+     *
+     * @param cachePolicy The cache policy for this resource request
+     */
+    public void setCachePolicy(CachePolicy cachePolicy) {
+        this.cachePolicy = cachePolicy != null ? cachePolicy : CachePolicy.DEFAULT;
+    }
 
+    /**
+     * Returns how long a successful response to this resource request is kept in memory.
+     *
+     * @return the time to live in milliseconds, or 0 if the response is not kept in memory
+     */
+    public long getMemoryCacheTimeToLive() {
+        return memoryCacheTimeToLive;
+    }
+
+    /**
+     * Keeps a successful response to this GET request in memory for the given time, so that sending a request to
+     * the same URL with the same Authorization header again is answered right away, with the same {@link Response}
+     * and its already decoded text and JSON, without going through the network or the response cache.
+     * A response from memory is delivered on the thread that sends the request.
+     * Requests sent with a {@link ProgressListener} are not kept in memory.
+     * A value of 0, the default, means the response is not kept in memory.
+     *
+     * @param timeToLive The time to keep the response in memory, in milliseconds
+     */
+    public void setMemoryCacheTimeToLive(long timeToLive) {
+        this.memoryCacheTimeToLive = Math.max(timeToLive, 0);
+    }
+
+    /**
+     * Returns the priority of this resource request.
+     *
+     * @return the priority of this resource request
+     */
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets how soon this resource request is sent when it has to wait for other requests to finish,
+     * because the concurrency limits of {@link BMSClient} are reached. The default is {@link RequestPriority#NORMAL}.
+     *
+     * @param priority The priority of this resource request
+     */
+    public void setPriority(RequestPriority priority) {
+        this.priority = priority != null ? priority : RequestPriority.NORMAL;
+    }
+
+    /**
+     * Returns the retry policy of this resource request.
+     *
+     * @return the retry policy set with {@link #setRetryPolicy(RetryPolicy)}, or null if the client's policy is used
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy that decides whether and when the automatic retries of this resource request are made.
+     * By default, the policy set with {@link BMSClient#setRetryPolicy(RetryPolicy)} is used.
+     *
+     * @param retryPolicy The retry policy for this resource request, or null to use the client's policy
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Returns whether this resource request is stored and sent again later if the device is offline.
+     *
+     * @return true if this resource request is stored when it cannot reach the server
+     */
+    public boolean isQueuedWhenOffline() {
+        return queuedWhenOffline;
+    }
+
+    /**
+     * Stores this resource request on disk if it cannot reach the server, after its automatic retries, and sends it
+     * again when the device connects, instead of reporting the failure. The listener is notified of the response
+     * to the request that is sent again, unless the app was restarted in between.
+     * This only has an effect while the offline queue is enabled with {@link BMSClient#enableOfflineQueue(Context)}.
+     * Requests whose body is an <code>InputStream</code> cannot be stored.
+     *
+     * @param queuedWhenOffline Whether to store this resource request when it cannot reach the server
+     */
+    public void setQueuedWhenOffline(boolean queuedWhenOffline) {
+        this.queuedWhenOffline = queuedWhenOffline;
+    }
+
+    /**
+     * Returns the key that identifies this resource request in the offline queue.
+     *
+     * @return the deduplication key, or null if there is none
+     */
+    public String getDeduplicationKey() {
+        return deduplicationKey;
+    }
+
+    /**
+     * Sets a key that identifies this resource request in the offline queue. When the request is stored,
+     * it replaces any request stored earlier with the same key, so that only the latest one is sent again.
+     *
+     * @param deduplicationKey The deduplication key, or null for none
+     */
+    public void setDeduplicationKey(String deduplicationKey) {
+        this.deduplicationKey = deduplicationKey;
+    }
+
+    /**
+     * Returns the networks that this resource request may be sent on.
+     *
+     * @return the transfer constraint of this resource request
+     */
+    public TransferConstraint getTransferConstraint() {
+        return transferConstraint;
+    }
+
+    /**
+     * Restricts this resource request to networks that meet the given constraint, for example to keep large uploads
+     * and downloads off mobile data. The request waits until such a network is available, and a request in progress
+     * is sent again from the start, or from where it stopped for a resumable download, if the device leaves it.
+     * Requests whose body is an <code>InputStream</code>, or that download into a stream, are not paused once started.
+     * This only has an effect while constraints are enabled with {@link BMSClient#enableTransferConstraints(Context)}.
+     * The default is {@link TransferConstraint#ANY}.
+     *
+     * @param transferConstraint The transfer constraint of this resource request
+     */
+    public void setTransferConstraint(TransferConstraint transferConstraint) {
+        this.transferConstraint = transferConstraint != null ? transferConstraint : TransferConstraint.ANY;
     }
 
     /**
@@ -436,7 +680,7 @@ public class BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param progressListener  The listener that monitors the download progress
@@ -455,7 +699,7 @@ public class BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param requestBody       The text to put in the request body
@@ -487,7 +731,7 @@ public class BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param formParameters    The parameters to put in the request body
@@ -509,7 +753,7 @@ public class BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param json              The JSON object to put in the request body
@@ -537,7 +781,7 @@ public class BaseRequest {
      *
      * <p>
      * <b>Note: </b>This method consumes the <code>InputStream</code> from the response and closes it,
-     * so the {@link Response#getResponseByteStream()} method will always return null for this request.
+     * so the {@link Response#getResponseByteStream()} method only returns a stream over the downloaded bytes for this request.
      * </p>
      *
      * @param data              The byte array to put in the request body
@@ -553,6 +797,87 @@ public class BaseRequest {
         sendRequest(progressListener, responseListener, body);
     }
 
+    /**
+     * <p>
+     * Download this resource asynchronously, without a request body, streaming the response body into the given file.
+     * The body is written in chunks as it arrives, so it is never held in memory as a whole.
+     * The download progress will be monitored with a {@link ProgressListener}.
+     * </p>
+     *
+     * <p>
+     * <b>Note: </b>The response body is consumed by this method, so the {@link Response} passed to the
+     * <code>ResponseListener</code> has an empty body. If the download fails, the file is deleted.
+     * </p>
+     *
+     * @param destination       The file to write the response body to. Any existing content is replaced.
+     * @param progressListener  The listener that monitors the download progress
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when this request finishes
+     */
+    protected void downloadTo(File destination, ProgressListener progressListener, ResponseListener responseListener) {
+        if (destination == null) {
+            if (responseListener != null) {
+                responseListener.onFailure(null, new IllegalArgumentException("Tried to download to a null file"), null);
+            }
+            return;
+        }
+
+        sendRequest(new DownloadDestination(destination, progressListener), responseListener, null);
+    }
+
+    /**
+     * <p>
+     * Download this resource asynchronously, without a request body, streaming the response body into the given stream.
+     * The body is written in chunks as it arrives, so it is never held in memory as a whole.
+     * The download progress will be monitored with a {@link ProgressListener}.
+     * </p>
+     *
+     * <p>
+     * <b>Note: </b>The response body is consumed by this method, so the {@link Response} passed to the
+     * <code>ResponseListener</code> has an empty body. The stream is flushed but not closed.
+     * </p>
+     *
+     * @param destination       The stream to write the response body to
+     * @param progressListener  The listener that monitors the download progress
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when this request finishes
+     */
+    protected void downloadTo(OutputStream destination, ProgressListener progressListener, ResponseListener responseListener) {
+        if (destination == null) {
+            if (responseListener != null) {
+                responseListener.onFailure(null, new IllegalArgumentException("Tried to download to a null stream"), null);
+            }
+            return;
+        }
+
+        downloadTo(Okio.sink(destination), progressListener, responseListener);
+    }
+
+    /**
+     * <p>
+     * Download this resource asynchronously, without a request body, streaming the response body into the given sink.
+     * The body is written in chunks as it arrives, so it is never held in memory as a whole.
+     * The download progress will be monitored with a {@link ProgressListener}.
+     * </p>
+     *
+     * <p>
+     * <b>Note: </b>The response body is consumed by this method, so the {@link Response} passed to the
+     * <code>ResponseListener</code> has an empty body. The sink is flushed but not closed.
+     * </p>
+     *
+     * @param destination       The sink to write the response body to
+     * @param progressListener  The listener that monitors the download progress
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when this request finishes
+     */
+    protected void downloadTo(Sink destination, ProgressListener progressListener, ResponseListener responseListener) {
+        if (destination == null) {
+            if (responseListener != null) {
+                responseListener.onFailure(null, new IllegalArgumentException("Tried to download to a null sink"), null);
+            }
+            return;
+        }
+
+        sendRequest(new DownloadDestination(destination, progressListener), responseListener, null);
+    }
+
     /**
      * Upload text asynchronously.
      * If the Content-Type header was not previously set, this method will set it to "text/plain".
@@ -628,13 +953,110 @@ public class BaseRequest {
         sendRequest(null, responseListener, progressBody);
     }
 
+    /**
+     * <p>
+     * Upload a file asynchronously, in chunks that can be resumed after a failure.
+     * If the Content-Type header was not previously set, this method will set it to "application/octet-stream".
+     * </p>
+     *
+     * <p>
+     * Every chunk is sent as a separate request with a <code>Content-Range: bytes first-last/total</code> header.
+     * The server acknowledges a chunk with a 308 or 2xx response, and may report the bytes it has stored so far in a
+     * <code>Range: bytes=0-last</code> header. The offset of the last acknowledged chunk is saved in the state directory,
+     * so that uploading the same file to the same URL again continues from there, even from a new process.
+     * </p>
+     *
+     * @param file              The file to upload
+     * @param chunkSize         The maximum number of bytes sent with each request
+     * @param stateDirectory    The directory where the progress of the upload is saved
+     * @param progressListener  The listener that monitors the upload progress of the whole file
+     * @param responseListener  The listener whose onSuccess method will be called with the response to the last chunk,
+     *                          or whose onFailure method will be called when a chunk fails
+     */
+    protected void uploadResumable(File file, int chunkSize, File stateDirectory, ProgressListener progressListener, ResponseListener responseListener) {
+        if (file == null || !file.isFile() || chunkSize <= 0) {
+            if (responseListener != null) {
+                responseListener.onFailure(null, new IllegalArgumentException("Tried to upload an invalid file or with an invalid chunk size"), null);
+            }
+            return;
+        }
+
+        String contentTypeHeader = headers.get(CONTENT_TYPE);
+        String contentType = contentTypeHeader != null ? contentTypeHeader : BINARY_CONTENT_TYPE;
+
+        new ResumableUpload(this, file, MediaType.parse(contentType), chunkSize, stateDirectory, progressListener, responseListener).start();
+    }
+
+    /**
+     * <p>
+     * Download this resource asynchronously into the given file, through partial files that let an interrupted download resume.
+     * </p>
+     *
+     * <p>
+     * The body is written to <code>destination.part</code>, and the ETag or Last-Modified header of the resource is saved
+     * next to it. Downloading the same resource to the same file again only requests the missing bytes, with
+     * <code>Range</code> and <code>If-Range</code> headers. Once the partial file has the full length of the resource,
+     * it replaces the destination.
+     * </p>
+     *
+     * <p>
+     * When <code>parallelRanges</code> is more than 1, and the server accepts byte ranges, a resource of at least 1 MiB per range
+     * is split into that many ranges, which are downloaded in parallel and joined at the end.
+     * </p>
+     *
+     * @param destination       The file to write the resource to
+     * @param parallelRanges    The maximum number of byte ranges to download in parallel
+     * @param progressListener  The listener that monitors the download progress
+     * @param responseListener  The listener whose onSuccess or onFailure methods will be called when the download finishes
+     */
+    protected void downloadResumable(File destination, int parallelRanges, ProgressListener progressListener, ResponseListener responseListener) {
+        if (destination == null) {
+            if (responseListener != null) {
+                responseListener.onFailure(null, new IllegalArgumentException("Tried to download to a null file"), null);
+            }
+            return;
+        }
+
+        new ResumableDownload(this, destination, parallelRanges, progressListener, responseListener).start();
+    }
+
+    // Creates a request to the same URL, with the same query parameters, headers and timeouts, for the given method.
+    // Used to send the extra requests of a download that is split into ranges.
+    protected BaseRequest copy(String method) {
+        BaseRequest copy = new BaseRequest(url, method, timeout, numberOfRetries);
+        copySettingsTo(copy);
+        return copy;
+    }
+
+    protected void copySettingsTo(BaseRequest copy) {
+        copy.headers = headers.build().newBuilder();
+        copyOptionsTo(copy);
+    }
+
+    // Copies everything that copySettingsTo does, except the headers
+    private void copyOptionsTo(BaseRequest copy) {
+        if (queryParameters != null) {
+            copy.queryParameters = new HashMap<>(queryParameters);
+        }
+        copy.connectTimeout = connectTimeout;
+        copy.readTimeout = readTimeout;
+        copy.writeTimeout = writeTimeout;
+        copy.callTimeout = callTimeout;
+        copy.cachePolicy = cachePolicy;
+        copy.memoryCacheTimeToLive = memoryCacheTimeToLive;
+        copy.priority = priority;
+        copy.retryPolicy = retryPolicy;
+        copy.queuedWhenOffline = queuedWhenOffline;
+        copy.deduplicationKey = deduplicationKey;
+        copy.transferConstraint = transferConstraint;
+    }
+
     /**
      * Configure this request to follow redirects.
      * If unset, redirects be followed by default.
      */
     public void setFollowRedirects(boolean followRedirects) {
-
-        httpClient.followSslRedirects(followRedirects);
+        HttpClientManager.getInstance().setFollowSslRedirects(followRedirects);
     }
 
     protected URL getURLWithQueryParameters(String url, Map<String, String> queryParameters) throws MalformedURLException {
@@ -664,6 +1086,9 @@ public class BaseRequest {
 
         if (!newURL.contains("?")) {
             queryParamsURLFragment = "?" + queryParamsURLFragment;
+        } else if (!newURL.endsWith("?") && !newURL.endsWith("&")) {
+            // The URL already has a query, for example from a RequestTemplate
+            queryParamsURLFragment = "&" + queryParamsURLFragment;
         }
 
         return new URL(newURL + queryParamsURLFragment);
@@ -695,7 +1120,7 @@ public class BaseRequest {
                 method.equalsIgnoreCase(OPTIONS);
     }
 
-    protected void sendRequest(final ProgressListener progressListener, final ResponseListener responseListener, final RequestBody requestBody) {
+    protected void sendRequest(final ProgressListener progressListener, ResponseListener responseListener, final RequestBody requestBody) {
         if(method == null || !isValidMethod(method)){
             if (responseListener != null) {
                 responseListener.onFailure(null, new IllegalArgumentException("Method is not valid: " + method), null);
@@ -703,6 +1128,17 @@ public class BaseRequest {
             return;
         }
 
+        // A request whose transfer constraint is not met waits in the gate, which sends it again later
+        transfer = null;
+        TransferGate transferGate = transferConstraint != TransferConstraint.ANY ? TransferGate.getInstance() : null;
+        if (transferGate != null) {
+            transfer = transferGate.admit(this, progressListener, responseListener, requestBody);
+            if (transfer == null) {
+                return;
+            }
+            responseListener = transfer;
+        }
+
         Request.Builder requestBuilder = new Request.Builder();
 
         requestBuilder.headers(headers.build());
@@ -726,6 +1162,12 @@ public class BaseRequest {
                 logger.warn("Request body ignored for request to " + url + " because it is a GET request.");
             }
             requestBuilder.get();
+
+            if (cachePolicy == CachePolicy.NETWORK_ONLY) {
+                requestBuilder.cacheControl(CacheControl.FORCE_NETWORK);
+            } else if (cachePolicy == CachePolicy.CACHE_FIRST) {
+                requestBuilder.cacheControl(new CacheControl.Builder().maxStale(Integer.MAX_VALUE, TimeUnit.SECONDS).build());
+            }
         }
         else if(method.equalsIgnoreCase(BaseRequest.HEAD)){
             if (requestBody != null) {
@@ -737,14 +1179,194 @@ public class BaseRequest {
             requestBuilder.method(method, requestBody);
         }
 
+        requestBuilder.tag(new CallTag(ResponseLeakDetector.getInstance().getAllocationSite()));
         Request request = requestBuilder.build();
-        sendOKHttpRequest(request, getCallback(progressListener, responseListener));
+
+        RetryBudget.getInstance().recordRequest();
+
+        // A paused transfer is cancelled and resent on its own, so it does not share its call with other requests
+        if (responseListener != null && progressListener == null && transfer == null && method.equalsIgnoreCase(BaseRequest.GET)) {
+            responseListener = shareResponse(request, responseListener);
+            if (responseListener == null) {
+                return;
+            }
+        }
+
+        if (cachePolicy == CachePolicy.STALE_WHILE_REVALIDATE && method.equalsIgnoreCase(BaseRequest.GET)
+                && HttpClientManager.getInstance().getCache() != null) {
+            OkHttpClient client = getHttpClient();
+            StaleWhileRevalidate.enqueue(this, client, request, getCallback(progressListener, responseListener));
+        } else {
+            sendOKHttpRequest(request, getCallback(progressListener, responseListener));
+        }
+    }
+
+    /**
+     * Stores a request that could not reach the server in the offline queue, if the request allows it.
+     *
+     * @param request  the request that failed
+     * @param error    the error of the request
+     * @param listener the listener to notify when the request is sent again
+     * @return true if the request was stored, false if the failure must be reported to the listener
+     */
+    protected boolean queueWhenOffline(Request request, IOException error, ResponseListener listener) {
+        OfflineQueue offlineQueue = OfflineQueue.getInstance();
+        return queuedWhenOffline && offlineQueue != null && OfflineQueue.isConnectivityError(error)
+                && offlineQueue.enqueue(request, getTimeout(), deduplicationKey, listener);
+    }
+
+    /**
+     * Resends a request whose attempt failed, if it has retries left, it is safe to resend, the retry policy
+     * allows it and the client's retry budget is not exhausted. The request is resent after the delay chosen by the policy.
+     *
+     * @param request  the request of the failed attempt
+     * @param response the response of the failed attempt, or null if there was none. Its body is closed if the request is resent.
+     * @param error    the error of the failed attempt, or null if there was a response
+     * @param callback the callback for the new attempt
+     * @return true if the request will be resent, false if the failure must be reported to the listener
+     */
+    protected boolean retry(final Request request, okhttp3.Response response, IOException error, final Callback callback) {
+        // While the circuit is open, the retry would fail the same way, and a paused transfer is resent by the gate instead
+        TransferGate.Transfer currentTransfer = transfer;
+        if (numberOfRetries <= 0 || cancelled || error instanceof CircuitBreakerOpenException || !canResend(request, error)
+                || (currentTransfer != null && currentTransfer.isPaused())) {
+            return false;
+        }
+
+        RetryPolicy policy = retryPolicy != null ? retryPolicy : BMSClient.getInstance().getRetryPolicy();
+        long delay = policy != null ? policy.getRetryDelay(retryCount, response != null ? new ResponseImpl(response) : null, error) : RetryPolicy.NO_RETRY;
+        if (delay < 0) {
+            return false;
+        }
+
+        if (!RetryBudget.getInstance().tryRetry()) {
+            logger.debug("Not resending " + request.method() + " request to " + request.url() + " because the retry budget is exhausted");
+            return false;
+        }
+
+        numberOfRetries--;
+        retryCount++;
+        if (response != null) {
+            response.body().close();
+        }
+
+        logger.debug("Resending " + request.method() + " request to " + request.url() + " in " + delay + " ms");
+        if (delay == 0) {
+            sendOKHttpRequest(request, callback);
+        } else {
+            CallDeadline.timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    sendOKHttpRequest(request, callback);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    // Requests with a method that is not idempotent, such as POST, may have been processed by the server even though
+    // the attempt failed, so they are only resent with an idempotency key, or when the connection failed before
+    // the request could be sent
+    private static boolean canResend(Request request, IOException error) {
+        if (isSafeToResend(request.method(), request.header(IDEMPOTENCY_KEY) != null)) {
+            return true;
+        }
+        return error instanceof ConnectException || error instanceof NoRouteToHostException || error instanceof UnknownHostException;
+    }
+
+    /**
+     * @param method            the method of a request
+     * @param hasIdempotencyKey whether the request has an <code>Idempotency-Key</code> header
+     * @return true if sending the request again cannot repeat its effect on the server, even if the server processed it
+     */
+    static boolean isSafeToResend(String method, boolean hasIdempotencyKey) {
+        return hasIdempotencyKey || IDEMPOTENT_METHODS.contains(method.toUpperCase(Locale.US));
     }
 
-    // Hands off the request to OkHttp
-    protected void sendOKHttpRequest(Request request, final Callback callback) {
-        OkHttpClient client = httpClient.build();
-        client.newCall(request).enqueue(callback);
+    // Answers the GET request from memory, or makes it share the response of an identical request in flight.
+    // Returns the listener to send the request with, or null if the request needs no network call.
+    private ResponseListener shareResponse(Request request, ResponseListener responseListener) {
+        InFlightRequests.SharedCall sharedCall = responseListener instanceof InFlightRequests.SharedCall
+                ? (InFlightRequests.SharedCall)responseListener : null;
+        ResponseListener listener = sharedCall != null ? sharedCall.getPrimary() : responseListener;
+
+        if (memoryCacheTimeToLive > 0 && cachePolicy != CachePolicy.NETWORK_ONLY) {
+            ResponseMemoryCache memoryCache = ResponseMemoryCache.getInstance();
+            String cacheKey = ResponseMemoryCache.key(request.url().toString(), request.header("Authorization"));
+            ResponseImpl cachedResponse = memoryCache.get(cacheKey);
+            if (cachedResponse != null) {
+                responseListener.onSuccess(cachedResponse);
+                return null;
+            }
+            listener = memoryCache.wrap(cacheKey, memoryCacheTimeToLive, listener);
+        }
+
+        if (sharedCall != null) {
+            // The request is being resent, for example after obtaining authorization, so it keeps its shared call
+            sharedCall.setPrimary(listener);
+            return sharedCall;
+        }
+        if (InFlightRequests.isEnabled()) {
+            String settings = cachePolicy + " " + getConnectTimeout() + "/" + getReadTimeout() + "/" + getWriteTimeout() + "/" + callTimeout;
+            return InFlightRequests.join(InFlightRequests.key(request, settings), listener);
+        }
+        return listener;
+    }
+
+    // Hands off the request to the scheduler, which runs it on the shared client (or one derived from it for this request's timeouts)
+    protected void sendOKHttpRequest(Request request, Callback callback) {
+        Call call = getHttpClient().newCall(request);
+
+        CircuitBreaker circuitBreaker = CircuitBreaker.forHost(request.url().host());
+        if (circuitBreaker != null) {
+            if (!circuitBreaker.tryAcquire()) {
+                callback.onFailure(call, new CircuitBreakerOpenException(request.url().host()));
+                return;
+            }
+            callback = circuitBreaker.wrap(callback);
+        }
+
+        TransferGate.Transfer currentTransfer = transfer;
+        if (currentTransfer != null) {
+            currentTransfer.setCall(call);
+        }
+
+        currentCall = call;
+        if (cancelled) {
+            call.cancel();
+        }
+
+        dispatch(call, callback);
+    }
+
+    /**
+     * Cancels the attempt of this request in flight, and any attempt that a retry would send later.
+     * The listener of the request is notified of the cancellation with an IOException.
+     */
+    void cancel() {
+        cancelled = true;
+        Call call = currentCall;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    // The client that sends this request, with its timeouts
+    protected OkHttpClient getHttpClient() {
+        return HttpClientManager.getInstance().getClient(connectTimeout, readTimeout, writeTimeout);
+    }
+
+    // Runs the call once the RequestScheduler lets it, based on the priority of this request
+    protected void dispatch(Call call, Callback callback) {
+        RequestScheduler.getInstance().enqueue(call, callback, priority, callTimeout);
+    }
+
+    // Attaches the timings of the call that received the response, so that they can be read from the response
+    protected static Response withTimings(Call call, Response response) {
+        if (response instanceof ResponseImpl) {
+            ((ResponseImpl)response).setTimingsRecorder(RequestTimingsRecorder.forCall(call));
+        }
+        return response;
     }
 
     protected Callback getCallback(final ProgressListener progressListener, final ResponseListener responseListener) {
@@ -753,14 +1375,11 @@ public class BaseRequest {
             @Override
             public void onFailure(Call call, IOException e) {
 
-                // If auto-retries are enabled, and the request hasn't run out of retry attempts,
-                // then try to send the same request again. Otherwise, delegate to the user's ResponseListener.
-                // Note that we also retry requests that receive 504 responses, as seen in the onResponse() method.
-                if (numberOfRetries > 0) {
-                    numberOfRetries--;
-                    logger.debug("Resending " + call.request().method() +  " request to " + call.request().toString());
-                    sendOKHttpRequest(call.request(), getCallback(progressListener, responseListener));
-                } else {
+                // If auto-retries are enabled, and the retry policy allows it, then try to send the same request again.
+                // Otherwise, delegate to the user's ResponseListener.
+                // Note that failed responses can be retried too, as seen in the onResponse() method.
+                if (!retry(call.request(), null, e, getCallback(progressListener, responseListener))
+                        && !queueWhenOffline(call.request(), e, responseListener)) {
                     if (responseListener != null) {
                         responseListener.onFailure(null, e, null);
                     }
@@ -769,65 +1388,106 @@ public class BaseRequest {
 
             @Override
             public void onResponse(Call call, okhttp3.Response response) throws IOException {
+                Response bmsResponse = null;
+                try {
+                    if (responseListener == null) {
+                        return;
+                    }
 
-                if (responseListener == null) {
-                    return;
-                }
-
-                // If the response is successful, delegate to the user's
-                //      1) ResponseListener
-                //      2) ProgressListener (if applicable)
-                if (response.isSuccessful() || response.isRedirect()) {
-                    Response bmsResponse = new ResponseImpl(response);
-                    if (progressListener != null) {
-                        updateProgressListener(progressListener, bmsResponse);
+                    // If the response is successful, delegate to the user's
+                    //      1) ResponseListener
+                    //      2) ProgressListener (if applicable)
+                    if (response.isSuccessful() || response.isRedirect()) {
+                        try {
+                            bmsResponse = withTimings(call, createSuccessResponse(response, progressListener));
+                        } catch (IOException e) {
+                            responseListener.onFailure(null, e, null);
+                        }
+                        if (bmsResponse != null) {
+                            responseListener.onSuccess(bmsResponse);
+                        }
+                    } else if (!retry(call.request(), response, null, getCallback(progressListener, responseListener))) {
+                        bmsResponse = withTimings(call, new ResponseImpl(response));
+                        responseListener.onFailure(bmsResponse, null, null);
                     }
-                    responseListener.onSuccess(bmsResponse);
-                } else {
-                    responseListener.onFailure(new ResponseImpl(response), null, null);
+                } finally {
+                    releaseResponse(response, bmsResponse);
                 }
             }
         };
     }
 
+    // Called once the ResponseListener has returned or thrown, on every path of a callback, so that no response
+    // keeps its connection out of the pool. Buffers the part of the body that the listener did not consume, so
+    // that it can still be read afterwards, or closes the body when it was never handed to the listener.
+    protected void releaseResponse(okhttp3.Response response, Response bmsResponse) {
+        if (bmsResponse instanceof ResponseImpl) {
+            ((ResponseImpl)bmsResponse).release();
+        } else if (bmsResponse == null) {
+            Util.closeQuietly(response.body());
+        }
+    }
+
+    // Converts a successful OkHttp response into the Response for the user's ResponseListener.
+    // Download bodies are first delivered to the ProgressListener or streamed to the download destination.
+    protected Response createSuccessResponse(okhttp3.Response response, ProgressListener progressListener) throws IOException {
+        if (progressListener instanceof DownloadDestination) {
+            return ((DownloadDestination)progressListener).writeResponse(response);
+        }
+
+        Response bmsResponse = new ResponseImpl(response);
+        if (progressListener != null) {
+            updateProgressListener(progressListener, bmsResponse);
+        }
+        return bmsResponse;
+    }
+
     // As a download request progresses, periodically call the user's ProgressListener
     protected void updateProgressListener(ProgressListener progressListener, Response response) {
         InputStream responseStream = response.getResponseByteStream();
+        if (responseStream == null) {
+            return;
+        }
 
-        int bytesDownloaded = 0;
-        long totalBytesExpected = response.getContentLength();
-        // Reading 2 KiB at a time to be consistent with the upload segment size in ProgressRequestBody
-        final int segmentSize = 2048;
+        long bytesDownloaded = 0;
+        long contentLength = response.getContentLength();
+        // ProgressListener reports an unknown length as 0
+        long totalBytesExpected = Math.max(contentLength, 0);
 
-        byte[] responseBytes;
-        if (totalBytesExpected > Integer.MAX_VALUE) {
-            logger.warn("The response body for " + getUrl() + " is too large to hold in a byte array. Only the first 2 GiB will be available.");
-            responseBytes = new byte[Integer.MAX_VALUE];
-        }
-        else {
-            responseBytes = new byte[(int)totalBytesExpected];
-        }
+        // The body is collected in Okio segments as it arrives, so it does not matter whether the
+        // content length is known, and no more memory than the body itself is allocated
+        Buffer responseBytes = new Buffer();
+        byte[] segment = new byte[DOWNLOAD_SEGMENT_SIZE];
+        boolean truncated = false;
 
-        // For every 2 KiB downloaded:
+        // For every segment downloaded:
         //      1) Call the user's ProgressListener
-        //      2) Append the downloaded bytes into a byte array
-        int nextByte;
+        //      2) Append the downloaded bytes to the response body
+        int bytesRead;
         try {
-            while ((nextByte = responseStream.read()) != -1) {
-                if (bytesDownloaded % segmentSize == 0) {
-                    progressListener.onProgress(bytesDownloaded, totalBytesExpected);
+            progressListener.onProgress(0, totalBytesExpected);
+            while ((bytesRead = responseStream.read(segment)) != -1) {
+                long bytesToKeep = Math.min(bytesRead, Integer.MAX_VALUE - responseBytes.size());
+                if (bytesToKeep < bytesRead && !truncated) {
+                    logger.warn("The response body for " + getUrl() + " is too large to hold in a byte array. Only the first 2 GiB will be available.");
+                    truncated = true;
                 }
-                responseBytes[bytesDownloaded] = (byte)nextByte;
-                bytesDownloaded += 1;
+                responseBytes.write(segment, 0, (int)bytesToKeep);
+
+                bytesDownloaded += bytesRead;
+                progressListener.onProgress(bytesDownloaded, totalBytesExpected);
             }
         }
         catch (IOException e) {
             logger.error("IO Exception: " + e.getMessage());
         }
+        finally {
+            Util.closeQuietly(responseStream);
+        }
 
         // Transfer the downloaded data to the Response object so that the user can later retrieve it
         if (response instanceof ResponseImpl) {
-            ((ResponseImpl)response).setResponseBytes(responseBytes);
+            ((ResponseImpl)response).setResponseBytes(responseBytes.readByteArray());
         }
     }
 
@@ -836,7 +1496,7 @@ public class BaseRequest {
      */
     public static void registerInterceptor(Interceptor interceptor) {
         if (interceptor != null) {
-            httpClient.networkInterceptors().add(interceptor);
+            HttpClientManager.getInstance().addNetworkInterceptor(interceptor);
         }
     }
 
@@ -845,7 +1505,7 @@ public class BaseRequest {
      */
     public static void unregisterInterceptor(Interceptor interceptor) {
         if (interceptor != null) {
-            httpClient.networkInterceptors().remove(interceptor);
+            HttpClientManager.getInstance().removeNetworkInterceptor(interceptor);
         }
     }
 
@@ -853,7 +1513,7 @@ public class BaseRequest {
      * @exclude
      */
     public static void setCookieManager(CookieManager CookieManager){
-        httpClient.cookieJar(new JavaNetCookieJar(CookieManager));
+        HttpClientManager.getInstance().setCookieJar(new JavaNetCookieJar(CookieManager));
     }
 
     private RequestBody formBuilder(Map<String, String> formParameters){
@@ -0,0 +1,109 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * @exclude
+ *
+ * Enforces a total deadline on a single OkHttp call, covering connecting, sending the request and
+ * reading the response inside the callback. OkHttp 3.9 has no call timeout of its own, so the call is
+ * cancelled from a timer thread when the deadline passes and the failure is reported as a timeout.
+ */
+class CallDeadline implements Callback {
+
+    // Also delays the retries of failed requests
+    static final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BMSCore timer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Callback callback;
+    private final long timeout;
+    private final AtomicBoolean expired = new AtomicBoolean(false);
+    private ScheduledFuture<?> timeoutTask;
+
+    /**
+     * Enqueues the call and cancels it if it has not completed within the given timeout.
+     *
+     * @param call     the call to enqueue
+     * @param callback the callback to notify
+     * @param timeout  the total time allowed for the call, in milliseconds
+     */
+    static void enqueue(final Call call, Callback callback, long timeout) {
+        final CallDeadline deadline = new CallDeadline(callback, timeout);
+
+        deadline.timeoutTask = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                deadline.expired.set(true);
+                call.cancel();
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+
+        call.enqueue(deadline);
+    }
+
+    /**
+     * Reported instead of the failure of a call that was cancelled because its deadline passed
+     */
+    static class DeadlineExceededException extends InterruptedIOException {
+        DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private CallDeadline(Callback callback, long timeout) {
+        this.callback = callback;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+        timeoutTask.cancel(false);
+
+        if (expired.get()) {
+            InterruptedIOException timeoutException = new DeadlineExceededException("Call did not complete within " + timeout + " ms");
+            timeoutException.initCause(e);
+            e = timeoutException;
+        }
+        callback.onFailure(call, e);
+    }
+
+    @Override
+    public void onResponse(Call call, okhttp3.Response response) throws IOException {
+        // The deadline stays armed while the callback reads the response body
+        try {
+            callback.onResponse(call, response);
+        } finally {
+            timeoutTask.cancel(false);
+        }
+    }
+}
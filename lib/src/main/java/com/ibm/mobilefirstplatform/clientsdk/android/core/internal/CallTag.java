@@ -0,0 +1,57 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import okhttp3.Call;
+
+
+/**
+ * @exclude
+ *
+ * The tag of the requests sent by {@link BaseRequest}. It carries the stack recorded by {@link ResponseLeakDetector},
+ * and the {@link RequestTimingsRecorder} of the latest call of the request, so that the callback of a call finds
+ * the timings of that call without a lookup in a map shared by every call.
+ */
+class CallTag {
+
+    private final Throwable allocationSite;
+
+    // A request that is sent again gets a new call and recorder, so both are replaced together. Guarded by this.
+    private Call call;
+    private RequestTimingsRecorder recorder;
+
+    /**
+     * @param allocationSite the stack that is sending the request, or null if leaks are not detected
+     */
+    CallTag(Throwable allocationSite) {
+        this.allocationSite = allocationSite;
+    }
+
+    Throwable getAllocationSite() {
+        return allocationSite;
+    }
+
+    synchronized void setRecorder(Call call, RequestTimingsRecorder recorder) {
+        this.call = call;
+        this.recorder = recorder;
+    }
+
+    /**
+     * @param call a call of the request
+     * @return the recorder of the call, or null if the request was sent again by a newer call since
+     */
+    synchronized RequestTimingsRecorder getRecorder(Call call) {
+        return this.call == call ? recorder : null;
+    }
+}
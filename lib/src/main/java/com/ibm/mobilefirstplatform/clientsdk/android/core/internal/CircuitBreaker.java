@@ -0,0 +1,290 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerOpenException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerState;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkMonitor;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * @exclude
+ *
+ * Stops sending requests to a host while most of its recent requests fail or are slow, so that callers fail
+ * right away instead of waiting for their timeouts, and the host gets time to recover.
+ * There is one circuit breaker per host, created when the first request to that host is sent,
+ * as long as a {@link CircuitBreakerConfig} is set.
+ *
+ * The outcomes of the most recent requests are kept in a ring buffer. When the circuit opens, requests fail with a
+ * {@link CircuitBreakerOpenException} until the open duration has passed. Then, a few trial requests are let through:
+ * if they all succeed the circuit closes, and if one of them fails or is slow the circuit opens again.
+ */
+class CircuitBreaker {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + CircuitBreaker.class.getSimpleName());
+
+    // Guarded by themselves
+    private static final Map<String, CircuitBreaker> breakers = new HashMap<>();
+    private static CircuitBreakerConfig config;
+
+    private static final List<CircuitBreakerListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final String host;
+    private final CircuitBreakerConfig breakerConfig;
+
+    // All guarded by this
+    private CircuitBreakerState state = CircuitBreakerState.CLOSED;
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int recorded;
+    private int next;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    /**
+     * Sets the thresholds of the circuit breakers. Existing circuit breakers are discarded.
+     *
+     * @param config the thresholds, or null to disable circuit breakers
+     */
+    static void setConfig(CircuitBreakerConfig config) {
+        synchronized (breakers) {
+            CircuitBreaker.config = config;
+            breakers.clear();
+        }
+    }
+
+    static CircuitBreakerConfig getConfig() {
+        synchronized (breakers) {
+            return config;
+        }
+    }
+
+    /**
+     * @param host the host of a request
+     * @return the circuit breaker of the host, or null if circuit breakers are disabled
+     */
+    static CircuitBreaker forHost(String host) {
+        synchronized (breakers) {
+            if (config == null) {
+                return null;
+            }
+
+            CircuitBreaker breaker = breakers.get(host);
+            if (breaker == null) {
+                breaker = new CircuitBreaker(host, config);
+                breakers.put(host, breaker);
+            }
+            return breaker;
+        }
+    }
+
+    static CircuitBreakerState getState(String host) {
+        synchronized (breakers) {
+            CircuitBreaker breaker = breakers.get(host);
+            return breaker != null ? breaker.getState() : CircuitBreakerState.CLOSED;
+        }
+    }
+
+    static void addListener(CircuitBreakerListener listener) {
+        listeners.add(listener);
+    }
+
+    static void removeListener(CircuitBreakerListener listener) {
+        listeners.remove(listener);
+    }
+
+    CircuitBreaker(String host, CircuitBreakerConfig config) {
+        this.host = host;
+        this.breakerConfig = config;
+        this.failed = new boolean[config.getWindowSize()];
+        this.slow = new boolean[config.getWindowSize()];
+    }
+
+    synchronized CircuitBreakerState getState() {
+        return state;
+    }
+
+    /**
+     * Decides whether a request can be sent. A request that is allowed must then have its outcome recorded.
+     *
+     * @return true if the request can be sent, false if it must fail right away
+     */
+    boolean tryAcquire() {
+        CircuitBreakerState previousState;
+        CircuitBreakerState newState;
+        synchronized (this) {
+            previousState = state;
+            if (state == CircuitBreakerState.OPEN) {
+                if (System.currentTimeMillis() - openedAt < breakerConfig.getOpenDuration()) {
+                    return false;
+                }
+                state = CircuitBreakerState.HALF_OPEN;
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+            }
+            if (state == CircuitBreakerState.HALF_OPEN) {
+                if (trialsStarted >= breakerConfig.getHalfOpenCalls()) {
+                    return false;
+                }
+                trialsStarted++;
+            }
+            newState = state;
+        }
+        notifyListeners(previousState, newState);
+        return true;
+    }
+
+    /**
+     * Records the outcome of a request that was allowed by {@link #tryAcquire()}.
+     *
+     * @param failure  true if no response was received, or the response was a server error
+     * @param duration the time the server took to respond, in milliseconds
+     */
+    void record(boolean failure, long duration) {
+        boolean isSlow = duration >= breakerConfig.getSlowCallDuration();
+        CircuitBreakerState previousState;
+        CircuitBreakerState newState;
+
+        synchronized (this) {
+            previousState = state;
+            if (state == CircuitBreakerState.HALF_OPEN) {
+                if (failure || isSlow) {
+                    open();
+                } else if (++trialsSucceeded >= breakerConfig.getHalfOpenCalls()) {
+                    close();
+                }
+            } else if (state == CircuitBreakerState.CLOSED) {
+                failed[next] = failure;
+                slow[next] = isSlow;
+                next = (next + 1) % failed.length;
+                recorded = Math.min(recorded + 1, failed.length);
+
+                if (recorded >= breakerConfig.getMinimumCalls() && exceedsThresholds()) {
+                    open();
+                }
+            }
+            newState = state;
+        }
+        notifyListeners(previousState, newState);
+    }
+
+    /**
+     * Gives back the permission of a request allowed by {@link #tryAcquire()} whose outcome says nothing about the host,
+     * like a request cancelled by the app, so that it does not hold one of the trials of the half-open state.
+     */
+    synchronized void release() {
+        if (state == CircuitBreakerState.HALF_OPEN && trialsStarted > 0) {
+            trialsStarted--;
+        }
+    }
+
+    /**
+     * @param error the error of a request that received no response
+     * @return true if the request failed because the device is offline, rather than because of the host.
+     * A failed DNS lookup always counts as offline, since a host that is down still resolves. Other connection
+     * errors only do when the network monitor of the offline queue or of the transfer constraints reports no connection.
+     */
+    static boolean isDeviceOffline(IOException error) {
+        if (error instanceof UnknownHostException) {
+            return true;
+        }
+        if (!OfflineQueue.isConnectivityError(error)) {
+            return false;
+        }
+
+        OfflineQueue offlineQueue = OfflineQueue.getInstance();
+        NetworkMonitor networkMonitor = offlineQueue != null ? offlineQueue.getNetworkMonitor() : null;
+        if (networkMonitor == null) {
+            TransferGate transferGate = TransferGate.getInstance();
+            networkMonitor = transferGate != null ? transferGate.getNetworkMonitor() : null;
+        }
+        return networkMonitor != null && !networkMonitor.isInternetAccessAvailable();
+    }
+
+    private boolean exceedsThresholds() {
+        int failures = 0;
+        int slowCalls = 0;
+        for (int i = 0; i < recorded; i++) {
+            failures += failed[i] ? 1 : 0;
+            slowCalls += slow[i] ? 1 : 0;
+        }
+        return failures >= breakerConfig.getFailureRateThreshold() * recorded
+                || slowCalls >= breakerConfig.getSlowCallRateThreshold() * recorded;
+    }
+
+    private void open() {
+        state = CircuitBreakerState.OPEN;
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void close() {
+        state = CircuitBreakerState.CLOSED;
+        recorded = 0;
+        next = 0;
+    }
+
+    private void notifyListeners(CircuitBreakerState previousState, CircuitBreakerState newState) {
+        if (previousState == newState) {
+            return;
+        }
+
+        logger.info("Circuit breaker for " + host + " changed from " + previousState + " to " + newState);
+        for (CircuitBreakerListener listener : listeners) {
+            listener.onStateChange(host, previousState, newState);
+        }
+    }
+
+    /**
+     * Wraps the callback of a request allowed by {@link #tryAcquire()}, to record its outcome.
+     *
+     * @param callback the callback of the request
+     * @return the callback to enqueue the request with
+     */
+    Callback wrap(final Callback callback) {
+        return new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                // Requests cancelled by their call timeout count as failures too, since the host did not respond in time.
+                // Those cancelled by the app, or paused by TransferGate on a network change, say nothing about the host,
+                // and neither do those that could not connect because the device is offline.
+                if ((call.isCanceled() && !(e instanceof CallDeadline.DeadlineExceededException)) || isDeviceOffline(e)) {
+                    release();
+                } else {
+                    record(true, 0);
+                }
+                callback.onFailure(call, e);
+            }
+
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) throws IOException {
+                record(response.code() >= 500, response.receivedResponseAtMillis() - response.sentRequestAtMillis());
+                callback.onResponse(call, response);
+            }
+        };
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ProgressListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+
+import okhttp3.ResponseBody;
+import okhttp3.internal.Util;
+
+import java.io.File;
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+
+
+/**
+ * @exclude
+ *
+ * Internal ProgressListener wrapper used by the BaseRequest downloadTo() methods.
+ * It travels through sendRequest() and getCallback() in place of the user's ProgressListener
+ * (so it survives auto-retries and re-sends after authorization) and streams the response body
+ * into the destination in chunks, instead of holding the whole body in memory.
+ */
+class DownloadDestination implements ProgressListener {
+
+    private final Sink destinationSink;
+    private final File destinationFile;
+    private final ProgressListener progressListener;
+
+    // The caller owns the sink: it is flushed, but not closed, once the body has been written
+    DownloadDestination(Sink sink, ProgressListener progressListener) {
+        this.destinationSink = sink;
+        this.destinationFile = null;
+        this.progressListener = progressListener;
+    }
+
+    // The file is only opened once a successful response arrives, and is deleted if the download fails
+    DownloadDestination(File file, ProgressListener progressListener) {
+        this.destinationSink = null;
+        this.destinationFile = file;
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public void onProgress(long bytesSoFar, long totalBytesExpected) {
+        if (progressListener != null) {
+            progressListener.onProgress(bytesSoFar, totalBytesExpected);
+        }
+    }
+
+    /**
+     * Streams the body of the given response into the destination.
+     *
+     * @param response a successful response whose body has not been read yet
+     * @return the Response to hand to the user's ResponseListener. Its body is empty since it was consumed here.
+     * @throws IOException if the body could not be read or written
+     */
+    Response writeResponse(okhttp3.Response response) throws IOException {
+        ResponseBody body = response.body();
+        long contentLength = body.contentLength();
+        // ProgressListener reports an unknown length as 0
+        long totalBytesExpected = Math.max(contentLength, 0);
+
+        Sink sink = null;
+        boolean completed = false;
+        try {
+            sink = openSink(response);
+            BufferedSource source = body.source();
+            Buffer buffer = new Buffer();
+            long bytesDownloaded = 0;
+            long bytesRead;
+
+            onProgress(0, totalBytesExpected);
+            while ((bytesRead = source.read(buffer, BaseRequest.DOWNLOAD_SEGMENT_SIZE)) != -1) {
+                sink.write(buffer, bytesRead);
+                bytesDownloaded += bytesRead;
+                onProgress(bytesDownloaded, totalBytesExpected);
+            }
+            sink.flush();
+            completed = true;
+        } finally {
+            Util.closeQuietly(body);
+            closeSink(sink, completed);
+        }
+
+        // Keep the status, headers and content type of the response. The empty body declares its real length of 0,
+        // while the Content-Length header still tells the original length.
+        ResponseBody drainedBody = ResponseBody.create(body.contentType(), 0, new Buffer());
+        return new ResponseImpl(response.newBuilder().body(drainedBody).build());
+    }
+
+    // A file is written from the start again when the request is resent, but bytes already written to a caller's sink cannot be taken back
+    boolean canRestart() {
+        return destinationFile != null;
+    }
+
+    // Opens the sink that the body of the given response is written to
+    Sink openSink(okhttp3.Response response) throws IOException {
+        return destinationFile != null ? Okio.sink(destinationFile) : destinationSink;
+    }
+
+    // Closes the sink once the body has been written, or once writing it failed
+    void closeSink(Sink sink, boolean completed) {
+        if (destinationFile != null) {
+            Util.closeQuietly(sink);
+            if (!completed) {
+                destinationFile.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.UserIdentity;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.CookieJar;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+
+/**
+ * @exclude
+ *
+ * Owns the OkHttpClient that is shared by every {@link BaseRequest}.
+ *
+ * The shared client is built once and is only rebuilt when its configuration changes
+ * (interceptors, cookie jar, redirects, response cache). Requests that need different timeouts get a client derived
+ * from the shared one with newBuilder(), so they keep using the same connection pool and dispatcher.
+ * The requests of the authorization flow get a client of their own, see {@link #getAuthorizationClient(int, int, int)}.
+ */
+public class HttpClientManager {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + HttpClientManager.class.getSimpleName());
+
+    private static final HttpClientManager instance = new HttpClientManager();
+
+    private static final String AUTHORIZATION = "Authorization";
+    private static final String VARY = "Vary";
+    static final String CACHE_IDENTITY = "BMS-Cache-Identity";
+
+    private final OkHttpClient.Builder builder = new OkHttpClient.Builder();
+
+    // All guarded by this
+    private OkHttpClient sharedClient;
+    private final Map<String, OkHttpClient> derivedClients = new HashMap<>();
+    private Cache responseCache;
+    private OkHttpClient authorizationClient;
+
+    // Kept when the authorization client is rebuilt, like the pool and dispatcher of the shared builder
+    private final ConnectionPool authorizationConnectionPool = new ConnectionPool();
+    private final Dispatcher authorizationDispatcher = new Dispatcher();
+
+    // Tags authorized requests with the identity of their user, before the cache looks them up. The cache stores the values
+    // of the headers named in Vary, so it must never vary by Authorization, which would write the tokens to disk in plaintext.
+    private static final Interceptor tagCacheIdentity = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            String authorization = request.header(AUTHORIZATION);
+            if (authorization == null) {
+                return chain.proceed(request);
+            }
+            return chain.proceed(request.newBuilder().header(CACHE_IDENTITY, getCacheIdentity(authorization)).build());
+        }
+    };
+
+    // Sends authorized requests without their identity tag, and adds the tag to the Vary header of their responses,
+    // so that a response cached for one user is never served to another. The response keeps the tagged request,
+    // since the cache reads the values of the Vary headers from it.
+    private static final Interceptor varyByCacheIdentity = new Interceptor() {
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            if (request.header(CACHE_IDENTITY) == null) {
+                return chain.proceed(request);
+            }
+
+            Response response = chain.proceed(request.newBuilder().removeHeader(CACHE_IDENTITY).build());
+
+            String vary = response.header(VARY);
+            if (vary == null || vary.trim().isEmpty()) {
+                vary = CACHE_IDENTITY;
+            } else if (!vary.toLowerCase(Locale.US).contains(CACHE_IDENTITY.toLowerCase(Locale.US)) && !vary.trim().equals("*")) {
+                vary = vary + ", " + CACHE_IDENTITY;
+            }
+            return response.newBuilder().request(request).header(VARY, vary).build();
+        }
+    };
+
+    /**
+     * Returns the identity that responses to an authorized request are cached for: a hash of the id of the current user,
+     * so the cached responses survive token refreshes, or a hash of the Authorization header when there is no user.
+     *
+     * @param authorization the Authorization header of the request
+     * @return a hash that reveals neither the user id nor the tokens
+     */
+    static String getCacheIdentity(String authorization) {
+        String identity = null;
+        try {
+            AuthorizationManager authorizationManager = BMSClient.getInstance().getAuthorizationManager();
+            UserIdentity user = authorizationManager != null ? authorizationManager.getUserIdentity() : null;
+            identity = user != null ? user.getId() : null;
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read the user identity for the response cache. Error: " + e.getLocalizedMessage());
+        }
+
+        if (identity == null || identity.isEmpty()) {
+            identity = AUTHORIZATION + ":" + authorization;
+        }
+        return ByteString.encodeUtf8(identity).sha256().hex();
+    }
+
+    public static HttpClientManager getInstance() {
+        return instance;
+    }
+
+    private HttpClientManager() {
+        builder.connectTimeout(BaseRequest.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        builder.readTimeout(BaseRequest.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        builder.writeTimeout(BaseRequest.DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS);
+        builder.eventListenerFactory(RequestTimingsRecorder.FACTORY);
+
+        SSLSocketFactory tlsEnabledSSLSocketFactory;
+        try {
+            final TrustManager[] trustAllCerts = new TrustManager[] {
+                    new X509TrustManager() {
+                        @Override
+                        public void checkClientTrusted(java.security.cert.X509Certificate[] chain, String authType) throws CertificateException {
+                            logger.info("BaseRequest checkClientTrusted method : " + authType );
+                        }
+
+                        @Override
+                        public void checkServerTrusted(java.security.cert.X509Certificate[] chain, String authType) throws CertificateException {
+                            logger.info("BaseRequest checkServerTrusted method : " + authType );
+                        }
+
+                        @Override
+                        public java.security.cert.X509Certificate[] getAcceptedIssuers() {
+                            return new java.security.cert.X509Certificate[]{};
+                        }
+                    }
+            };
+            tlsEnabledSSLSocketFactory = new TLSEnabledSSLSocketFactory();
+            builder.sslSocketFactory(tlsEnabledSSLSocketFactory, (X509TrustManager)trustAllCerts[0]);
+        } catch (KeyManagementException e) {
+            e.printStackTrace();
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        } catch (RuntimeException e) {
+            logger.error("BaseRequest RuntimeException : " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Returns the shared client, building it if the configuration changed since it was last built.
+     *
+     * @return the shared OkHttpClient
+     */
+    public synchronized OkHttpClient getClient() {
+        if (sharedClient == null) {
+            sharedClient = builder.build();
+        }
+        return sharedClient;
+    }
+
+    /**
+     * Returns a client that uses the given timeout for connecting, reading and writing.
+     * When the timeout matches the shared client, the shared client itself is returned.
+     *
+     * @param timeout the timeout in milliseconds
+     * @return a client with the requested timeout that shares the connection pool of the shared client
+     */
+    public OkHttpClient getClient(int timeout) {
+        return getClient(timeout, timeout, timeout);
+    }
+
+    /**
+     * Returns a client that uses the given connect, read and write timeouts.
+     * When the timeouts match the shared client, the shared client itself is returned.
+     *
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param readTimeout    the read timeout in milliseconds
+     * @param writeTimeout   the write timeout in milliseconds
+     * @return a client with the requested timeouts that shares the connection pool of the shared client
+     */
+    public synchronized OkHttpClient getClient(int connectTimeout, int readTimeout, int writeTimeout) {
+        return derive(getClient(), "", connectTimeout, readTimeout, writeTimeout);
+    }
+
+    /**
+     * Returns the client for the requests of the authorization flow: registration, authorization and token requests.
+     * It has the configuration of the shared client, but a connection pool and a dispatcher of its own, so these
+     * requests never wait behind app requests for a connection or a thread, while the app requests wait for them.
+     * It does not follow redirects, since the authorization flow reads them, and it does not use the response cache.
+     *
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param readTimeout    the read timeout in milliseconds
+     * @param writeTimeout   the write timeout in milliseconds
+     * @return the authorization client with the requested timeouts
+     */
+    public synchronized OkHttpClient getAuthorizationClient(int connectTimeout, int readTimeout, int writeTimeout) {
+        if (authorizationClient == null) {
+            authorizationClient = getClient().newBuilder()
+                    .connectionPool(authorizationConnectionPool)
+                    .dispatcher(authorizationDispatcher)
+                    .followRedirects(false)
+                    .followSslRedirects(false)
+                    .cache(null)
+                    .build();
+        }
+        return derive(authorizationClient, "authorization/", connectTimeout, readTimeout, writeTimeout);
+    }
+
+    // Returns the client itself if it has the timeouts, or a client derived from it that keeps its pool and dispatcher
+    private OkHttpClient derive(OkHttpClient client, String prefix, int connectTimeout, int readTimeout, int writeTimeout) {
+        if (client.connectTimeoutMillis() == connectTimeout
+                && client.readTimeoutMillis() == readTimeout
+                && client.writeTimeoutMillis() == writeTimeout) {
+            return client;
+        }
+
+        String key = prefix + connectTimeout + "/" + readTimeout + "/" + writeTimeout;
+        OkHttpClient derivedClient = derivedClients.get(key);
+        if (derivedClient == null) {
+            derivedClient = client.newBuilder()
+                    .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
+                    .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
+                    .writeTimeout(writeTimeout, TimeUnit.MILLISECONDS)
+                    .build();
+            derivedClients.put(key, derivedClient);
+        }
+        return derivedClient;
+    }
+
+    public synchronized void addInterceptor(Interceptor interceptor) {
+        builder.interceptors().add(interceptor);
+        invalidate();
+    }
+
+    public synchronized void removeInterceptor(Interceptor interceptor) {
+        if (builder.interceptors().remove(interceptor)) {
+            invalidate();
+        }
+    }
+
+    public synchronized void addNetworkInterceptor(Interceptor interceptor) {
+        builder.networkInterceptors().add(interceptor);
+        invalidate();
+    }
+
+    public synchronized void removeNetworkInterceptor(Interceptor interceptor) {
+        if (builder.networkInterceptors().remove(interceptor)) {
+            invalidate();
+        }
+    }
+
+    public synchronized void setCookieJar(CookieJar cookieJar) {
+        builder.cookieJar(cookieJar);
+        invalidate();
+    }
+
+    /**
+     * Sets the disk cache used for responses, or removes it when <code>cache</code> is null.
+     * While a cache is set, responses to requests with an Authorization header vary by a hash of the user identity,
+     * see {@link #getCacheIdentity(String)}, so that a response cached for one user is never served to another.
+     *
+     * @param cache the response cache, or null to stop caching responses
+     */
+    public synchronized void setCache(Cache cache) {
+        builder.cache(cache);
+        builder.interceptors().remove(tagCacheIdentity);
+        builder.networkInterceptors().remove(varyByCacheIdentity);
+        if (cache != null) {
+            builder.interceptors().add(tagCacheIdentity);
+            builder.networkInterceptors().add(varyByCacheIdentity);
+        }
+        responseCache = cache;
+        invalidate();
+    }
+
+    /**
+     * @return the response cache, or null when responses are not cached
+     */
+    public synchronized Cache getCache() {
+        return responseCache;
+    }
+
+    public synchronized void setFollowSslRedirects(boolean followSslRedirects) {
+        if (getClient().followSslRedirects() != followSslRedirects) {
+            builder.followSslRedirects(followSslRedirects);
+            invalidate();
+        }
+    }
+
+    // The next call to getClient() rebuilds the shared client with the new configuration.
+    // The builder keeps the same ConnectionPool and Dispatcher, so rebuilt clients still share them.
+    private void invalidate() {
+        sharedClient = null;
+        authorizationClient = null;
+        derivedClients.clear();
+    }
+}
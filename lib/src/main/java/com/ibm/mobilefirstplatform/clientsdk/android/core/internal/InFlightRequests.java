@@ -0,0 +1,163 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import okhttp3.Request;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * @exclude
+ *
+ * Coalesces identical GET requests that are in flight at the same time. The first request is sent, and every
+ * identical request sent before it completes waits for its response instead of making its own network call.
+ * Requests are identical when they have the same URL, including the query, the same headers,
+ * which includes the Authorization header, and the same cache policy and timeouts.
+ *
+ * All the listeners receive the same {@link Response}. When there is more than one listener,
+ * its body is read into memory before they are notified, so that every listener can read it.
+ * A listener that throws does not keep the others from being notified.
+ */
+class InFlightRequests {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + InFlightRequests.class.getSimpleName());
+
+    // Guards itself and the listeners of every shared call
+    private static final Map<String, SharedCall> calls = new HashMap<>();
+
+    private static volatile boolean enabled = true;
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        InFlightRequests.enabled = enabled;
+    }
+
+    /**
+     * Builds the key of a request. Requests only share a call when their settings match too, so that a request
+     * is never answered from the cache against its cache policy, and never waits longer than its own timeouts.
+     *
+     * @param request  the request
+     * @param settings the settings of the request that affect its response, see {@link BaseRequest}
+     * @return the key of the request
+     */
+    static String key(Request request, String settings) {
+        return request.method() + " " + request.url() + "\n" + settings + "\n" + request.headers();
+    }
+
+    /**
+     * Joins the call in flight for the given key, or starts a new one.
+     *
+     * @param key      the key built by {@link #key(Request, String)}
+     * @param listener the listener of the request
+     * @return the listener to send the request with, or null if the request joined a call already in flight
+     */
+    static ResponseListener join(String key, ResponseListener listener) {
+        synchronized (calls) {
+            SharedCall call = calls.get(key);
+            if (call != null) {
+                call.listeners.add(listener);
+                return null;
+            }
+
+            call = new SharedCall(key, listener);
+            calls.put(key, call);
+            return call;
+        }
+    }
+
+    /**
+     * The listener of the request that is actually sent, which notifies the listeners of every request that joined it.
+     */
+    static class SharedCall implements ResponseListener {
+        private final String key;
+        private final List<ResponseListener> listeners = new ArrayList<>();
+
+        private SharedCall(String key, ResponseListener primary) {
+            this.key = key;
+            listeners.add(primary);
+        }
+
+        ResponseListener getPrimary() {
+            synchronized (calls) {
+                return listeners.get(0);
+            }
+        }
+
+        // A request that is resent, for example after obtaining authorization, keeps the same shared call
+        void setPrimary(ResponseListener primary) {
+            synchronized (calls) {
+                listeners.set(0, primary);
+            }
+        }
+
+        // Stops new requests from joining, and returns the listeners to notify
+        private List<ResponseListener> complete() {
+            synchronized (calls) {
+                if (calls.get(key) == this) {
+                    calls.remove(key);
+                }
+                return new ArrayList<>(listeners);
+            }
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            List<ResponseListener> waiting = complete();
+            if (waiting.size() > 1 && response != null) {
+                response.getResponseBytes();
+            }
+
+            for (ResponseListener listener : waiting) {
+                if (listener != null) {
+                    try {
+                        listener.onSuccess(response);
+                    } catch (RuntimeException e) {
+                        logger.error("A ResponseListener threw an exception in onSuccess: " + e.getLocalizedMessage(), e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            List<ResponseListener> waiting = complete();
+            if (waiting.size() > 1 && response != null) {
+                response.getResponseBytes();
+            }
+
+            for (ResponseListener listener : waiting) {
+                if (listener != null) {
+                    try {
+                        listener.onFailure(response, t, extendedInfo);
+                    } catch (RuntimeException e) {
+                        logger.error("A ResponseListener threw an exception in onFailure: " + e.getLocalizedMessage(), e);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import android.content.Context;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerOpenException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkConnectionListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkConnectionType;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkMonitor;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Request;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.internal.Util;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+
+/**
+ * @exclude
+ *
+ * Stores requests that could not reach the server because the device was offline, and sends them again,
+ * in the order they were stored, when {@link NetworkMonitor} reports a connection.
+ *
+ * Each request is saved as a JSON file with its method, URL, headers, and body or the path of the file it uploads,
+ * so that requests survive the app being stopped. A request is removed once the server has responded to it,
+ * whatever the status, or when it is older than the maximum age. A replay that receives no response keeps the request
+ * only if it could not reach the server, or if sending it again cannot repeat its effect, as for idempotent methods
+ * and requests with an <code>Idempotency-Key</code> header. Requests stopped by an open circuit breaker are replayed
+ * again once the circuit breaker lets trial requests through. A request stored with a deduplication key
+ * replaces any request stored earlier with the same key. The listener of a request is notified of the response
+ * to its replay, as long as the app was not restarted in between and the request is not older than the maximum age.
+ * Once it is, the listener is notified of the failure and released, even if the device has not been online since.
+ */
+class OfflineQueue {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + OfflineQueue.class.getSimpleName());
+
+    static final long DEFAULT_MAX_AGE = 24 * 60 * 60 * 1000;
+    static final int DEFAULT_CONCURRENCY = 1;
+
+    private static final String ENTRY_SUFFIX = ".json";
+    private static final String AUTHORIZATION = "Authorization";
+    private static final String CONTENT_TYPE = "Content-Type";
+
+    private static OfflineQueue instance;
+
+    private final Context context;
+    private final File directory;
+    private NetworkMonitor networkMonitor;
+
+    // All guarded by this
+    private long maxAge = DEFAULT_MAX_AGE;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private final Map<String, ResponseListener> listeners = new HashMap<>();
+    private ArrayDeque<File> replayQueue;
+    private int replaying;
+    private boolean replayScheduled;
+    private long lastCreatedAt;
+    private int createdInSameMillisecond;
+
+    static synchronized OfflineQueue getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts storing the requests that fail while offline, and replays them whenever the device connects.
+     * Requests left from a previous run are replayed as soon as a connection is available.
+     *
+     * @param context   the context to send the requests and to monitor the network with
+     * @param directory the directory to store the requests in
+     */
+    static synchronized void enable(Context context, File directory) {
+        disable();
+        instance = new OfflineQueue(context, directory);
+        instance.startMonitoring();
+    }
+
+    static synchronized void disable() {
+        if (instance != null && instance.networkMonitor != null) {
+            instance.networkMonitor.stopMonitoringNetworkChanges();
+        }
+        instance = null;
+    }
+
+    OfflineQueue(Context context, File directory) {
+        this.context = context;
+        this.directory = directory;
+        directory.mkdirs();
+    }
+
+    private void startMonitoring() {
+        networkMonitor = new NetworkMonitor(context, new NetworkConnectionListener() {
+            @Override
+            public void networkChanged(NetworkConnectionType newConnection) {
+                // Connection changes are reported on the main thread, and the replay reads the stored requests from disk
+                if (newConnection != NetworkConnectionType.NO_CONNECTION) {
+                    CallDeadline.timer.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            replay();
+                        }
+                    });
+                }
+            }
+        });
+        // The connectivity broadcast is sticky, so the current connection is reported right away
+        networkMonitor.startMonitoringNetworkChanges();
+    }
+
+    NetworkMonitor getNetworkMonitor() {
+        return networkMonitor;
+    }
+
+    synchronized void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    synchronized void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The offline queue concurrency must be at least 1: " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * @param error the error of a request that received no response
+     * @return true if the error means that the request could not reach the server, so that it was not processed
+     */
+    static boolean isConnectivityError(IOException error) {
+        return error instanceof ConnectException || error instanceof NoRouteToHostException || error instanceof UnknownHostException;
+    }
+
+    /**
+     * @return the number of requests waiting to be replayed
+     */
+    int size() {
+        return listEntries().size();
+    }
+
+    /**
+     * Stores a request to replay it later.
+     *
+     * @param request          the request that could not be sent
+     * @param timeout          the timeout to replay the request with, in milliseconds
+     * @param deduplicationKey a key that identifies the request, so that it replaces an earlier one, or null
+     * @param listener         the listener to notify of the response to the replay, or null
+     * @return true if the request was stored, false if its body cannot be stored
+     */
+    boolean enqueue(okhttp3.Request request, int timeout, String deduplicationKey, ResponseListener listener) {
+        JSONObject entry = new JSONObject();
+        try {
+            entry.put("method", request.method());
+            entry.put("url", request.url().toString());
+            entry.put("timeout", timeout);
+            if (deduplicationKey != null) {
+                entry.put("deduplicationKey", deduplicationKey);
+            }
+
+            // The Authorization header is added again when the request is replayed, since the stored one may have expired
+            JSONArray headers = new JSONArray();
+            Headers requestHeaders = request.headers();
+            for (int i = 0; i < requestHeaders.size(); i++) {
+                if (!AUTHORIZATION.equalsIgnoreCase(requestHeaders.name(i))) {
+                    headers.put(new JSONArray().put(requestHeaders.name(i)).put(requestHeaders.value(i)));
+                }
+            }
+            entry.put("headers", headers);
+
+            if (!putBody(entry, request.body())) {
+                logger.warn("Cannot store the " + request.method() + " request to " + request.url() + " for later, because its body cannot be read again");
+                return false;
+            }
+        } catch (IOException | JSONException e) {
+            logger.warn("Cannot store the " + request.method() + " request to " + request.url() + " for later. Error: " + e.getMessage());
+            return false;
+        }
+
+        synchronized (this) {
+            if (deduplicationKey != null) {
+                removeDuplicates(deduplicationKey);
+            }
+
+            long createdAt = System.currentTimeMillis();
+            createdInSameMillisecond = createdAt == lastCreatedAt ? createdInSameMillisecond + 1 : 0;
+            lastCreatedAt = createdAt;
+
+            // File names sort in the order the requests were stored
+            String id = String.format("%013d-%04d", createdAt, createdInSameMillisecond);
+            try {
+                entry.put("createdAt", createdAt);
+                write(new File(directory, id + ENTRY_SUFFIX), entry);
+            } catch (IOException | JSONException e) {
+                logger.warn("Cannot store the " + request.method() + " request to " + request.url() + " for later. Error: " + e.getMessage());
+                return false;
+            }
+
+            if (listener != null) {
+                listeners.put(id, listener);
+                expireListener(id, maxAge);
+            }
+        }
+
+        logger.debug("Stored the " + request.method() + " request to " + request.url() + " until the device is online");
+        return true;
+    }
+
+    // Releases the listener of a request that is still stored once the request is older than the maximum age,
+    // so that the app is not kept from freeing it for as long as the device stays offline
+    private void expireListener(final String id, long delay) {
+        CallDeadline.timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ResponseListener listener;
+                synchronized (OfflineQueue.this) {
+                    listener = listeners.remove(id);
+                }
+                if (listener != null) {
+                    listener.onFailure(null, new IOException("The stored request is older than the maximum age"), null);
+                }
+            }
+        }, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    // Files are stored by reference, and other bodies by value. Streams can only be read once, so they cannot be stored.
+    private boolean putBody(JSONObject entry, RequestBody body) throws IOException, JSONException {
+        if (body == null) {
+            return true;
+        }
+
+        MediaType contentType = body.contentType();
+        if (contentType != null) {
+            entry.put("contentType", contentType.toString());
+        }
+
+        if (body instanceof ProgressRequestBody) {
+            Object payload = ((ProgressRequestBody)body).getPayload();
+            if (payload instanceof File) {
+                entry.put("file", ((File)payload).getAbsolutePath());
+                return true;
+            }
+            if (!(payload instanceof String) && !(payload instanceof byte[])) {
+                return false;
+            }
+            body = ((ProgressRequestBody)body).getRequestBody();
+        }
+
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        entry.put("body", buffer.readByteString().base64());
+        return true;
+    }
+
+    private void removeDuplicates(String deduplicationKey) {
+        for (File file : listEntries()) {
+            JSONObject entry = read(file);
+            if (entry != null && deduplicationKey.equals(entry.optString("deduplicationKey", null))) {
+                file.delete();
+                ResponseListener listener = listeners.remove(getId(file));
+                if (listener != null) {
+                    listener.onFailure(null, new IOException("The request was replaced by a newer one with the same deduplication key"), null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the stored requests in order, with at most the configured number in flight at the same time.
+     * The replay stops at the first request that still cannot reach the server.
+     */
+    void replay() {
+        List<File> ready;
+        synchronized (this) {
+            if (replayQueue != null) {
+                return;
+            }
+            replayQueue = new ArrayDeque<>(listEntries());
+            ready = takeReady();
+        }
+        send(ready);
+    }
+
+    // Takes the next entries to send, and ends the replay when there is nothing left
+    private List<File> takeReady() {
+        List<File> ready = new ArrayList<>();
+        while (replayQueue != null && replaying < concurrency && !replayQueue.isEmpty()) {
+            ready.add(replayQueue.poll());
+            replaying++;
+        }
+        if (replayQueue != null && replayQueue.isEmpty() && replaying == 0) {
+            replayQueue = null;
+        }
+        return ready;
+    }
+
+    private void send(List<File> files) {
+        for (File file : files) {
+            send(file);
+        }
+    }
+
+    private void send(final File file) {
+        final String id = getId(file);
+        JSONObject entry = read(file);
+
+        if (entry == null || System.currentTimeMillis() - entry.optLong("createdAt") > getMaxAge()) {
+            file.delete();
+            String reason = entry == null ? "could not be read" : "is older than the maximum age";
+            logger.warn("Discarding the stored request " + id + ", because it " + reason);
+            finished(id, null, new IOException("The stored request " + reason), false);
+            return;
+        }
+
+        try {
+            Request request = new Request(entry.getString("url"), entry.getString("method"), entry.getInt("timeout"));
+            boolean hasIdempotencyKey = false;
+            JSONArray headers = entry.getJSONArray("headers");
+            for (int i = 0; i < headers.length(); i++) {
+                request.addHeader(headers.getJSONArray(i).getString(0), headers.getJSONArray(i).getString(1));
+                hasIdempotencyKey |= BaseRequest.IDEMPOTENCY_KEY.equalsIgnoreCase(headers.getJSONArray(i).getString(0));
+            }
+            final boolean safeToResend = BaseRequest.isSafeToResend(entry.getString("method"), hasIdempotencyKey);
+            String contentType = entry.optString("contentType", null);
+            if (contentType != null) {
+                request.removeHeaders(CONTENT_TYPE);
+                request.addHeader(CONTENT_TYPE, contentType);
+            }
+
+            ResponseListener replayListener = new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    file.delete();
+                    finished(id, response, null, false);
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    // Without a response, the request is kept for the next replay if it did not reach the server,
+                    // or if the server processing it twice does no harm
+                    boolean unsent = t instanceof CircuitBreakerOpenException
+                            || (t instanceof IOException && isConnectivityError((IOException)t));
+                    boolean keep = response == null && (unsent || safeToResend);
+                    if (!keep) {
+                        file.delete();
+                    }
+                    finished(id, response, t, keep);
+                }
+            };
+
+            if (entry.has("file")) {
+                request.upload(context, new File(entry.getString("file")), null, replayListener);
+            } else if (entry.has("body")) {
+                ByteString body = ByteString.decodeBase64(entry.getString("body"));
+                request.send(context, body != null ? body.toByteArray() : new byte[0], replayListener);
+            } else {
+                request.send(context, replayListener);
+            }
+        } catch (JSONException e) {
+            file.delete();
+            logger.warn("Discarding the stored request " + id + ", because it is not valid. Error: " + e.getMessage());
+            finished(id, null, e, false);
+        }
+    }
+
+    private void finished(String id, Response response, Throwable error, boolean keep) {
+        ResponseListener listener;
+        List<File> ready;
+        boolean scheduleReplay = false;
+        synchronized (this) {
+            listener = keep ? null : listeners.remove(id);
+            replaying--;
+            if (error instanceof CircuitBreakerOpenException) {
+                // The device is online, so no connection change may come to replay the remaining requests
+                if (replayQueue != null) {
+                    replayQueue.clear();
+                }
+                scheduleReplay = !replayScheduled;
+                replayScheduled = true;
+            } else if (keep && replayQueue != null && error instanceof IOException && isConnectivityError((IOException)error)) {
+                // Still offline, so the remaining requests wait for the next connection
+                replayQueue.clear();
+            }
+            ready = takeReady();
+        }
+
+        if (scheduleReplay) {
+            CircuitBreakerConfig config = CircuitBreaker.getConfig();
+            CallDeadline.timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (OfflineQueue.this) {
+                        replayScheduled = false;
+                    }
+                    replay();
+                }
+            }, config != null ? config.getOpenDuration() : 0, TimeUnit.MILLISECONDS);
+        }
+
+        if (listener != null) {
+            if (response != null && error == null) {
+                listener.onSuccess(response);
+            } else {
+                listener.onFailure(response, error, null);
+            }
+        }
+        send(ready);
+    }
+
+    private synchronized long getMaxAge() {
+        return maxAge;
+    }
+
+    private List<File> listEntries() {
+        File[] files = directory.listFiles();
+        List<File> entries = new ArrayList<>();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.getName().endsWith(ENTRY_SUFFIX)) {
+                    entries.add(file);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static String getId(File file) {
+        String name = file.getName();
+        return name.substring(0, name.length() - ENTRY_SUFFIX.length());
+    }
+
+    private static JSONObject read(File file) {
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(file));
+            return new JSONObject(source.readUtf8());
+        } catch (IOException | JSONException e) {
+            return null;
+        } finally {
+            Util.closeQuietly(source);
+        }
+    }
+
+    // Writes to a temporary file first, so a crash never leaves a partially written entry
+    private static void write(File file, JSONObject entry) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        BufferedSink sink = Okio.buffer(Okio.sink(tempFile));
+        try {
+            sink.writeUtf8(entry.toString());
+        } finally {
+            sink.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile + " to " + file);
+        }
+    }
+}
@@ -9,8 +9,12 @@ import okhttp3.internal.Util;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
 
 import okio.BufferedSink;
 import okio.Okio;
@@ -24,13 +28,24 @@ import okio.Source;
  */
 public class ProgressRequestBody extends RequestBody {
 
-    // The size of buffer segments used by Okio (2 KiB)
-    protected static final int SEGMENT_SIZE = 2048;
+    // The size of buffer segments used by Okio (8 KiB). Uploads start with chunks of this size...
+    protected static final int SEGMENT_SIZE = 8192;
+    // ...and grow up to this size while the payload keeps filling them
+    protected static final int MAX_CHUNK_SIZE = 65536;
+
+    // The ProgressListener is called once at least this many bytes, or this much time, has passed since the last call
+    protected static final long PROGRESS_INTERVAL_BYTES = 65536;
+    protected static final long PROGRESS_INTERVAL_MILLIS = 100;
 
     private Object payload;
     private ProgressListener listener;
     private RequestBody requestBody;
 
+    // -2 until the content length has been asked for, since -1 means unknown
+    private long contentLength = -2;
+    private long bytesReported;
+    private long lastReportTime;
+
     private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + ProgressRequestBody.class.getSimpleName());
 
     public ProgressRequestBody(Object payload, RequestBody requestBody, ProgressListener listener) {
@@ -39,14 +54,28 @@ public class ProgressRequestBody extends RequestBody {
         this.requestBody = requestBody;
     }
 
+    Object getPayload() {
+        return payload;
+    }
+
+    RequestBody getRequestBody() {
+        return requestBody;
+    }
+
     @Override
     public long contentLength() {
-        try {
-            return requestBody.contentLength();
-        } catch (IOException e) {
-            e.printStackTrace();
+        if (contentLength == -2 && payload instanceof FileRegion) {
+            contentLength = ((FileRegion)payload).length;
+        }
+        else if (contentLength == -2) {
+            try {
+                contentLength = requestBody.contentLength();
+            } catch (IOException e) {
+                e.printStackTrace();
+                contentLength = -1;
+            }
         }
-        return -1;
+        return contentLength;
     }
 
     @Override
@@ -56,6 +85,20 @@ public class ProgressRequestBody extends RequestBody {
 
     @Override
     public void writeTo(BufferedSink sink) throws IOException {
+        // The body may be written more than once (for example, after a redirect or a retry)
+        bytesReported = 0;
+        lastReportTime = System.nanoTime();
+
+        if (payload instanceof File) {
+            writeFileTo((File)payload, 0, ((File)payload).length(), sink);
+            return;
+        }
+        else if (payload instanceof FileRegion) {
+            FileRegion region = (FileRegion)payload;
+            writeFileTo(region.file, region.offset, region.length, sink);
+            return;
+        }
+
         Source source = getSourceFromPayload(payload);
         if (source == null) {
             logger.error("Cannot upload. Unable to read the payload.");
@@ -64,18 +107,72 @@ public class ProgressRequestBody extends RequestBody {
 
         try {
             long bytesRead = 0;
-            long segment;
-
-            while ((segment = source.read(sink.buffer(), SEGMENT_SIZE)) != -1) {
-                bytesRead += segment;
-                sink.flush();
-                this.listener.onProgress(bytesRead, contentLength());
+            long chunkSize = SEGMENT_SIZE;
+            long chunk;
+
+            // Reading straight into the sink's buffer hands whole Okio segments to the connection without copying them.
+            // Only complete segments are emitted, so the socket is written in large blocks instead of being flushed every chunk.
+            while ((chunk = source.read(sink.buffer(), chunkSize)) != -1) {
+                bytesRead += chunk;
+                sink.emitCompleteSegments();
+                updateProgress(bytesRead, false);
+
+                if (chunk == chunkSize && chunkSize < MAX_CHUNK_SIZE) {
+                    chunkSize *= 2;
+                }
             }
+            sink.flush();
+            updateProgress(bytesRead, true);
         } finally {
             Util.closeQuietly(source);
         }
     }
 
+    // Files are read through their FileChannel in chunks of up to MAX_CHUNK_SIZE, with a single read call per chunk.
+    // The OkHttp sink is not a channel (and may be encrypted), so FileChannel.transferTo() could not skip the copy to the sink anyway.
+    private void writeFileTo(File file, long offset, long length, BufferedSink sink) throws IOException {
+        FileInputStream fileStream = new FileInputStream(file);
+        try {
+            FileChannel channel = fileStream.getChannel();
+            channel.position(offset);
+            ByteBuffer chunk = ByteBuffer.allocate((int)Math.min(MAX_CHUNK_SIZE, Math.max(length, SEGMENT_SIZE)));
+            long bytesRead = 0;
+            int read;
+
+            while (bytesRead < length) {
+                chunk.limit((int)Math.min(chunk.capacity(), length - bytesRead));
+                if ((read = channel.read(chunk)) == -1) {
+                    break;
+                }
+                sink.write(chunk.array(), 0, read);
+                chunk.clear();
+                bytesRead += read;
+                updateProgress(bytesRead, false);
+            }
+            sink.flush();
+            updateProgress(bytesRead, true);
+        } finally {
+            Util.closeQuietly(fileStream);
+        }
+    }
+
+    // Throttles calls to the ProgressListener by bytes and by time. The final call is always made.
+    private void updateProgress(long bytesSoFar, boolean done) {
+        if (listener == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        boolean intervalPassed = bytesSoFar - bytesReported >= PROGRESS_INTERVAL_BYTES
+                || TimeUnit.NANOSECONDS.toMillis(now - lastReportTime) >= PROGRESS_INTERVAL_MILLIS;
+
+        if ((done && (bytesSoFar != bytesReported || bytesSoFar == 0)) || (!done && intervalPassed)) {
+            bytesReported = bytesSoFar;
+            lastReportTime = now;
+            listener.onProgress(bytesSoFar, contentLength());
+        }
+    }
+
     protected Source getSourceFromPayload(Object payload) throws IOException {
         if (payload instanceof String) {
             InputStream stringStream = new ByteArrayInputStream(((String) payload).getBytes(requestBody.contentType().charset()));
@@ -95,4 +192,19 @@ public class ProgressRequestBody extends RequestBody {
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * A part of a file, uploaded as the payload of a ProgressRequestBody.
+     */
+    static class FileRegion {
+        final File file;
+        final long offset;
+        final long length;
+
+        FileRegion(File file, long offset, long length) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.MetricsExporter;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestMetricsSnapshot;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import okhttp3.HttpUrl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @exclude
+ *
+ * Aggregates the latencies, errors and bytes of requests for each host, and for each endpoint of a host.
+ * Requests are recorded by {@link RequestTimingsRecorder} when their call ends, without locks. Each request builds
+ * the name of its endpoint once, when it starts; updating the aggregates of a host or endpoint that has already been
+ * seen does not allocate. Snapshots read the aggregates while requests keep being recorded, and can be forwarded
+ * periodically to a {@link MetricsExporter}.
+ */
+class RequestMetricsRegistry {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + RequestMetricsRegistry.class.getSimpleName());
+
+    // Beyond this, new endpoints of a host are only counted in the metrics of the host
+    static final int MAX_ENDPOINTS_PER_HOST = 100;
+
+    private static final String IDENTIFIER = "{id}";
+    private static final int MIN_HEX_IDENTIFIER_LENGTH = 16;
+
+    private static final RequestMetricsRegistry instance = new RequestMetricsRegistry();
+
+    private volatile boolean enabled;
+    private volatile Window window = new Window();
+
+    // Guarded by this
+    private ScheduledFuture<?> exportTask;
+
+    static RequestMetricsRegistry getInstance() {
+        return instance;
+    }
+
+    RequestMetricsRegistry() {
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Discards the metrics recorded so far.
+     */
+    void reset() {
+        window = new Window();
+    }
+
+    /**
+     * Builds the endpoint of a request, from its method and path, with the path segments that look like identifiers
+     * replaced, so that requests to <code>/users/42</code> and <code>/users/43</code> share the endpoint <code>GET /users/{id}</code>.
+     * The name is not cached by URL, since every identifier would add an entry; it is built once per request.
+     *
+     * @param method the method of the request
+     * @param url    the URL of the request
+     * @return the endpoint of the request
+     */
+    static String endpointOf(String method, HttpUrl url) {
+        StringBuilder endpoint = new StringBuilder(method).append(' ');
+        for (String segment : url.pathSegments()) {
+            endpoint.append('/').append(isIdentifier(segment) ? IDENTIFIER : segment);
+        }
+        return endpoint.toString();
+    }
+
+    // Numbers, and long hexadecimal strings such as UUIDs and hashes
+    private static boolean isIdentifier(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+
+        boolean digitsOnly = true;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9') {
+                digitsOnly = false;
+                if ((c < 'a' || c > 'f') && (c < 'A' || c > 'F') && c != '-') {
+                    return false;
+                }
+            }
+        }
+        return digitsOnly || segment.length() >= MIN_HEX_IDENTIFIER_LENGTH;
+    }
+
+    /**
+     * Records a request that ended.
+     *
+     * @param host          the host of the request
+     * @param endpoint      the endpoint built by {@link #endpointOf(String, HttpUrl)}
+     * @param latency       the time from the start of the request to its end, in milliseconds
+     * @param error         whether the request received no response, or a response with a 5xx status
+     * @param bytesSent     the number of bytes of request body sent
+     * @param bytesReceived the number of bytes of response body received
+     */
+    void record(String host, String endpoint, long latency, boolean error, long bytesSent, long bytesReceived) {
+        HostMetrics hostMetrics = window.getHostMetrics(host);
+        hostMetrics.total.record(latency, error, bytesSent, bytesReceived);
+
+        Metrics endpointMetrics = hostMetrics.getEndpointMetrics(endpoint);
+        if (endpointMetrics != null) {
+            endpointMetrics.record(latency, error, bytesSent, bytesReceived);
+        }
+    }
+
+    /**
+     * @return a snapshot of the metrics of each host, each followed by the snapshots of its endpoints
+     */
+    List<RequestMetricsSnapshot> snapshot() {
+        Window currentWindow = window;
+        long now = System.currentTimeMillis();
+
+        List<RequestMetricsSnapshot> snapshots = new ArrayList<>();
+        for (Map.Entry<String, HostMetrics> host : currentWindow.hosts.entrySet()) {
+            snapshots.add(host.getValue().total.snapshot(host.getKey(), null, currentWindow.startTime, now));
+            for (Map.Entry<String, Metrics> endpoint : host.getValue().endpoints.entrySet()) {
+                snapshots.add(endpoint.getValue().snapshot(host.getKey(), endpoint.getKey(), currentWindow.startTime, now));
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Forwards a snapshot of the metrics to the exporter at the given interval, replacing the previous exporter.
+     *
+     * @param exporter the exporter, or null to stop exporting
+     * @param interval the time between exports, in milliseconds
+     */
+    synchronized void setExporter(final MetricsExporter exporter, long interval) {
+        if (exportTask != null) {
+            exportTask.cancel(false);
+            exportTask = null;
+        }
+        if (exporter == null) {
+            return;
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The export interval must be positive: " + interval);
+        }
+
+        exportTask = CallDeadline.timer.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                // An exception would cancel the next exports
+                try {
+                    List<RequestMetricsSnapshot> snapshots = snapshot();
+                    if (!snapshots.isEmpty()) {
+                        exporter.export(snapshots);
+                    }
+                } catch (RuntimeException e) {
+                    logger.warn("Could not export request metrics. Error: " + e.getMessage());
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // The metrics recorded since the registry was created or last reset
+    private static class Window {
+        final long startTime = System.currentTimeMillis();
+        final ConcurrentMap<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+
+        HostMetrics getHostMetrics(String host) {
+            HostMetrics hostMetrics = hosts.get(host);
+            if (hostMetrics == null) {
+                HostMetrics created = new HostMetrics();
+                hostMetrics = hosts.putIfAbsent(host, created);
+                if (hostMetrics == null) {
+                    hostMetrics = created;
+                }
+            }
+            return hostMetrics;
+        }
+    }
+
+    private static class HostMetrics {
+        final Metrics total = new Metrics();
+        final ConcurrentMap<String, Metrics> endpoints = new ConcurrentHashMap<>();
+
+        // Returns null once the host has too many endpoints
+        Metrics getEndpointMetrics(String endpoint) {
+            Metrics metrics = endpoints.get(endpoint);
+            if (metrics == null && endpoints.size() < MAX_ENDPOINTS_PER_HOST) {
+                Metrics created = new Metrics();
+                metrics = endpoints.putIfAbsent(endpoint, created);
+                if (metrics == null) {
+                    metrics = created;
+                }
+            }
+            return metrics;
+        }
+    }
+
+    private static class Metrics {
+        final LatencyHistogram latencies = new LatencyHistogram();
+        final StripedCounter errors = new StripedCounter();
+        final StripedCounter bytesSent = new StripedCounter();
+        final StripedCounter bytesReceived = new StripedCounter();
+
+        void record(long latency, boolean error, long sent, long received) {
+            latencies.record(latency);
+            if (error) {
+                errors.increment();
+            }
+            bytesSent.add(sent);
+            bytesReceived.add(received);
+        }
+
+        RequestMetricsSnapshot snapshot(String host, String endpoint, long startTime, long endTime) {
+            long count = latencies.getCount();
+            long[] percentiles = latencies.getPercentiles(50, 95, 99);
+            return new RequestMetricsSnapshot(host, endpoint, count, errors.sum(), bytesSent.sum(), bytesReceived.sum(),
+                    percentiles[0], percentiles[1], percentiles[2], latencies.getMax(),
+                    count > 0 ? latencies.getSum() / count : 0, startTime, endTime);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestPriority;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * @exclude
+ *
+ * Limits how many requests run at the same time, overall and per host, and decides which waiting request runs next.
+ * OkHttp's own dispatcher runs calls in the order they were enqueued, so a burst of large downloads delays every
+ * request queued after it. Here, each {@link RequestPriority} has its own queue, and the queues take turns in a
+ * weighted round robin: up to 4 interactive requests, then up to 2 normal ones, then 1 background one.
+ * A request whose host is at its limit is skipped, so it does not hold back requests to other hosts.
+ *
+ * A request keeps its slot until its callback returns, which includes reading the response body.
+ */
+class RequestScheduler {
+
+    static final int DEFAULT_MAX_REQUESTS = 64;
+    static final int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+
+    // Consecutive turns of each priority, indexed by ordinal
+    private static final int[] WEIGHTS = {4, 2, 1};
+
+    private static final RequestScheduler instance = new RequestScheduler();
+
+    // All guarded by this
+    private final List<ArrayDeque<ScheduledCall>> queues = new ArrayList<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private int maxRequests = DEFAULT_MAX_REQUESTS;
+    private int maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+    private int running;
+    private int lane;
+    private int turnsInLane;
+    private final long[] totalWaitTime = new long[WEIGHTS.length];
+    private final long[] maxWaitTime = new long[WEIGHTS.length];
+    private final long[] startedCount = new long[WEIGHTS.length];
+
+    static RequestScheduler getInstance() {
+        return instance;
+    }
+
+    RequestScheduler() {
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            queues.add(new ArrayDeque<ScheduledCall>());
+        }
+    }
+
+    /**
+     * Runs the call as soon as the limits allow it.
+     *
+     * @param call        the call to run
+     * @param callback    the callback to notify
+     * @param priority    the priority of the call
+     * @param callTimeout the total time allowed for the call once it runs, in milliseconds, or 0 for none
+     */
+    void enqueue(Call call, Callback callback, RequestPriority priority, int callTimeout) {
+        ScheduledCall scheduledCall = new ScheduledCall(call, callback, priority, callTimeout);
+        synchronized (this) {
+            queues.get(priority.ordinal()).add(scheduledCall);
+        }
+        startReadyCalls();
+    }
+
+    private void startReadyCalls() {
+        List<ScheduledCall> ready = new ArrayList<>();
+        synchronized (this) {
+            ScheduledCall next;
+            while (running < maxRequests && (next = takeNext()) != null) {
+                running++;
+                runningPerHost.put(next.host, getRunningCount(next.host) + 1);
+
+                int index = next.priority.ordinal();
+                long waitTime = System.currentTimeMillis() - next.enqueuedAt;
+                totalWaitTime[index] += waitTime;
+                maxWaitTime[index] = Math.max(maxWaitTime[index], waitTime);
+                startedCount[index]++;
+
+                ready.add(next);
+            }
+        }
+
+        // Calls are started outside the lock, since a failing call can complete right away
+        for (ScheduledCall scheduledCall : ready) {
+            scheduledCall.start();
+        }
+    }
+
+    // Takes the next call whose host is below its limit, giving each queue a number of turns set by its weight
+    private ScheduledCall takeNext() {
+        for (int i = 0; i < WEIGHTS.length; i++) {
+            int candidateLane = (lane + i) % WEIGHTS.length;
+            ScheduledCall next = takeFirstAllowed(queues.get(candidateLane));
+            if (next == null) {
+                continue;
+            }
+
+            if (candidateLane != lane) {
+                lane = candidateLane;
+                turnsInLane = 0;
+            }
+            if (++turnsInLane >= WEIGHTS[lane]) {
+                lane = (lane + 1) % WEIGHTS.length;
+                turnsInLane = 0;
+            }
+            return next;
+        }
+        return null;
+    }
+
+    private ScheduledCall takeFirstAllowed(ArrayDeque<ScheduledCall> queue) {
+        Iterator<ScheduledCall> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            ScheduledCall scheduledCall = iterator.next();
+            if (getRunningCount(scheduledCall.host) < maxRequestsPerHost) {
+                iterator.remove();
+                return scheduledCall;
+            }
+        }
+        return null;
+    }
+
+    private int getRunningCount(String host) {
+        Integer count = runningPerHost.get(host);
+        return count != null ? count : 0;
+    }
+
+    private void finished(ScheduledCall scheduledCall) {
+        synchronized (this) {
+            running--;
+            int count = getRunningCount(scheduledCall.host) - 1;
+            if (count > 0) {
+                runningPerHost.put(scheduledCall.host, count);
+            } else {
+                runningPerHost.remove(scheduledCall.host);
+            }
+        }
+        startReadyCalls();
+    }
+
+    /**
+     * Sets how many requests can run at the same time. Waiting requests start right away if the limit grows.
+     *
+     * @param maxRequests the maximum number of concurrent requests, at least 1
+     */
+    void setMaxRequests(int maxRequests) {
+        if (maxRequests < 1) {
+            throw new IllegalArgumentException("The maximum number of concurrent requests must be at least 1: " + maxRequests);
+        }
+        synchronized (this) {
+            this.maxRequests = maxRequests;
+        }
+        raiseDispatcherLimits();
+        startReadyCalls();
+    }
+
+    synchronized int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Sets how many requests to the same host can run at the same time. Waiting requests start right away if the limit grows.
+     *
+     * @param maxRequestsPerHost the maximum number of concurrent requests per host, at least 1
+     */
+    void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        if (maxRequestsPerHost < 1) {
+            throw new IllegalArgumentException("The maximum number of concurrent requests per host must be at least 1: " + maxRequestsPerHost);
+        }
+        synchronized (this) {
+            this.maxRequestsPerHost = maxRequestsPerHost;
+        }
+        raiseDispatcherLimits();
+        startReadyCalls();
+    }
+
+    synchronized int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    // The limits are enforced here, so OkHttp's dispatcher must not queue the calls a second time
+    private void raiseDispatcherLimits() {
+        Dispatcher dispatcher = HttpClientManager.getInstance().getClient().dispatcher();
+        synchronized (this) {
+            dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), maxRequests));
+            dispatcher.setMaxRequestsPerHost(Math.max(dispatcher.getMaxRequestsPerHost(), maxRequestsPerHost));
+        }
+    }
+
+    synchronized int getQueuedCount(RequestPriority priority) {
+        return queues.get(priority.ordinal()).size();
+    }
+
+    synchronized int getRunningCount() {
+        return running;
+    }
+
+    /**
+     * @param priority the priority of the requests
+     * @return the average time that the requests with the given priority waited before running, in milliseconds
+     */
+    synchronized long getAverageWaitTime(RequestPriority priority) {
+        int index = priority.ordinal();
+        return startedCount[index] > 0 ? totalWaitTime[index] / startedCount[index] : 0;
+    }
+
+    /**
+     * @param priority the priority of the requests
+     * @return the longest time that a request with the given priority waited before running, in milliseconds
+     */
+    synchronized long getMaxWaitTime(RequestPriority priority) {
+        return maxWaitTime[priority.ordinal()];
+    }
+
+    private class ScheduledCall implements Callback {
+        private final Call call;
+        private final Callback callback;
+        private final RequestPriority priority;
+        private final int callTimeout;
+        private final String host;
+        private final long enqueuedAt = System.currentTimeMillis();
+
+        ScheduledCall(Call call, Callback callback, RequestPriority priority, int callTimeout) {
+            this.call = call;
+            this.callback = callback;
+            this.priority = priority;
+            this.callTimeout = callTimeout;
+            this.host = call.request().url().host();
+        }
+
+        void start() {
+            if (callTimeout > 0) {
+                CallDeadline.enqueue(call, this, callTimeout);
+            } else {
+                call.enqueue(this);
+            }
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            try {
+                callback.onFailure(call, e);
+            } finally {
+                finished(this);
+            }
+        }
+
+        @Override
+        public void onResponse(Call call, okhttp3.Response response) throws IOException {
+            try {
+                callback.onResponse(call, response);
+            } finally {
+                finished(this);
+            }
+        }
+    }
+}
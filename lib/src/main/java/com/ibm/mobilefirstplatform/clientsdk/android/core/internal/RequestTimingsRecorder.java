@@ -0,0 +1,292 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimings;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimingsListener;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @exclude
+ *
+ * Records the {@link RequestTimings} of a call from the events that OkHttp reports while running it.
+ * One recorder is created for each call of the shared client. It stays reachable from the {@link CallTag} of the request
+ * of its call, so that the timings can be attached to the response of the call, and it reports the timings to the global
+ * listeners when the call ends. Neither takes a lock shared by other calls.
+ * It also records the call in the {@link RequestMetricsRegistry} while request metrics are enabled.
+ */
+class RequestTimingsRecorder extends EventListener {
+
+    static final EventListener.Factory FACTORY = new EventListener.Factory() {
+        @Override
+        public EventListener create(Call call) {
+            RequestTimingsRecorder recorder = new RequestTimingsRecorder(call.request());
+            Object tag = call.request().tag();
+            if (tag instanceof CallTag) {
+                ((CallTag)tag).setRecorder(call, recorder);
+            }
+            return recorder;
+        }
+    };
+
+    private static final List<RequestTimingsListener> listeners = new CopyOnWriteArrayList<>();
+
+    private static final long NONE = -1;
+
+    private final String method;
+    private final String url;
+
+    // Only set while request metrics are enabled, so that the endpoint is built before the call runs
+    private final String host;
+    private final String endpoint;
+
+    // All in nanoseconds, and guarded by this. Durations are NONE until their phase happens.
+    private long callStartedAt;
+    private long callEndedAt;
+    private long dnsStartedAt;
+    private long connectStartedAt;
+    private long secureConnectStartedAt;
+    private long requestStartedAt;
+    private long requestEndedAt;
+    private long responseStartedAt;
+    private long dnsDuration = NONE;
+    private long connectDuration = NONE;
+    private long secureConnectDuration = NONE;
+    private long requestDuration = NONE;
+    private long timeToFirstByte = NONE;
+    private long responseDuration = NONE;
+    private int connectCount;
+    private boolean connectionAcquired;
+    private long bytesSent;
+    private long bytesReceived;
+    private int statusCode;
+    private boolean responseBodyEnded;
+    private boolean failed;
+    private boolean ended;
+
+    /**
+     * @param call a call of the shared client
+     * @return the recorder of the call, or null if its request was not sent by {@link BaseRequest}
+     */
+    static RequestTimingsRecorder forCall(Call call) {
+        Request request = call != null ? call.request() : null;
+        Object tag = request != null ? request.tag() : null;
+        return tag instanceof CallTag ? ((CallTag)tag).getRecorder(call) : null;
+    }
+
+    static void addListener(RequestTimingsListener listener) {
+        listeners.add(listener);
+    }
+
+    static void removeListener(RequestTimingsListener listener) {
+        listeners.remove(listener);
+    }
+
+    RequestTimingsRecorder(Request request) {
+        this.method = request.method();
+        this.url = request.url().toString();
+
+        if (RequestMetricsRegistry.getInstance().isEnabled()) {
+            host = request.url().host();
+            endpoint = RequestMetricsRegistry.endpointOf(method, request.url());
+        } else {
+            host = null;
+            endpoint = null;
+        }
+    }
+
+    /**
+     * @return the timings recorded so far. The phases that have not ended yet are reported as not having happened.
+     */
+    synchronized RequestTimings getTimings() {
+        long endedAt = callEndedAt != 0 ? callEndedAt : System.nanoTime();
+        return new RequestTimings(method, url, toMillis(dnsDuration), toMillis(connectDuration), toMillis(secureConnectDuration),
+                toMillis(requestDuration), toMillis(timeToFirstByte), toMillis(responseDuration), toMillis(endedAt - callStartedAt),
+                connectionAcquired && connectCount == 0, bytesSent, bytesReceived, failed);
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos == NONE ? NONE : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    // Adds the time since the given start to a duration that may not have started yet
+    private static long add(long duration, long startedAt) {
+        return Math.max(duration, 0) + (System.nanoTime() - startedAt);
+    }
+
+    @Override
+    public synchronized void callStart(Call call) {
+        callStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void dnsStart(Call call, String domainName) {
+        dnsStartedAt = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        dnsDuration = add(dnsDuration, dnsStartedAt);
+    }
+
+    @Override
+    public synchronized void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        connectStartedAt = System.nanoTime();
+        secureConnectStartedAt = 0;
+        connectCount++;
+    }
+
+    @Override
+    public synchronized void secureConnectStart(Call call) {
+        secureConnectStartedAt = System.nanoTime();
+        connectDuration = add(connectDuration, connectStartedAt);
+    }
+
+    @Override
+    public synchronized void secureConnectEnd(Call call, Handshake handshake) {
+        secureConnectDuration = add(secureConnectDuration, secureConnectStartedAt);
+    }
+
+    @Override
+    public synchronized void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+        connectEnded();
+    }
+
+    @Override
+    public synchronized void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+        connectEnded();
+    }
+
+    // The TCP connection time was already added when the TLS handshake started
+    private void connectEnded() {
+        if (secureConnectStartedAt == 0) {
+            connectDuration = add(connectDuration, connectStartedAt);
+        }
+    }
+
+    @Override
+    public synchronized void connectionAcquired(Call call, Connection connection) {
+        connectionAcquired = true;
+    }
+
+    @Override
+    public synchronized void requestHeadersStart(Call call) {
+        requestStartedAt = System.nanoTime();
+        requestEndedAt = 0;
+    }
+
+    @Override
+    public synchronized void requestHeadersEnd(Call call, Request request) {
+        requestEndedAt = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void requestBodyEnd(Call call, long byteCount) {
+        requestEndedAt = System.nanoTime();
+        bytesSent += byteCount;
+    }
+
+    @Override
+    public synchronized void responseHeadersStart(Call call) {
+        responseStartedAt = System.nanoTime();
+        if (requestEndedAt != 0) {
+            requestDuration = Math.max(requestDuration, 0) + (requestEndedAt - requestStartedAt);
+            timeToFirstByte = add(timeToFirstByte, requestEndedAt);
+            requestEndedAt = 0;
+        }
+    }
+
+    @Override
+    public synchronized void responseHeadersEnd(Call call, Response response) {
+        statusCode = response.code();
+        responseBodyEnded = false;
+    }
+
+    @Override
+    public synchronized void responseBodyEnd(Call call, long byteCount) {
+        responseDuration = add(responseDuration, responseStartedAt);
+        bytesReceived += byteCount;
+        responseBodyEnded = true;
+    }
+
+    @Override
+    public void connectionReleased(Call call, Connection connection) {
+        // OkHttp 3.9 does not report the end of a call whose response has an empty body, but it does release
+        // its connection. A redirect releases the connection too, but the call goes on with the next request.
+        boolean completed;
+        synchronized (this) {
+            completed = responseBodyEnded && (statusCode < 300 || statusCode >= 400);
+        }
+        if (completed) {
+            ended(false);
+        }
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        ended(false);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        ended(true);
+    }
+
+    private void ended(boolean failed) {
+        long latency;
+        boolean error;
+        long sent;
+        long received;
+        synchronized (this) {
+            if (ended) {
+                return;
+            }
+            ended = true;
+            callEndedAt = System.nanoTime();
+            this.failed = failed;
+            latency = toMillis(callEndedAt - callStartedAt);
+            error = failed || statusCode >= 500;
+            sent = bytesSent;
+            received = bytesReceived;
+        }
+
+        if (endpoint != null) {
+            RequestMetricsRegistry.getInstance().record(host, endpoint, latency, error, sent, received);
+        }
+
+        // The timings are only built when someone listens, to keep the end of every call cheap
+        if (!listeners.isEmpty()) {
+            RequestTimings timings = getTimings();
+            for (RequestTimingsListener listener : listeners) {
+                listener.onRequestTimings(timings);
+            }
+        }
+    }
+}
@@ -14,8 +14,11 @@
 package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
 
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Request;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimings;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseConverter;
 import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -25,6 +28,8 @@ import java.util.Map;
 import java.util.Set;
 import okhttp3.Headers;
 import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okhttp3.internal.Util;
 import org.apache.commons.io.IOUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -39,8 +44,17 @@ public class ResponseImpl implements Response {
     private String requestURL;
     private Headers headers;
     private MediaType contentType;
+
+    // The body is read lazily, at most once, in whichever form is asked for first.
+    // All guarded by this
+    private boolean bodyRead;
     private InputStream responseByteStream;
     private byte[] bodyBytes;
+    private String responseText;
+    private JSONObject responseJSON;
+    private boolean responseJSONParsed;
+
+    private volatile RequestTimingsRecorder timingsRecorder;
 
     private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + ResponseImpl.class.getSimpleName());
 
@@ -54,17 +68,29 @@ public class ResponseImpl implements Response {
             try
             {
                 contentType = okHttpResponse.body().contentType();
-                responseByteStream = okHttpResponse.body().byteStream();
-                this.bodyBytes = this.okHttpResponse.body().bytes();
             }
-            catch (NullPointerException | IOException e)
+            catch (NullPointerException e)
             {
-                logger.error("Response body bytes can't be read: " + e.getLocalizedMessage());
-                this.bodyBytes = null;
+                logger.error("Response body content type can't be read: " + e.getLocalizedMessage());
             }
         }
     }
 
+    void setTimingsRecorder(RequestTimingsRecorder timingsRecorder) {
+        this.timingsRecorder = timingsRecorder;
+    }
+
+    /**
+     * Returns how long each phase of the request took, whether it reused a connection, and how many bytes it transferred.
+     * The response phase is only known once the body has been read to the end.
+     *
+     * @return The timings of the request, or null if they were not recorded, for example for a response created by the app.
+     */
+    public RequestTimings getTimings() {
+        RequestTimingsRecorder recorder = timingsRecorder;
+        return recorder != null ? recorder.getTimings() : null;
+    }
+
     /**
      * Returns the URL that the request was made to.
      *
@@ -103,20 +129,25 @@ public class ResponseImpl implements Response {
 
     /**
      * This method parses the response body as a String.
-     * If this method is called, then subsequent calls to {@link #getResponseByteStream()} or {@link #getResponseBytes()}
-     * will return null unless the {@link Request} was made using a <code>download()</code> method.
+     * The body is only read once, the first time any of its forms is asked for, and the result is kept,
+     * so calling this method again or calling the other body accessors does not read it again.
+     * If {@link #getResponseByteStream()} was called first, the body belongs to that stream and is not available here.
      *
      * @return The body of the response as a String. Empty string if there is no body.
      */
-    public String getResponseText() {
-        if (this.bodyBytes == null) {
+    public synchronized String getResponseText() {
+        if (responseText != null) {
+            return responseText;
+        }
+
+        byte[] bytes = readBody();
+        if (bytes == null) {
             return "";
         }
 
-        Charset charset = contentType != null ? contentType.charset(Charset.forName("UTF-8"))
-            : Charset.forName("UTF-8");
         try {
-            return new String(this.bodyBytes, charset.name());
+            responseText = new String(bytes, getCharset().name());
+            return responseText;
         } catch (UnsupportedEncodingException e) {
             logger.warn("Failed to extract text from response body. Error: " + e.getMessage());
             return null;
@@ -125,62 +156,138 @@ public class ResponseImpl implements Response {
 
     /**
      * This method parses the response body as a JSONObject.
-     * If this method is called, then subsequent calls to {@link #getResponseByteStream()} or {@link #getResponseBytes()}
-     * will return null unless the {@link Request} was made using a <code>download()</code> method.
+     * The body is only read once, the first time any of its forms is asked for, and the result is kept,
+     * so calling this method again or calling the other body accessors does not read it again.
+     * If {@link #getResponseByteStream()} was called first, the body belongs to that stream and is not available here.
      *
      * @return The body of the response as a JSONObject.
      */
-    public JSONObject getResponseJSON() {
+    public synchronized JSONObject getResponseJSON() {
+        if (responseJSONParsed) {
+            return responseJSON;
+        }
+
         String responseText = getResponseText();
 
         if(responseText == null || responseText.length() == 0){
             return null;
         }
 
+        responseJSONParsed = true;
         try {
-            return new JSONObject(responseText);
+            responseJSON = new JSONObject(responseText);
         } catch (JSONException e) {
             logger.warn("Failed to extract JSON from response body. Error: " + e.getMessage());
-            return null;
         }
+        return responseJSON;
     }
 
     /**
      * This method gets the bytes of the response body.
-     * If this method is called, then subsequent calls to {@link #getResponseByteStream()} or {@link #getResponseBytes()}
-     * will return null unless the {@link Request} was made using a <code>download()</code> method.
+     * The body is only read once, the first time any of its forms is asked for, and the result is kept,
+     * so calling this method again or calling the other body accessors does not read it again.
+     * If {@link #getResponseByteStream()} was called first, the body belongs to that stream and is not available here.
      *
      * @return the bytes of the response body. Will be null if there is no body.
      */
-    public byte[] getResponseBytes() {
-        if (responseByteStream != null) {
-            try {
-                return IOUtils.toByteArray(responseByteStream);
-            }
-            catch (IOException e) {
-                logger.warn("Failed to extract byte array from response body. Error: " + e.getMessage());
-                return null;
-            }
+    public synchronized byte[] getResponseBytes() {
+        return readBody();
+    }
+
+    /**
+     * This method converts the response body with the given converter.
+     * If the body has not been read yet, the converter reads it directly from the network, so the body is never
+     * held in memory as a whole, and it is not available from the other body accessors afterwards.
+     * Otherwise, the converter reads the bytes that were already read from the body.
+     * If {@link #getResponseByteStream()} was called first, the body belongs to that stream and is not available here.
+     *
+     * @param converter The converter to read the body with, for example a
+     *                  {@link com.ibm.mobilefirstplatform.clientsdk.android.core.api.JsonResponseConverter}
+     * @param <T>       The type that the body is converted into
+     * @return The converted body. Will be null if there is no body.
+     * @throws IOException if the body could not be read or converted
+     */
+    public synchronized <T> T getResponseAs(ResponseConverter<T> converter) throws IOException {
+        if (bodyRead || responseByteStream != null || okHttpResponse == null) {
+            return bodyBytes != null ? converter.convert(new ByteArrayInputStream(bodyBytes), getCharset()) : null;
+        }
+        bodyRead = true;
+
+        ResponseBody body = okHttpResponse.body();
+        if (body == null) {
+            return null;
+        }
+        try {
+            return converter.convert(body.byteStream(), getCharset());
         }
-        return this.bodyBytes;
+        finally {
+            Util.closeQuietly(body);
+        }
+    }
+
+    // The charset of the body, from its Content-Type, or UTF-8 by default
+    private Charset getCharset() {
+        return contentType != null ? contentType.charset(Util.UTF_8) : Util.UTF_8;
     }
 
-    protected void setResponseBytes(byte[] responseBytes) {
+    protected synchronized void setResponseBytes(byte[] responseBytes) {
         this.bodyBytes = responseBytes;
+        this.bodyRead = true;
+        this.responseText = null;
+        this.responseJSON = null;
+        this.responseJSONParsed = false;
     }
 
     /**
      * This method gets the response body as an input stream.
-     *
-     * <p>
-     * <b>Important: </b>This method may not be used for requests made with any of the {@link Request} download() methods,
-     * since the stream will already be closed. Use {@link Response#getResponseBytes()} instead.
-     * </p>
+     * If the body has not been read yet, the stream reads it directly from the network, and the caller is responsible
+     * for closing it. Otherwise, the stream reads the bytes that were already read from the body.
      *
      * @return The input stream representing the response body. Will be null if there is no body.
      */
-    public InputStream getResponseByteStream() {
-        return this.responseByteStream;
+    public synchronized InputStream getResponseByteStream() {
+        if (responseByteStream != null) {
+            return responseByteStream;
+        }
+
+        if (bodyRead) {
+            return bodyBytes != null ? new ByteArrayInputStream(bodyBytes) : null;
+        }
+
+        try {
+            responseByteStream = okHttpResponse.body().byteStream();
+        } catch (NullPointerException e) {
+            logger.error("Response body stream can't be opened: " + e.getLocalizedMessage());
+        }
+        return responseByteStream;
+    }
+
+    // Reads the whole body, the first time it is asked for, unless the stream was already handed out
+    private byte[] readBody() {
+        if (bodyRead || responseByteStream != null || okHttpResponse == null) {
+            return bodyBytes;
+        }
+        bodyRead = true;
+
+        ResponseBody body = okHttpResponse.body();
+        try {
+            InputStream bodyStream = body.byteStream();
+            bodyBytes = bodyStream != null ? IOUtils.toByteArray(bodyStream) : body.bytes();
+        }
+        catch (NullPointerException | IOException | IllegalStateException e) {
+            logger.error("Response body bytes can't be read: " + e.getLocalizedMessage());
+            bodyBytes = null;
+        }
+        finally {
+            Util.closeQuietly(body);
+        }
+        return bodyBytes;
+    }
+
+    // Called once the ResponseListener has returned. A body that was not read yet is buffered, so it can still
+    // be read afterwards, and the connection is released. A stream that was handed out is left for its caller to close.
+    protected synchronized void release() {
+        readBody();
     }
 
     /**
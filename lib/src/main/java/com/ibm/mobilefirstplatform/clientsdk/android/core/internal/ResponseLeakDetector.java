@@ -0,0 +1,202 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+
+/**
+ * @exclude
+ *
+ * Reports response bodies that were garbage collected without being closed or read to the end, which kept their
+ * connection out of the pool. While enabled, each request records the stack that sent it, and an interceptor wraps
+ * each response body to notice when it is released. Recording a stack for every request is not free,
+ * so this is meant for debug builds.
+ */
+public class ResponseLeakDetector implements Interceptor {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + ResponseLeakDetector.class.getSimpleName());
+
+    private static final ResponseLeakDetector instance = new ResponseLeakDetector();
+
+    private final ReferenceQueue<Source> collectedSources = new ReferenceQueue<>();
+    // Keeps the trackers reachable until their body is released or collected
+    private final Set<Tracker> trackers = Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+    private volatile boolean enabled;
+
+    public static ResponseLeakDetector getInstance() {
+        return instance;
+    }
+
+    ResponseLeakDetector() {
+    }
+
+    public synchronized void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) {
+            return;
+        }
+        this.enabled = enabled;
+
+        if (enabled) {
+            HttpClientManager.getInstance().addInterceptor(this);
+        } else {
+            HttpClientManager.getInstance().removeInterceptor(this);
+            trackers.clear();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records the stack that is sending a request, to report it if the response leaks.
+     *
+     * @return the stack to keep in the {@link CallTag} of the request, or null while disabled
+     */
+    Throwable getAllocationSite() {
+        return enabled ? new AllocationSite() : null;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        reportLeaks();
+
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        if (!enabled || response.body() == null) {
+            return response;
+        }
+
+        Object tag = request.tag();
+        Throwable allocationSite = tag instanceof CallTag ? ((CallTag)tag).getAllocationSite() : null;
+        if (allocationSite == null) {
+            allocationSite = new AllocationSite();
+        }
+        return response.newBuilder()
+                .body(new TrackedResponseBody(response.body(), request.method() + " " + request.url(), allocationSite))
+                .build();
+    }
+
+    /**
+     * Reports the bodies that were garbage collected since the last time, and forgets them.
+     *
+     * @return the number of leaked bodies that were reported
+     */
+    int reportLeaks() {
+        int leaks = 0;
+        Tracker tracker;
+        while ((tracker = (Tracker)collectedSources.poll()) != null) {
+            if (trackers.remove(tracker)) {
+                leaks++;
+                logger.error("The response to " + tracker.request + " was never closed, so its connection could not be reused."
+                        + " Close the stream from getResponseByteStream() once it has been read. The request was sent from:",
+                        tracker.allocationSite);
+            }
+        }
+        return leaks;
+    }
+
+    int getTrackedCount() {
+        return trackers.size();
+    }
+
+    private static class AllocationSite extends Throwable {
+        AllocationSite() {
+            super("Response allocation site");
+        }
+    }
+
+    private static class Tracker extends WeakReference<Source> {
+        final String request;
+        final Throwable allocationSite;
+
+        Tracker(Source source, ReferenceQueue<Source> queue, String request, Throwable allocationSite) {
+            super(source, queue);
+            this.request = request;
+            this.allocationSite = allocationSite;
+        }
+    }
+
+    // Forgets its tracker once the body has been closed or read to the end, since the connection is released then
+    private class TrackedResponseBody extends ResponseBody {
+        private final ResponseBody body;
+        private final BufferedSource source;
+
+        TrackedResponseBody(ResponseBody body, String request, Throwable allocationSite) {
+            this.body = body;
+
+            TrackingSource trackingSource = new TrackingSource(body.source());
+            trackingSource.tracker = new Tracker(trackingSource, collectedSources, request, allocationSite);
+            trackers.add(trackingSource.tracker);
+            this.source = Okio.buffer(trackingSource);
+        }
+
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return body.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+
+    private class TrackingSource extends ForwardingSource {
+        Tracker tracker;
+
+        TrackingSource(Source delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public long read(Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read == -1) {
+                trackers.remove(tracker);
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            trackers.remove(tracker);
+            super.close();
+        }
+    }
+}
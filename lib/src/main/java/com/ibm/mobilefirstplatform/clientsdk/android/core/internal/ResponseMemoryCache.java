@@ -0,0 +1,223 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * @exclude
+ *
+ * In-memory LRU cache of successful GET responses, which keep their decoded text and parsed JSON.
+ * Entries are keyed by URL and Authorization header, so each user only sees their own responses,
+ * expire after the time to live chosen by the request, and are evicted, least recently used first,
+ * when the total size of their bodies goes over the limit.
+ */
+public class ResponseMemoryCache {
+
+    // Holds up to 1 MiB of response bodies unless configured otherwise
+    public static final long DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    private static final ResponseMemoryCache instance = new ResponseMemoryCache();
+
+    // All guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxSize = DEFAULT_MAX_SIZE;
+    private long size;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public static ResponseMemoryCache getInstance() {
+        return instance;
+    }
+
+    ResponseMemoryCache() {
+    }
+
+    /**
+     * Builds the key of a response in the cache.
+     *
+     * @param url           the URL of the request, including its query
+     * @param authorization the Authorization header of the request, or null
+     * @return the key for the response
+     */
+    static String key(String url, String authorization) {
+        return authorization == null ? url : url + "\n" + authorization;
+    }
+
+    /**
+     * Returns the cached response for the given key, if it has not expired.
+     *
+     * @param key the key built by {@link #key(String, String)}
+     * @return the cached response, or null
+     */
+    synchronized ResponseImpl get(String key) {
+        Entry entry = entries.get(key);
+
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            remove(key);
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+
+        hitCount++;
+        return entry.response;
+    }
+
+    /**
+     * Caches the response under the given key. Responses whose body is larger than the cache are not cached.
+     *
+     * @param key        the key built by {@link #key(String, String)}
+     * @param response   a response whose body was already read
+     * @param bodySize   the size of the body of the response
+     * @param timeToLive how long the response can be used, in milliseconds
+     */
+    synchronized void put(String key, ResponseImpl response, long bodySize, long timeToLive) {
+        remove(key);
+        if (bodySize > maxSize || timeToLive <= 0) {
+            return;
+        }
+
+        entries.put(key, new Entry(response, bodySize, System.currentTimeMillis() + timeToLive));
+        size += bodySize;
+        trimToSize();
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            size -= removed.size;
+        }
+    }
+
+    // Evicts the least recently used entries until the cache fits in its maximum size
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            size -= iterator.next().getValue().size;
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes every cached response, for example when the user logs out.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Sets the maximum total size of the cached response bodies, evicting entries if needed.
+     *
+     * @param maxSize the maximum size in bytes. 0 disables the cache.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = Math.max(maxSize, 0);
+        trimToSize();
+    }
+
+    public synchronized long getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Wraps the listener of a request so that its successful response is cached before being delivered.
+     * The body is read into memory first, so that later hits can share the decoded text and parsed JSON.
+     *
+     * @param key        the key built by {@link #key(String, String)}
+     * @param timeToLive how long the response can be used, in milliseconds
+     * @param listener   the listener of the request
+     * @return the listener to send the request with
+     */
+    ResponseListener wrap(String key, long timeToLive, ResponseListener listener) {
+        if (listener instanceof CachingListener) {
+            // A request resent after obtaining authorization is cached under the key of the new Authorization header
+            listener = ((CachingListener)listener).listener;
+        }
+        return new CachingListener(key, timeToLive, listener);
+    }
+
+    private class CachingListener implements ResponseListener {
+        private final String key;
+        private final long timeToLive;
+        private final ResponseListener listener;
+
+        CachingListener(String key, long timeToLive, ResponseListener listener) {
+            this.key = key;
+            this.timeToLive = timeToLive;
+            this.listener = listener;
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            int status = response.getStatus();
+            if (response instanceof ResponseImpl && status >= 200 && status < 300) {
+                byte[] body = response.getResponseBytes();
+                put(key, (ResponseImpl)response, body != null ? body.length : 0, timeToLive);
+            }
+            if (listener != null) {
+                listener.onSuccess(response);
+            }
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            if (listener != null) {
+                listener.onFailure(response, t, extendedInfo);
+            }
+        }
+    }
+
+    private static class Entry {
+        final ResponseImpl response;
+        final long size;
+        final long expiresAt;
+
+        Entry(ResponseImpl response, long size, long expiresAt) {
+            this.response = response;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ProgressListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import okhttp3.internal.Util;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+
+
+/**
+ * @exclude
+ *
+ * Downloads a resource into a file through partial files, so that an interrupted download can be resumed.
+ *
+ * The body is written to <code>destination.part</code>, and the ETag or Last-Modified validator of the resource
+ * is saved next to it. Downloading the same resource to the same file again sends a <code>Range</code> request
+ * for the missing bytes, with an <code>If-Range</code> header so that the server sends the whole resource again
+ * if it changed in the meantime. Once the length of the partial file matches the length of the resource,
+ * it is renamed to the destination.
+ *
+ * Large resources on servers that accept ranges can be split into several byte ranges that are downloaded in
+ * parallel, each into its own partial file, over the shared connection pool. The parts are joined at the end.
+ */
+class ResumableDownload {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + ResumableDownload.class.getSimpleName());
+
+    static final String RANGE = "Range";
+    static final String IF_RANGE = "If-Range";
+    static final String CONTENT_RANGE = "Content-Range";
+    static final String ACCEPT_RANGES = "Accept-Ranges";
+    static final String ETAG = "ETag";
+    static final String LAST_MODIFIED = "Last-Modified";
+
+    // Resources are only split into parallel ranges of at least this size (1 MiB)
+    static final long MIN_PARALLEL_RANGE_SIZE = 1024 * 1024;
+
+    private final BaseRequest request;
+    private final File destination;
+    private final File stateFile;
+    private final int parallelRanges;
+    private final ProgressListener progressListener;
+    private final ResponseListener responseListener;
+
+    // All guarded by this
+    private String validator;
+    private long totalLength = -1;
+    private int savedRangeCount = 1;
+    private Range[] ranges;
+    private int remainingRanges;
+    private Response lastResponse;
+    private boolean finished;
+
+    ResumableDownload(BaseRequest request, File destination, int parallelRanges,
+                      ProgressListener progressListener, ResponseListener responseListener) {
+        this.request = request;
+        this.destination = destination;
+        this.stateFile = new File(destination.getPath() + ".part.json");
+        this.parallelRanges = Math.max(parallelRanges, 1);
+        this.progressListener = progressListener;
+        this.responseListener = responseListener;
+    }
+
+    void start() {
+        loadState();
+
+        if (parallelRanges == 1) {
+            startRanges(new Range[] { new Range(request, new File(destination.getPath() + ".part"), 0, -1) });
+        } else {
+            probe();
+        }
+    }
+
+    // Asks for the length and validator of the resource, to decide whether it can be split into ranges
+    private void probe() {
+        BaseRequest probeRequest = request.copy(BaseRequest.HEAD);
+        probeRequest.sendRequest(null, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                ResponseImpl probeResponse = (ResponseImpl)response;
+                long length = parseLong(probeResponse.getFirstHeader("Content-Length"));
+                String probeValidator = getValidator(probeResponse.getFirstHeader(ETAG), probeResponse.getFirstHeader(LAST_MODIFIED));
+                boolean acceptsRanges = "bytes".equalsIgnoreCase(probeResponse.getFirstHeader(ACCEPT_RANGES));
+
+                int count = (int)Math.min(parallelRanges, length / MIN_PARALLEL_RANGE_SIZE);
+                if (!acceptsRanges || probeValidator == null || count < 2) {
+                    startRanges(new Range[] { new Range(request, new File(destination.getPath() + ".part"), 0, -1) });
+                    return;
+                }
+
+                synchronized (ResumableDownload.this) {
+                    // Parts of a different version of the resource, or from a different split, cannot be reused
+                    if (!probeValidator.equals(validator) || totalLength != length || savedRangeCount != count) {
+                        deleteParts(Math.max(count, savedRangeCount));
+                    }
+                    validator = probeValidator;
+                    totalLength = length;
+                    savedRangeCount = count;
+                    lastResponse = response;
+                    saveState();
+                }
+
+                Range[] parallel = new Range[count];
+                long rangeSize = length / count;
+                for (int i = 0; i < count; i++) {
+                    long start = i * rangeSize;
+                    long end = i == count - 1 ? length - 1 : start + rangeSize - 1;
+                    parallel[i] = new Range(request.copy(BaseRequest.GET), new File(destination.getPath() + ".part" + i), start, end);
+                }
+                startRanges(parallel);
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                fail(null, response, t, extendedInfo);
+            }
+        }, null);
+    }
+
+    private void startRanges(Range[] newRanges) {
+        synchronized (this) {
+            ranges = newRanges;
+            remainingRanges = newRanges.length;
+        }
+        for (Range range : newRanges) {
+            range.send();
+        }
+    }
+
+    private void rangeCompleted(Response response) {
+        synchronized (this) {
+            if (response != null) {
+                lastResponse = response;
+            }
+            if (finished || --remainingRanges > 0) {
+                return;
+            }
+            finished = true;
+            response = lastResponse;
+        }
+
+        try {
+            for (Range completedRange : ranges) {
+                completedRange.validateLength();
+            }
+            joinParts();
+        } catch (IOException e) {
+            deleteParts(ranges.length);
+            stateFile.delete();
+            if (responseListener != null) {
+                responseListener.onFailure(response, e, null);
+            }
+            return;
+        }
+
+        stateFile.delete();
+        if (responseListener != null) {
+            responseListener.onSuccess(response);
+        }
+    }
+
+    private void fail(Range failedRange, Response response, Throwable t, JSONObject extendedInfo) {
+        Range[] siblings;
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            siblings = failedRange != null ? ranges : null;
+        }
+
+        // The other ranges stop writing to their partial files, so that a new attempt does not share them
+        if (siblings != null) {
+            for (Range range : siblings) {
+                if (range != failedRange) {
+                    range.rangeRequest.cancel();
+                }
+            }
+        }
+
+        // The partial files and the saved validator are kept, so the next attempt can resume them
+        if (responseListener != null) {
+            responseListener.onFailure(response, t, extendedInfo);
+        }
+    }
+
+    private synchronized void reportProgress() {
+        if (progressListener == null) {
+            return;
+        }
+
+        long bytesSoFar = 0;
+        long bytesExpected = 0;
+        for (Range range : ranges) {
+            bytesSoFar += range.bytesSoFar;
+            bytesExpected += range.length();
+        }
+        progressListener.onProgress(bytesSoFar, Math.max(bytesExpected, 0));
+    }
+
+    // Moves the single part, or the concatenation of all the parts, to the destination
+    private void joinParts() throws IOException {
+        File firstPart = ranges[0].partFile;
+
+        if (ranges.length > 1) {
+            BufferedSink sink = Okio.buffer(Okio.appendingSink(firstPart));
+            try {
+                for (int i = 1; i < ranges.length; i++) {
+                    BufferedSource source = Okio.buffer(Okio.source(ranges[i].partFile));
+                    try {
+                        sink.writeAll(source);
+                    } finally {
+                        Util.closeQuietly(source);
+                    }
+                }
+                sink.close();
+            } finally {
+                Util.closeQuietly(sink);
+            }
+            for (int i = 1; i < ranges.length; i++) {
+                ranges[i].partFile.delete();
+            }
+        }
+
+        destination.delete();
+        if (!firstPart.renameTo(destination)) {
+            throw new IOException("Could not move the downloaded file to " + destination.getPath());
+        }
+    }
+
+    private void deleteParts(int count) {
+        new File(destination.getPath() + ".part").delete();
+        for (int i = 0; i < count; i++) {
+            new File(destination.getPath() + ".part" + i).delete();
+        }
+    }
+
+    private static String getValidator(String etag, String lastModified) {
+        // Weak ETags cannot be used with If-Range
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return lastModified;
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return value != null ? Long.parseLong(value.trim()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private synchronized void loadState() {
+        if (!stateFile.exists()) {
+            return;
+        }
+
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(stateFile));
+            JSONObject state = new JSONObject(source.readUtf8());
+            if (request.getUrl().equals(state.optString("url"))) {
+                validator = state.optString("validator", null);
+                totalLength = state.optLong("length", -1);
+                savedRangeCount = state.optInt("ranges", 1);
+            }
+        } catch (IOException | JSONException e) {
+            logger.warn("Could not read the saved state of the download of " + destination.getName() + ". Error: " + e.getMessage());
+        } finally {
+            Util.closeQuietly(source);
+        }
+    }
+
+    private synchronized void saveState() {
+        BufferedSink sink = null;
+        try {
+            JSONObject state = new JSONObject();
+            state.put("url", request.getUrl());
+            state.put("validator", validator);
+            state.put("length", totalLength);
+            state.put("ranges", savedRangeCount);
+
+            sink = Okio.buffer(Okio.sink(stateFile));
+            sink.writeUtf8(state.toString());
+        } catch (IOException | JSONException e) {
+            logger.warn("Could not save the state of the download of " + destination.getName() + ". Error: " + e.getMessage());
+        } finally {
+            Util.closeQuietly(sink);
+        }
+    }
+
+    /**
+     * One byte range of the resource, downloaded into its own partial file.
+     * A single range without an end is used for the whole resource.
+     */
+    private class Range extends DownloadDestination implements ResponseListener, TransferGate.Resumable {
+
+        private final BaseRequest rangeRequest;
+        private final File partFile;
+        private final long start;
+        private long end;
+
+        private long resumedFrom;
+        private volatile long bytesSoFar;
+        private boolean restarted;
+
+        Range(BaseRequest rangeRequest, File partFile, long start, long end) {
+            super(partFile, null);
+            this.rangeRequest = rangeRequest;
+            this.partFile = partFile;
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end >= 0 ? end - start + 1 : totalLength;
+        }
+
+        void send() {
+            String ifRange;
+            synchronized (ResumableDownload.this) {
+                ifRange = validator;
+            }
+
+            // Without a validator, there is no way to know whether a partial file belongs to the current resource
+            resumedFrom = ifRange != null && partFile.exists() ? partFile.length() : 0;
+            if (end >= 0 && resumedFrom > end - start + 1) {
+                partFile.delete();
+                resumedFrom = 0;
+            }
+            bytesSoFar = resumedFrom;
+
+            rangeRequest.removeHeaders(RANGE);
+            rangeRequest.removeHeaders(IF_RANGE);
+            if (end >= 0 && start + resumedFrom > end) {
+                // This range was already complete before the download was interrupted
+                rangeCompleted(null);
+                return;
+            }
+            if (resumedFrom > 0 || end >= 0) {
+                rangeRequest.addHeader(RANGE, "bytes=" + (start + resumedFrom) + "-" + (end >= 0 ? String.valueOf(end) : ""));
+            }
+            if (ifRange != null && (resumedFrom > 0 || end >= 0)) {
+                rangeRequest.addHeader(IF_RANGE, ifRange);
+            }
+
+            rangeRequest.sendRequest(this, this, null);
+        }
+
+        @Override
+        public void resume() {
+            // The range was paused by a network change, so it continues from what its partial file already holds
+            send();
+        }
+
+        @Override
+        Sink openSink(okhttp3.Response response) throws IOException {
+            boolean partial = response.code() == 206;
+
+            if (!partial && end >= 0) {
+                // The resource changed, or the server no longer accepts ranges, so the parts cannot be joined
+                throw new IOException("The server did not return the requested range of " + rangeRequest.getUrl());
+            }
+
+            if (!partial) {
+                // The whole resource is being sent again, so the partial file starts over
+                resumedFrom = 0;
+                bytesSoFar = 0;
+            } else if (parseFirstByte(response.header(CONTENT_RANGE)) != start + resumedFrom) {
+                // Appending bytes from another offset would corrupt the partial file
+                throw new IOException("The server returned " + response.header(CONTENT_RANGE) + " instead of the bytes from "
+                        + (start + resumedFrom) + " of " + rangeRequest.getUrl());
+            }
+
+            if (end < 0) {
+                synchronized (ResumableDownload.this) {
+                    if (!partial || validator == null) {
+                        validator = getValidator(response.header(ETAG), response.header(LAST_MODIFIED));
+                    }
+                    totalLength = partial ? parseTotalLength(response.header(CONTENT_RANGE)) : response.body().contentLength();
+                    savedRangeCount = 1;
+                    saveState();
+                }
+            }
+
+            return resumedFrom > 0 ? Okio.appendingSink(partFile) : Okio.sink(partFile);
+        }
+
+        @Override
+        void closeSink(Sink sink, boolean completed) {
+            // Unlike a plain download, the partial file is kept when the transfer is interrupted
+            Util.closeQuietly(sink);
+        }
+
+        @Override
+        public void onProgress(long bytesDownloaded, long totalBytesExpected) {
+            bytesSoFar = resumedFrom + bytesDownloaded;
+            reportProgress();
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            rangeRequest.removeHeaders(RANGE);
+            rangeRequest.removeHeaders(IF_RANGE);
+            rangeCompleted(response);
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            rangeRequest.removeHeaders(RANGE);
+            rangeRequest.removeHeaders(IF_RANGE);
+
+            // 416 means the saved part does not fit the resource anymore, so it is downloaded again once
+            if (response != null && response.getStatus() == 416 && resumedFrom > 0 && !restarted) {
+                restarted = true;
+                partFile.delete();
+                send();
+                return;
+            }
+            fail(this, response, t, extendedInfo);
+        }
+
+        void validateLength() throws IOException {
+            long expected = length();
+            if (expected >= 0 && partFile.length() != expected) {
+                throw new IOException("Downloaded " + partFile.length() + " bytes of " + partFile.getName() + ", but expected " + expected);
+            }
+        }
+
+        // Content-Range: bytes first-last/total
+        private long parseTotalLength(String contentRange) {
+            if (contentRange == null) {
+                return -1;
+            }
+            return parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1));
+        }
+
+        private long parseFirstByte(String contentRange) {
+            if (contentRange == null || !contentRange.startsWith("bytes ") || contentRange.indexOf('-') < 0) {
+                return -1;
+            }
+            return parseLong(contentRange.substring("bytes ".length(), contentRange.indexOf('-')));
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ProgressListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.internal.Util;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+
+
+/**
+ * @exclude
+ *
+ * Uploads a file as a sequence of chunks, each sent by the owning {@link BaseRequest} with a
+ * <code>Content-Range: bytes first-last/total</code> header.
+ *
+ * The server acknowledges a chunk with a 308 (Resume Incomplete) or 2xx response, optionally reporting the bytes
+ * it has stored so far in a <code>Range: bytes=0-last</code> header. After every acknowledged chunk, the offset is
+ * saved in the state directory, so that uploading the same file to the same URL again, after a failure or in a new
+ * process, continues from that offset instead of from the start of the file.
+ */
+class ResumableUpload implements ResponseListener {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + ResumableUpload.class.getSimpleName());
+
+    static final String CONTENT_RANGE = "Content-Range";
+    static final String RANGE = "Range";
+
+    private final BaseRequest request;
+    private final File file;
+    private final MediaType contentType;
+    private final long chunkSize;
+    private final File stateFile;
+    private final ProgressListener progressListener;
+    private final ResponseListener responseListener;
+
+    private final long fileLength;
+    private final long fileLastModified;
+    private long offset;
+    private long chunkLength;
+
+    ResumableUpload(BaseRequest request, File file, MediaType contentType, int chunkSize, File stateDirectory,
+                    ProgressListener progressListener, ResponseListener responseListener) {
+        this.request = request;
+        this.file = file;
+        this.contentType = contentType;
+        this.chunkSize = chunkSize;
+        this.progressListener = progressListener;
+        this.responseListener = responseListener;
+        this.fileLength = file.length();
+        this.fileLastModified = file.lastModified();
+
+        String key = request.getMethod() + " " + request.getUrl() + " " + file.getAbsolutePath();
+        this.stateFile = new File(stateDirectory, "upload-" + Integer.toHexString(key.hashCode()) + ".json");
+    }
+
+    /**
+     * Sends the first chunk that the server has not acknowledged yet.
+     */
+    void start() {
+        offset = loadOffset();
+        if (offset > 0) {
+            logger.debug("Resuming upload of " + file.getName() + " to " + request.getUrl() + " at byte " + offset);
+        }
+        sendNextChunk();
+    }
+
+    private void sendNextChunk() {
+        chunkLength = Math.min(chunkSize, fileLength - offset);
+
+        request.removeHeaders(CONTENT_RANGE);
+        if (fileLength == 0) {
+            request.addHeader(CONTENT_RANGE, "bytes */0");
+        } else {
+            request.addHeader(CONTENT_RANGE, "bytes " + offset + "-" + (offset + chunkLength - 1) + "/" + fileLength);
+        }
+
+        final long chunkOffset = offset;
+        ProgressListener chunkProgressListener = new ProgressListener() {
+            @Override
+            public void onProgress(long bytesSoFar, long totalBytesExpected) {
+                if (progressListener != null) {
+                    progressListener.onProgress(chunkOffset + bytesSoFar, fileLength);
+                }
+            }
+        };
+
+        RequestBody chunkBody = new ProgressRequestBody(new ProgressRequestBody.FileRegion(file, offset, chunkLength),
+                RequestBody.create(contentType, new byte[0]), chunkProgressListener);
+
+        request.sendRequest(null, this, chunkBody);
+    }
+
+    @Override
+    public void onSuccess(Response response) {
+        long acknowledged = getAcknowledgedOffset(response);
+
+        if (acknowledged >= fileLength) {
+            stateFile.delete();
+            request.removeHeaders(CONTENT_RANGE);
+            if (responseListener != null) {
+                responseListener.onSuccess(response);
+            }
+            return;
+        }
+
+        if (acknowledged <= offset && chunkLength > 0) {
+            // The server did not store anything from this chunk, so sending it again would not make progress
+            request.removeHeaders(CONTENT_RANGE);
+            if (responseListener != null) {
+                responseListener.onFailure(response, new IOException("The server did not acknowledge the upload chunk at byte " + offset), null);
+            }
+            return;
+        }
+
+        offset = Math.min(acknowledged, fileLength);
+        saveOffset(offset);
+        sendNextChunk();
+    }
+
+    @Override
+    public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+        // The offset of the last acknowledged chunk is already saved, so the next attempt continues from there
+        request.removeHeaders(CONTENT_RANGE);
+        if (responseListener != null) {
+            responseListener.onFailure(response, t, extendedInfo);
+        }
+    }
+
+    // The server reports the bytes it has stored as "Range: bytes=0-last". Without it, a 308 means that nothing
+    // was stored yet, and only a 2xx means that the whole chunk was stored.
+    private long getAcknowledgedOffset(Response response) {
+        String range = response instanceof ResponseImpl ? ((ResponseImpl)response).getFirstHeader(RANGE) : null;
+        if (range != null) {
+            int dash = range.lastIndexOf('-');
+            try {
+                return Long.parseLong(range.substring(dash + 1).trim()) + 1;
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                logger.warn("Ignoring invalid Range header in upload response: " + range);
+            }
+        }
+        return response.getStatus() >= 200 && response.getStatus() < 300 ? offset + chunkLength : offset;
+    }
+
+    private long loadOffset() {
+        if (!stateFile.exists()) {
+            return 0;
+        }
+
+        BufferedSource source = null;
+        try {
+            source = Okio.buffer(Okio.source(stateFile));
+            JSONObject state = new JSONObject(source.readUtf8());
+            // A file that changed since the last attempt has to be uploaded again from the start
+            if (state.getLong("length") == fileLength && state.getLong("lastModified") == fileLastModified) {
+                long savedOffset = state.getLong("offset");
+                if (savedOffset >= 0 && savedOffset < fileLength) {
+                    return savedOffset;
+                }
+            }
+        } catch (IOException | JSONException e) {
+            logger.warn("Could not read the saved state of the upload of " + file.getName() + ". Starting from the beginning. Error: " + e.getMessage());
+        } finally {
+            Util.closeQuietly(source);
+        }
+        stateFile.delete();
+        return 0;
+    }
+
+    private void saveOffset(long offset) {
+        File tempFile = new File(stateFile.getPath() + ".tmp");
+        BufferedSink sink = null;
+        try {
+            JSONObject state = new JSONObject();
+            state.put("url", request.getUrl());
+            state.put("path", file.getAbsolutePath());
+            state.put("length", fileLength);
+            state.put("lastModified", fileLastModified);
+            state.put("offset", offset);
+
+            stateFile.getParentFile().mkdirs();
+            sink = Okio.buffer(Okio.sink(tempFile));
+            sink.writeUtf8(state.toString());
+            sink.close();
+
+            // Replace the state in one step, so a crash never leaves a partially written state file
+            if (!tempFile.renameTo(stateFile)) {
+                stateFile.delete();
+                tempFile.renameTo(stateFile);
+            }
+        } catch (IOException | JSONException e) {
+            logger.warn("Could not save the state of the upload of " + file.getName() + ". Error: " + e.getMessage());
+        } finally {
+            Util.closeQuietly(sink);
+        }
+    }
+}
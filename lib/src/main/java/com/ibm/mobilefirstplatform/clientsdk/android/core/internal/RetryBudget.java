@@ -0,0 +1,82 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+
+/**
+ * @exclude
+ *
+ * Caps the retries of all requests to a ratio of the requests sent, so that retries cannot multiply the load on a
+ * backend that is already failing. Every request sent deposits the ratio into a balance, and every retry withdraws 1.
+ * The balance starts full and holds at most {@link #MAX_BALANCE}, which allows a few retries before any request
+ * succeeds, but never more than the ratio over time.
+ */
+class RetryBudget {
+
+    static final double DEFAULT_RATIO = 0.2;
+    static final double MAX_BALANCE = 10;
+
+    private static final RetryBudget instance = new RetryBudget();
+
+    // All guarded by this
+    private double ratio = DEFAULT_RATIO;
+    private double balance = MAX_BALANCE;
+    private long rejectedCount;
+
+    static RetryBudget getInstance() {
+        return instance;
+    }
+
+    RetryBudget() {
+    }
+
+    synchronized void setRatio(double ratio) {
+        if (ratio < 0) {
+            throw new IllegalArgumentException("The retry budget ratio cannot be negative: " + ratio);
+        }
+        this.ratio = ratio;
+    }
+
+    synchronized double getRatio() {
+        return ratio;
+    }
+
+    /**
+     * Records a request that is sent for the first time.
+     */
+    synchronized void recordRequest() {
+        balance = Math.min(balance + ratio, MAX_BALANCE);
+    }
+
+    /**
+     * Withdraws a retry from the budget.
+     *
+     * @return true if the retry is allowed, false if the budget is exhausted
+     */
+    synchronized boolean tryRetry() {
+        if (balance < 1) {
+            rejectedCount++;
+            return false;
+        }
+        balance--;
+        return true;
+    }
+
+    /**
+     * @return the number of retries that were not made because the budget was exhausted
+     */
+    synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+}
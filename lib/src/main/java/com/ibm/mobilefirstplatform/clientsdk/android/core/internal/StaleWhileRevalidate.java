@@ -0,0 +1,125 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestPriority;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.internal.Util;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSource;
+
+
+/**
+ * @exclude
+ *
+ * Implements {@link com.ibm.mobilefirstplatform.clientsdk.android.core.api.CachePolicy#STALE_WHILE_REVALIDATE}.
+ * The request is first answered from the cache only. If a cached response exists, even a stale one, it is delivered
+ * right away and the same request is sent to the network in the background, to refresh the cache for next time.
+ * If nothing is cached, the request is sent to the network and that response is delivered instead.
+ * The refresh goes through the scheduler and the circuit breaker like any other request, at background priority,
+ * and is skipped when the current network does not meet the transfer constraint of the request.
+ */
+class StaleWhileRevalidate implements Callback {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + StaleWhileRevalidate.class.getSimpleName());
+
+    private final BaseRequest request;
+    private final Request networkRequest;
+    private final Callback callback;
+
+    /**
+     * Sends the request to the cache, and then to the network as needed.
+     *
+     * @param request   the BaseRequest to send network requests with, so that they keep its timeouts and retries
+     * @param client    the client to read the cache with, which has the timeouts of the request
+     * @param okRequest the request to send
+     * @param callback  the callback to notify with the cached or network response
+     */
+    static void enqueue(BaseRequest request, OkHttpClient client, Request okRequest, Callback callback) {
+        Request networkRequest = okRequest.newBuilder().cacheControl(CacheControl.FORCE_NETWORK).build();
+        Request cacheRequest = okRequest.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build();
+
+        // Reading the cache does not touch the host, so it only waits for the scheduler, not the circuit breaker
+        request.dispatch(client.newCall(cacheRequest), new StaleWhileRevalidate(request, networkRequest, callback));
+    }
+
+    private StaleWhileRevalidate(BaseRequest request, Request networkRequest, Callback callback) {
+        this.request = request;
+        this.networkRequest = networkRequest;
+        this.callback = callback;
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+        // Reading the cache does not touch the network, so this is not a connectivity failure
+        request.sendOKHttpRequest(networkRequest, callback);
+    }
+
+    @Override
+    public void onResponse(Call call, okhttp3.Response response) throws IOException {
+        // Without a cached response, OkHttp answers an only-if-cached request with a synthetic 504
+        if (response.cacheResponse() == null) {
+            Util.closeQuietly(response.body());
+            request.sendOKHttpRequest(networkRequest, callback);
+            return;
+        }
+
+        try {
+            callback.onResponse(call, response);
+        } finally {
+            revalidate();
+        }
+    }
+
+    // Reads the network response to the end, which is what makes OkHttp update the cache entry
+    private void revalidate() {
+        TransferGate transferGate = TransferGate.getInstance();
+        if (transferGate != null && !transferGate.allows(request.getTransferConstraint())) {
+            logger.debug("Not refreshing the cached response for " + networkRequest.url() + " on the current network");
+            return;
+        }
+
+        // A copy, so that the refresh neither changes the priority of the request nor takes over its transfer
+        BaseRequest revalidation = request.copy(BaseRequest.GET);
+        revalidation.setPriority(RequestPriority.BACKGROUND);
+        revalidation.sendOKHttpRequest(networkRequest, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                logger.debug("Could not refresh the cached response for " + networkRequest.url() + ": " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, okhttp3.Response response) throws IOException {
+                BufferedSource source = response.body().source();
+                try {
+                    Buffer discarded = new Buffer();
+                    while (source.read(discarded, BaseRequest.DOWNLOAD_SEGMENT_SIZE) != -1) {
+                        discarded.clear();
+                    }
+                } finally {
+                    Util.closeQuietly(response.body());
+                }
+            }
+        });
+    }
+}
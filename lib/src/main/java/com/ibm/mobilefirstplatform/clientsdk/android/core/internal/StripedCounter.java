@@ -0,0 +1,51 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * @exclude
+ *
+ * A counter that threads add to without contending on a single value. Each thread adds to one of several cells,
+ * chosen by its id, and reading the counter adds up the cells. The cells are spaced a cache line apart,
+ * so that threads adding to different cells do not slow each other down.
+ */
+class StripedCounter {
+
+    private static final int STRIPES = 8;
+
+    // 8 longs fill a 64 byte cache line
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    void add(long value) {
+        int cell = (int)(Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+        cells.addAndGet(cell, value);
+    }
+
+    void increment() {
+        add(1);
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
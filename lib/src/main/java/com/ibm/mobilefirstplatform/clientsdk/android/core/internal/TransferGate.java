@@ -0,0 +1,297 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import android.content.Context;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkConnectionListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkConnectionType;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkMonitor;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ProgressListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.TransferConstraint;
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import okhttp3.Call;
+import okhttp3.RequestBody;
+
+import org.json.JSONObject;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * @exclude
+ *
+ * Holds back the requests whose {@link TransferConstraint} is not met by the current network, and sends them
+ * when {@link NetworkMonitor} reports a network that meets it. Requests in flight whose constraint stops being
+ * met are cancelled, and sent again once it is met, instead of reporting the cancellation to their listener.
+ * Requests that cannot start over, because their body is a stream or because they write their response
+ * into a stream, are left to finish on the new network.
+ */
+class TransferGate implements NetworkConnectionListener {
+
+    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + TransferGate.class.getSimpleName());
+
+    private static TransferGate instance;
+
+    private NetworkMonitor networkMonitor;
+
+    // All guarded by this
+    private final Set<Transfer> waiting = new LinkedHashSet<>();
+    private final Set<Transfer> running = new LinkedHashSet<>();
+
+    /**
+     * Implemented by the listeners of requests that must prepare the request again before it is resent,
+     * such as the ranges of a resumable download, which continue from the bytes they already saved.
+     */
+    interface Resumable {
+        void resume();
+    }
+
+    static synchronized TransferGate getInstance() {
+        return instance;
+    }
+
+    /**
+     * Starts applying the transfer constraints of requests, based on the networks reported by a new {@link NetworkMonitor}.
+     *
+     * @param context the context to monitor the network with
+     */
+    static void enable(Context context) {
+        TransferGate transferGate = new TransferGate();
+        transferGate.networkMonitor = new NetworkMonitor(context, transferGate);
+        install(transferGate);
+        transferGate.networkMonitor.startMonitoringNetworkChanges();
+    }
+
+    /**
+     * Stops applying transfer constraints. The requests that were held back are sent right away.
+     */
+    static void disable() {
+        install(null);
+    }
+
+    // Replaces the gate that requests go through, and releases the requests held back by the previous one
+    static void install(TransferGate transferGate) {
+        TransferGate previous;
+        synchronized (TransferGate.class) {
+            previous = instance;
+            instance = transferGate;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    TransferGate() {
+    }
+
+    void setNetworkMonitor(NetworkMonitor networkMonitor) {
+        this.networkMonitor = networkMonitor;
+    }
+
+    NetworkMonitor getNetworkMonitor() {
+        return networkMonitor;
+    }
+
+    /**
+     * @param constraint the constraint of a request
+     * @return true if the current network meets the constraint
+     */
+    boolean allows(TransferConstraint constraint) {
+        switch (constraint) {
+            case WIFI_ONLY:
+                return networkMonitor.getCurrentConnectionType() == NetworkConnectionType.WIFI;
+            case UNMETERED:
+                return !networkMonitor.isActiveNetworkMetered();
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Lets a request through if the current network meets its constraint, and holds it back otherwise.
+     *
+     * @param request          the request being sent
+     * @param progressListener the progress listener it is sent with
+     * @param listener         the listener it is sent with. A request sent again by this gate is sent with its Transfer.
+     * @param requestBody      the body it is sent with
+     * @return the Transfer to send the request with, or null if the request was held back
+     */
+    Transfer admit(BaseRequest request, ProgressListener progressListener, ResponseListener listener, RequestBody requestBody) {
+        Transfer transfer = listener instanceof Transfer
+                ? (Transfer)listener : new Transfer(request, progressListener, listener, requestBody);
+        TransferConstraint constraint = request.getTransferConstraint();
+
+        synchronized (this) {
+            if (!allows(constraint)) {
+                running.remove(transfer);
+                waiting.add(transfer);
+                logger.debug("Holding back the " + request.getMethod() + " request to " + request.getUrl() + " until the network is " + constraint);
+                return null;
+            }
+            running.add(transfer);
+        }
+        return transfer;
+    }
+
+    synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    synchronized int getRunningCount() {
+        return running.size();
+    }
+
+    @Override
+    public void networkChanged(NetworkConnectionType newConnection) {
+        List<Transfer> resumed = new ArrayList<>();
+        List<Transfer> paused = new ArrayList<>();
+
+        synchronized (this) {
+            Iterator<Transfer> iterator = waiting.iterator();
+            while (iterator.hasNext()) {
+                Transfer transfer = iterator.next();
+                if (allows(transfer.request.getTransferConstraint())) {
+                    iterator.remove();
+                    resumed.add(transfer);
+                }
+            }
+
+            for (Transfer transfer : running) {
+                if (transfer.canRestart() && !allows(transfer.request.getTransferConstraint())) {
+                    paused.add(transfer);
+                }
+            }
+        }
+
+        for (Transfer transfer : paused) {
+            logger.debug("Pausing the " + transfer.request.getMethod() + " request to " + transfer.request.getUrl() + " on " + newConnection + " network");
+            transfer.pause();
+        }
+        for (Transfer transfer : resumed) {
+            transfer.resume();
+        }
+    }
+
+    // Stops monitoring the network, and sends the requests that were held back
+    private void close() {
+        if (networkMonitor != null) {
+            networkMonitor.stopMonitoringNetworkChanges();
+        }
+
+        List<Transfer> released;
+        synchronized (this) {
+            released = new ArrayList<>(waiting);
+            waiting.clear();
+            running.clear();
+        }
+        for (Transfer transfer : released) {
+            transfer.resume();
+        }
+    }
+
+    private synchronized void finished(Transfer transfer) {
+        running.remove(transfer);
+    }
+
+    /**
+     * A request sent with a transfer constraint. It stands in for the listener of the request,
+     * so that a cancellation caused by a network change can be turned into sending the request again.
+     */
+    class Transfer implements ResponseListener {
+        final BaseRequest request;
+        private final ProgressListener progressListener;
+        private final ResponseListener listener;
+        private final RequestBody requestBody;
+
+        private volatile Call call;
+        private volatile boolean paused;
+
+        Transfer(BaseRequest request, ProgressListener progressListener, ResponseListener listener, RequestBody requestBody) {
+            this.request = request;
+            this.progressListener = progressListener;
+            this.listener = listener;
+            this.requestBody = requestBody;
+        }
+
+        // Called with each attempt of the request, so that the latest one can be cancelled
+        void setCall(Call call) {
+            this.call = call;
+            if (paused) {
+                call.cancel();
+            }
+        }
+
+        boolean isPaused() {
+            return paused;
+        }
+
+        boolean canRestart() {
+            if (listener instanceof Resumable) {
+                return true;
+            }
+            if (progressListener instanceof DownloadDestination && !((DownloadDestination)progressListener).canRestart()) {
+                return false;
+            }
+            return !(requestBody instanceof ProgressRequestBody && ((ProgressRequestBody)requestBody).getPayload() instanceof InputStream);
+        }
+
+        void pause() {
+            paused = true;
+            Call currentCall = call;
+            if (currentCall != null) {
+                currentCall.cancel();
+            }
+        }
+
+        // Sends the request again, through the gate, which holds it back if the network still does not meet its constraint
+        void resume() {
+            paused = false;
+            call = null;
+            if (listener instanceof Resumable) {
+                ((Resumable)listener).resume();
+            } else {
+                request.sendRequest(progressListener, this, requestBody);
+            }
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            finished(this);
+            if (listener != null) {
+                listener.onSuccess(response);
+            }
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            finished(this);
+            if (paused) {
+                resume();
+                return;
+            }
+            if (listener != null) {
+                listener.onFailure(response, t, extendedInfo);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.security.api;
+
+import android.content.Context;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+
+/**
+ * An {@link AuthorizationManager} that knows when its cached authorization header is about to be replaced.
+ * While the authorization is pending, requests wait for {@link #awaitAuthorization} before they are sent,
+ * instead of being sent with a header that the server will reject.
+ */
+public interface RefreshableAuthorizationManager extends AuthorizationManager {
+
+	/**
+	 * @return Whether the authorization is being obtained or refreshed, or the cached authorization has expired
+	 */
+	boolean isAuthorizationPending();
+
+	/**
+	 * Waits for the pending authorization, obtaining it if it is not being obtained yet.
+	 * Unlike {@link #obtainAuthorization}, the listener also gets onSuccess when a background refresh of the authorization
+	 * fails, so that the request is sent with the cached header while it is still valid.
+	 * @param context Context for obtaining authorization. Should be Activity if authorization in interactive
+	 * @param listener Response listener, called once the request can be sent
+	 */
+	void awaitAuthorization(Context context, ResponseListener listener);
+}
@@ -18,15 +18,15 @@ import android.content.Context;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AppIdentity;
-import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.DeviceIdentity;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.RefreshableAuthorizationManager;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.api.UserIdentity;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.identity.BaseAppIdentity;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.identity.BaseDeviceIdentity;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.identity.BaseUserIdentity;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationHeaderHelper;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationProcessManager;
-import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationRequest;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.TokenRefreshScheduler;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.challengehandlers.ChallengeHandler;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.preferences.AuthorizationManagerPreferences;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.preferences.SharedPreferencesManager;
@@ -43,7 +43,7 @@ import java.util.List;
 import java.util.Map;
 
 
-public class MCAAuthorizationManager implements AuthorizationManager {
+public class MCAAuthorizationManager implements RefreshableAuthorizationManager {
 
     /**
      * That state of the persistence policy to use during authorization.
@@ -52,6 +52,11 @@ public class MCAAuthorizationManager implements AuthorizationManager {
      */
     public enum PersistencePolicy {ALWAYS, NEVER}
 
+    /**
+     * The default time in milliseconds before the tokens expire that they are refreshed
+     */
+    public static final long DEFAULT_TOKEN_REFRESH_SKEW = TokenRefreshScheduler.DEFAULT_SKEW;
+
     private static MCAAuthorizationManager instance;
     private AuthorizationManagerPreferences preferences;
     private AuthorizationProcessManager authorizationProcessManager;
@@ -85,8 +90,6 @@ public class MCAAuthorizationManager implements AuthorizationManager {
 
             instance.bluemixRegionSuffix = BMSClient.getInstance().getBluemixRegionSuffix();
             instance.tenantId = BMSClient.getInstance().getBluemixAppGUID();
-
-            AuthorizationRequest.setup();
         }
         return instance;
     }
@@ -155,6 +158,32 @@ public class MCAAuthorizationManager implements AuthorizationManager {
         authorizationProcessManager.startAuthorizationProcess(context, listener);
     }
 
+    /**
+     * Requests wait for the authorization process instead of being sent while it runs, or once the tokens have expired.
+     * @return true if the authorization process is running or the tokens have expired
+     */
+    public boolean isAuthorizationPending() {
+        return authorizationProcessManager.isAuthorizationPending();
+    }
+
+    /**
+     * Waits for the running authorization process, or starts one, before a request is sent.
+     * @param context Android Activity that will handle the authorization (like facebook or google)
+     * @param listener Response listener
+     */
+    public synchronized void awaitAuthorization(Context context, ResponseListener listener) {
+        authorizationProcessManager.awaitAuthorization(context, listener);
+    }
+
+    /**
+     * Sets how long before the tokens expire they are refreshed in the background.
+     * The tokens are refreshed halfway through their lifetime instead when it is shorter than the skew.
+     * @param skew the time in milliseconds, {@link #DEFAULT_TOKEN_REFRESH_SKEW} by default
+     */
+    public void setTokenRefreshSkew(long skew) {
+        authorizationProcessManager.setTokenRefreshSkew(skew);
+    }
+
     /**
      * Check if the params came from response that requires authorization
      * @param statusCode of the response
@@ -185,12 +214,20 @@ public class MCAAuthorizationManager implements AuthorizationManager {
     }
 
     /**
-     * Clear the local stored authorization data
+     * Clear the local stored authorization data, and the responses kept in memory and on disk for the current user
      */
     public void clearAuthorizationData() {
         preferences.accessToken.clear();
         preferences.idToken.clear();
         preferences.userIdentity.clear();
+        // Removed credentials must not come back if the app is killed before the write-behind flush
+        preferences.flush();
+        authorizationProcessManager.clearTokens();
+        // Responses kept in memory and on disk were authorized for the user whose data is being cleared
+        if (BMSClient.getInstance() != null) {
+            BMSClient.getInstance().clearMemoryCache();
+            BMSClient.getInstance().clearResponseCache();
+        }
         if (BMSClient.getInstance() != null && BMSClient.getInstance().getCookieManager() != null) {
             CookieStore cookieStore = BMSClient.getInstance().getCookieManager().getCookieStore();
             if(cookieStore != null) {
@@ -249,14 +286,8 @@ public class MCAAuthorizationManager implements AuthorizationManager {
     /**
      * @return the locally stored authorization header or null if the value is not exist.
      */
-    public synchronized String getCachedAuthorizationHeader() {
-        String accessToken = preferences.accessToken.get();
-        String idToken = preferences.idToken.get();
-
-        if (accessToken != null && idToken != null) {
-            return AuthorizationHeaderHelper.BEARER + " " + accessToken + " " + idToken;
-        }
-        return null;
+    public String getCachedAuthorizationHeader() {
+        return preferences.getAuthorizationHeader();
     }
 
     /**
@@ -39,8 +39,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.KeyPair;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -60,6 +60,13 @@ public class AuthorizationProcessManager {
     private CertificateStore certificateStore;
     private Logger logger;
     private String sessionId;
+    private Context applicationContext;
+    private TokenRefreshScheduler tokenRefreshScheduler;
+
+    // Set while the running process is a background token refresh. Written under this
+    private volatile boolean backgroundRefresh;
+    // The context of the last caller that asked for authorization while the background refresh was running. Guarded by this
+    private Context foregroundContext;
 
     public AuthorizationProcessManager(Context context, AuthorizationManagerPreferences preferences) {
         this.logger = Logger.getLogger(Logger.INTERNAL_PREFIX + AuthorizationProcessManager.class.getSimpleName());
@@ -84,6 +91,18 @@ public class AuthorizationProcessManager {
 
         //generate new random session id
         sessionId = UUID.randomUUID().toString();
+
+        //refresh the tokens ahead of their expiry, including the ones saved by a previous run
+        applicationContext = context.getApplicationContext();
+        tokenRefreshScheduler = new TokenRefreshScheduler(new Runnable() {
+            @Override
+            public void run() {
+                refreshTokens();
+            }
+        });
+        if (preferences.accessToken.get() != null && preferences.idToken.get() != null) {
+            tokenRefreshScheduler.restoreTokens(preferences.accessToken.get(), preferences.idToken.get());
+        }
     }
 
     /**
@@ -92,29 +111,88 @@ public class AuthorizationProcessManager {
      * @param listener response listener that will get the result of the process
      */
     public void startAuthorizationProcess(final Context context, ResponseListener listener) {
-        authorizationQueue.add(listener);
+        startAuthorizationProcess(context, listener, false);
+    }
 
-        //start the authorization process only if this is the first time we ask for authorization
-        if (authorizationQueue.size() == 1) {
-            try {
-                if (preferences.clientId.get() == null) {
-                    logger.info("starting registration process");
-                    invokeInstanceRegistrationRequest(context);
-                } else {
-                    logger.info("starting authorization process");
-                    invokeAuthorizationRequest(context);
+    /**
+     * Waits for the pending authorization before a request is sent, starting the authorization process if none is running.
+     * If the process is a background token refresh that fails, the listener still gets onSuccess,
+     * so the request is sent with the header it already has, and a 401 starts the authorization in the foreground.
+     * @param context android context
+     * @param listener response listener that will be called once the request can be sent
+     */
+    public void awaitAuthorization(final Context context, ResponseListener listener) {
+        startAuthorizationProcess(context, new AwaitingListener(listener), false);
+    }
+
+    // Only queueing the listener is done under the lock, so listeners called back when the process fails right away
+    // do not run while it is held
+    private void startAuthorizationProcess(final Context context, ResponseListener listener, boolean background) {
+        synchronized (this) {
+            authorizationQueue.add(listener);
+
+            //start the authorization process only if this is the first time we ask for authorization
+            if (authorizationQueue.size() > 1) {
+                if (backgroundRefresh && !background) {
+                    foregroundContext = context;
                 }
-            } catch (Throwable t) {
-                handleAuthorizationFailure(t);
+                logger.info("authorization process already running, adding response listener to the queue");
+                logger.debug(String.format("authorization process currently handling %d requests", authorizationQueue.size()));
+                return;
             }
+            backgroundRefresh = background;
         }
 
-        else{
-            logger.info("authorization process already running, adding response listener to the queue");
-            logger.debug(String.format("authorization process currently handling %d requests", authorizationQueue.size()));
+        try {
+            if (preferences.clientId.get() == null) {
+                logger.info("starting registration process");
+                invokeInstanceRegistrationRequest(context);
+            } else {
+                logger.info("starting authorization process");
+                invokeAuthorizationRequest(context);
+            }
+        } catch (Throwable t) {
+            handleAuthorizationFailure(t);
         }
     }
 
+    /**
+     * A background token refresh does not make the authorization pending, since the saved tokens are still valid
+     * @return true while the authorization process is running in the foreground, or once the saved tokens have expired
+     */
+    public boolean isAuthorizationPending() {
+        return (!authorizationQueue.isEmpty() && !backgroundRefresh) || tokenRefreshScheduler.isExpired();
+    }
+
+    /**
+     * Sets how long before the tokens expire they are refreshed in the background
+     * @param skew the time in milliseconds
+     */
+    public void setTokenRefreshSkew(long skew) {
+        tokenRefreshScheduler.setSkew(skew);
+    }
+
+    /**
+     * Cancels the refresh of the saved tokens, once they are cleared
+     */
+    public void clearTokens() {
+        tokenRefreshScheduler.clear();
+    }
+
+    /**
+     * Runs the authorization process in the background before the tokens expire, so requests do not wait for it.
+     * Challenge handlers are never called during the refresh, since they may need an Activity: a challenge aborts it,
+     * and the authorization is obtained in the foreground once the server rejects the tokens.
+     */
+    private void refreshTokens() {
+        if (preferences.getAuthorizationHeader() == null) {
+            return;
+        }
+
+        logger.info("refreshing the tokens before they expire");
+        startAuthorizationProcess(applicationContext, new RefreshListener(), true);
+    }
+
     /**
      * logs out user
      * @param context Android Activity that will handle the authorization (like facebook or google)
@@ -128,7 +206,7 @@ public class AuthorizationProcessManager {
         addSessionIdHeader(options.headers);
         options.requestMethod = Request.GET;
         try {
-            authorizationRequestSend(context,"logout", options, listener);
+            authorizationRequestSend(context,"logout", options, listener, false);
         } catch (Exception e) {
             logger.debug("Could not log out");
         }
@@ -153,7 +231,7 @@ public class AuthorizationProcessManager {
             }
         };
 
-        authorizationRequestSend(null, "clients/instance", options, listener);
+        authorizationRequestSend(null, "clients/instance", options, listener, backgroundRefresh);
     }
 
     /**
@@ -267,7 +345,7 @@ public class AuthorizationProcessManager {
             }
         };
 
-        authorizationRequestSend(context, "authorization", options, listener);
+        authorizationRequestSend(context, "authorization", options, listener, backgroundRefresh);
     }
 
 
@@ -349,7 +427,7 @@ public class AuthorizationProcessManager {
             }
         };
 
-        authorizationRequestSend(null, "token", options, listener);
+        authorizationRequestSend(null, "token", options, listener, backgroundRefresh);
     }
 
 
@@ -391,6 +469,7 @@ public class AuthorizationProcessManager {
             //save the tokens
             preferences.accessToken.set(accessToken);
             preferences.idToken.set(idToken);
+            tokenRefreshScheduler.setTokens(accessToken, idToken);
 
             //save the user identity separately
             String[] idTokenData = idToken.split("\\.");
@@ -415,10 +494,11 @@ public class AuthorizationProcessManager {
      * @param options send options
      * @param listener response listener
      */
-    private void authorizationRequestSend(final Context context, String path, AuthorizationRequestManager.RequestOptions options, ResponseListener listener) {
+    private void authorizationRequestSend(final Context context, String path, AuthorizationRequestManager.RequestOptions options, ResponseListener listener, boolean background) {
         try {
             AuthorizationRequestManager authorizationRequestManager = new AuthorizationRequestManager();
             authorizationRequestManager.initialize(context, listener);
+            authorizationRequestManager.setBackground(background);
             authorizationRequestManager.sendRequest(path, options);
         } catch (Exception e) {
             throw new RuntimeException("Failed to send authorization request", e);
@@ -447,12 +527,27 @@ public class AuthorizationProcessManager {
             t.printStackTrace();
         }
 
-        Iterator<ResponseListener> iterator = authorizationQueue.iterator();
+        boolean refreshFailed = backgroundRefresh;
+        Context context = foregroundContext;
+        List<ResponseListener> listeners = takeListeners();
+
+        if (refreshFailed) {
+            for (ResponseListener listener : listeners) {
+                if (listener instanceof AwaitingListener) {
+                    // The saved tokens were not replaced, so the requests waiting for the refresh are sent with them
+                    listener.onSuccess(response);
+                } else if (listener instanceof RefreshListener || context == null) {
+                    listener.onFailure(response, t, extendedInfo);
+                } else {
+                    // Asked for authorization while the refresh was running, so obtain it in the foreground now
+                    startAuthorizationProcess(context, listener, false);
+                }
+            }
+            return;
+        }
 
-        while(iterator.hasNext()) {
-            ResponseListener next = iterator.next();
-            next.onFailure(response, t, extendedInfo);
-            iterator.remove();
+        for (ResponseListener listener : listeners) {
+            listener.onFailure(response, t, extendedInfo);
         }
     }
 
@@ -463,12 +558,59 @@ public class AuthorizationProcessManager {
      */
     private void handleAuthorizationSuccess(Response response) {
 
-        Iterator<ResponseListener> iterator = authorizationQueue.iterator();
+        for (ResponseListener listener : takeListeners()) {
+            listener.onSuccess(response);
+        }
+    }
+
+    /**
+     * Ends the running process. The listeners are taken under the same lock that starts a process, and are called
+     * outside of it, so a listener that starts a new process is not mistaken for one waiting for this process.
+     * @return the listeners waiting for the process
+     */
+    private synchronized List<ResponseListener> takeListeners() {
+        List<ResponseListener> listeners = new ArrayList<>(authorizationQueue);
+        authorizationQueue.clear();
+        backgroundRefresh = false;
+        foregroundContext = null;
+        return listeners;
+    }
+
+    /**
+     * Listener of the background token refresh
+     */
+    private class RefreshListener implements ResponseListener {
+
+        @Override
+        public void onSuccess(Response response) {
+            logger.debug("tokens successfully refreshed");
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            logger.warn("failed to refresh the tokens before they expire");
+        }
+    }
+
+    /**
+     * Listener of a request waiting for the authorization before it is sent, see {@link #awaitAuthorization}
+     */
+    private static class AwaitingListener implements ResponseListener {
+
+        private final ResponseListener listener;
 
-        while(iterator.hasNext()) {
-            ResponseListener next = iterator.next();
-            next.onSuccess(response);
-            iterator.remove();
+        AwaitingListener(ResponseListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public void onSuccess(Response response) {
+            listener.onSuccess(response);
+        }
+
+        @Override
+        public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            listener.onFailure(response, t, extendedInfo);
         }
     }
 
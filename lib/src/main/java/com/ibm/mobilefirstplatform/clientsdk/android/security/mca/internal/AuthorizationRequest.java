@@ -15,62 +15,22 @@ package com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal;
 
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.BaseRequest;
-import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.TLSEnabledSSLSocketFactory;
-import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.internal.HttpClientManager;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 
 import java.net.MalformedURLException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.CertificateException;
 import java.util.Map;
 
-import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
-
 /**
  * AuthorizationRequest is used internally to send authorization requests.
+ * They are sent with the authorization client of {@link HttpClientManager}, which does not follow redirects,
+ * so that the authorization flow can read them, and they are never queued behind the requests of the app.
  */
 public class AuthorizationRequest extends BaseRequest {
 
-    private static final OkHttpClient.Builder httpClient = new OkHttpClient.Builder();
-    private static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + AuthorizationRequest.class.getSimpleName());
-
-
-    static {
-        SSLSocketFactory tlsEnabledSSLSocketFactory;
-        try {
-            final TrustManager[] trustAllCerts = new TrustManager[] {
-                    new X509TrustManager() {
-                        @Override
-                        public void checkClientTrusted(java.security.cert.X509Certificate[] chain, String authType) throws CertificateException {
-                            logger.info("AuthorizationRequest checkClientTrusted method : " + authType );
-                        }
-
-                        @Override
-                        public void checkServerTrusted(java.security.cert.X509Certificate[] chain, String authType) throws CertificateException {
-                            logger.info("AuthorizationRequest checkServerTrusted method : " + authType );
-                        }
-
-                        @Override
-                        public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                            return new java.security.cert.X509Certificate[]{};
-                        }
-                    }
-            };
-            tlsEnabledSSLSocketFactory = new TLSEnabledSSLSocketFactory();
-            httpClient.sslSocketFactory(tlsEnabledSSLSocketFactory, (X509TrustManager)trustAllCerts[0]);
-        } catch (KeyManagementException e) {
-            e.printStackTrace();
-        } catch (NoSuchAlgorithmException e) {
-            e.printStackTrace();
-        } catch (RuntimeException e) {
-            logger.error("RuntimeException : "+e.getLocalizedMessage());
-        }
-    }
-
     /**
      * Constructs the authorization request
      * @param url request url
@@ -79,24 +39,32 @@ public class AuthorizationRequest extends BaseRequest {
      */
     public AuthorizationRequest(String url, String method) throws MalformedURLException {
         super(url, method);
-
-        // we want to handle redirects in-place
-        httpClient.followRedirects(false);
     }
 
     /**
-     * Override the base getter to return authrization http client
+     * Override the base getter to return the authorization http client
      * @return internal http client
      */
+    @Override
     protected OkHttpClient getHttpClient() {
-        return httpClient.build();
+        return HttpClientManager.getInstance().getAuthorizationClient(getConnectTimeout(), getReadTimeout(), getWriteTimeout());
     }
 
     /**
      * Setup network interceptor.
+     * @deprecated The authorization client never follows redirects, so there is nothing to set up.
      */
+    @Deprecated
     public static void setup(){
-        httpClient.followRedirects(false);
+    }
+
+    /**
+     * Sends the call right away on the dispatcher of the authorization client, since the requests
+     * of the app that need authorization are waiting for it.
+     */
+    @Override
+    protected void dispatch(Call call, Callback callback) {
+        call.enqueue(callback);
     }
 
     @Override
@@ -107,6 +107,12 @@ public class AuthorizationRequestManager implements ResponseListener {
      */
     private Context context;
 
+    /**
+     * Set for the requests of a background token refresh. Challenge handlers may show UI and expect an Activity,
+     * so they are never called for these requests, and a challenge aborts the refresh instead.
+     */
+    private boolean background;
+
     /**
      * The request options are specified by the caller and cached for subsequent requests.
      */
@@ -147,6 +153,15 @@ public class AuthorizationRequestManager implements ResponseListener {
         logger.debug("AuthorizationRequestAgent is initialized.");
     }
 
+    /**
+     * Marks the requests as part of a background token refresh, so challenges abort them instead of being handled.
+     *
+     * @param background true for the requests of a background token refresh
+     */
+    public void setBackground(boolean background) {
+        this.background = background;
+    }
+
     /**
      * Assembles the request path from root and path to authorization endpoint and sends the request.
      *
@@ -411,6 +426,11 @@ public class AuthorizationRequestManager implements ResponseListener {
      * @param response       Server response.
      */
     private void startHandleChallenges(JSONObject jsonChallenges, Response response) {
+        if (background) {
+            listener.onFailure(response, new RuntimeException("Authorization challenges cannot be handled during a background token refresh"), null);
+            return;
+        }
+
         ArrayList<String> challenges = getRealmsFromJson(jsonChallenges);
 
         MCAAuthorizationManager authManager = (MCAAuthorizationManager) BMSClient.getInstance().getAuthorizationManager();
@@ -455,7 +475,7 @@ public class AuthorizationRequestManager implements ResponseListener {
      * @param jsonFailures Collection of authentication failures.
      */
     private void processFailures(JSONObject jsonFailures) {
-        if (jsonFailures == null) {
+        if (jsonFailures == null || background) {
             return;
         }
         MCAAuthorizationManager authManager = (MCAAuthorizationManager) BMSClient.getInstance().getAuthorizationManager();
@@ -478,7 +498,7 @@ public class AuthorizationRequestManager implements ResponseListener {
      * @param jsonSuccesses Collection of authentication successes.
      */
     private void processSuccesses(JSONObject jsonSuccesses) {
-        if (jsonSuccesses == null) {
+        if (jsonSuccesses == null || background) {
             return;
         }
 
@@ -0,0 +1,209 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.logger.api.Logger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import okio.ByteString;
+
+/**
+ * Keeps the expiry of the access and ID tokens, and runs a refresh ahead of it.
+ * The tokens expire at the earlier of their expiries. The expiry of a token that was just received is its lifetime,
+ * from its <code>iat</code> claim to its <code>exp</code> claim, counted from the time it was received on the device,
+ * so that a device clock that differs from the server clock does not make it look expired or valid for too long.
+ * The expiry of a saved token, or of a token without an <code>iat</code> claim, is its <code>exp</code> claim.
+ * The refresh runs <code>skew</code> milliseconds before the expiry, or halfway through the remaining lifetime
+ * of the tokens if the skew is longer than that.
+ */
+public class TokenRefreshScheduler {
+
+    public static final long DEFAULT_SKEW = 60 * 1000;
+
+    private static final Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + TokenRefreshScheduler.class.getSimpleName());
+
+    private static final ScheduledExecutorService timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BMSCore token refresh");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Runnable refresh;
+
+    // Written under this, read without it by every request
+    private volatile long expiration; // Milliseconds since the epoch, or 0 when unknown
+
+    // All guarded by this
+    private long skew = DEFAULT_SKEW;
+    private ScheduledFuture<?> refreshTask;
+
+    /**
+     * @param refresh runs on the timer thread when the tokens are about to expire
+     */
+    public TokenRefreshScheduler(Runnable refresh) {
+        this.refresh = refresh;
+    }
+
+    /**
+     * Keeps the expiry of tokens that were just received from the server and schedules their refresh,
+     * replacing the refresh of the previous tokens.
+     *
+     * @param accessToken the access token
+     * @param idToken     the ID token
+     */
+    public void setTokens(String accessToken, String idToken) {
+        setTokens(accessToken, idToken, System.currentTimeMillis());
+    }
+
+    /**
+     * Keeps the expiry of saved tokens and schedules their refresh, replacing the refresh of the previous tokens.
+     * The time the tokens were received is not known, so they expire at their <code>exp</code> claims.
+     *
+     * @param accessToken the access token
+     * @param idToken     the ID token
+     */
+    public void restoreTokens(String accessToken, String idToken) {
+        setTokens(accessToken, idToken, 0);
+    }
+
+    private synchronized void setTokens(String accessToken, String idToken, long receivedAt) {
+        long accessTokenExpiration = getExpiration(accessToken, receivedAt);
+        long idTokenExpiration = getExpiration(idToken, receivedAt);
+
+        if (accessTokenExpiration == 0 || idTokenExpiration == 0) {
+            expiration = Math.max(accessTokenExpiration, idTokenExpiration);
+        } else {
+            expiration = Math.min(accessTokenExpiration, idTokenExpiration);
+        }
+        schedule();
+    }
+
+    /**
+     * Forgets the expiry of the tokens and cancels their refresh.
+     */
+    public synchronized void clear() {
+        expiration = 0;
+        schedule();
+    }
+
+    /**
+     * Sets how long before the tokens expire they are refreshed.
+     *
+     * @param skew the time in milliseconds
+     */
+    public synchronized void setSkew(long skew) {
+        if (skew < 0) {
+            throw new IllegalArgumentException("The skew cannot be negative");
+        }
+        this.skew = skew;
+        schedule();
+    }
+
+    public synchronized long getSkew() {
+        return skew;
+    }
+
+    /**
+     * @return the time the tokens expire at, in milliseconds since the epoch, or 0 when it is unknown
+     */
+    public long getExpiration() {
+        return expiration;
+    }
+
+    /**
+     * @return Whether the tokens have expired
+     */
+    public boolean isExpired() {
+        long expiration = this.expiration;
+        return expiration != 0 && System.currentTimeMillis() >= expiration;
+    }
+
+    // Replaces the pending refresh with one for the current expiry. Tokens that already expired are not refreshed here,
+    // since a server clock ahead of the device could make every new token look expired; they are refreshed on demand.
+    private void schedule() {
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+            refreshTask = null;
+        }
+
+        long remaining = expiration - System.currentTimeMillis();
+        if (expiration == 0 || remaining <= 0) {
+            return;
+        }
+
+        long delay = Math.max(remaining - skew, remaining / 2);
+        logger.debug("refreshing the tokens in " + delay + " ms");
+        refreshTask = timer.schedule(refresh, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Decodes the <code>exp</code> claim of a JWT.
+     *
+     * @param token the JWT
+     * @return the time the token expires at, in milliseconds since the epoch, or 0 if the token has no valid exp claim
+     */
+    static long getExpiration(String token) {
+        return getExpiration(token, 0);
+    }
+
+    /**
+     * Decodes the expiry of a JWT, as the time it was received plus its lifetime from its <code>iat</code> claim
+     * to its <code>exp</code> claim.
+     *
+     * @param token      the JWT
+     * @param receivedAt the time the token was received, in milliseconds since the epoch, or 0 if it is not known
+     * @return the time the token expires at on the device clock, in milliseconds since the epoch. This is the exp claim
+     * if the token has no valid iat claim, or if the time it was received is not known. It is 0 if the token has no valid exp claim.
+     */
+    static long getExpiration(String token, long receivedAt) {
+        if (token == null) {
+            return 0;
+        }
+
+        String[] parts = token.split("\\.");
+        if (parts.length < 2) {
+            return 0;
+        }
+
+        // The payload is base64url encoded without padding, which ByteString decodes as well as plain base64
+        ByteString payload = ByteString.decodeBase64(parts[1]);
+        if (payload == null) {
+            return 0;
+        }
+
+        try {
+            JSONObject claims = new JSONObject(payload.utf8());
+            long exp = claims.optLong("exp", 0);
+            long iat = claims.optLong("iat", 0);
+            if (exp == 0 || receivedAt == 0 || iat <= 0 || iat > exp) {
+                return exp * 1000;
+            }
+            return receivedAt + (exp - iat) * 1000;
+        } catch (JSONException e) {
+            logger.warn("Failed to read the expiry of the token. Error: " + e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -17,6 +17,7 @@ import android.content.Context;
 import android.provider.Settings;
 
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.api.MCAAuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationHeaderHelper;
 import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.encryption.AESStringEncryption;
 
 /**
@@ -35,11 +36,34 @@ public class AuthorizationManagerPreferences extends SharedPreferencesManager {
     public JSONPreference deviceIdentity = new JSONPreference("deviceIdentity");
     public JSONPreference appIdentity = new JSONPreference("appIdentity");
 
+    // The header built from the tokens, so that reading it takes no lock and does not decrypt the saved tokens
+    private volatile String authorizationHeader;
+
     public AuthorizationManagerPreferences(Context context) {
         super(context, "AuthorizationManagerPreferences", Context.MODE_PRIVATE);
 
         String uuid = Settings.Secure.getString(context.getContentResolver(), android.provider.Settings.Secure.ANDROID_ID);
         setStringEncryption(new AESStringEncryption(uuid));
+        updateAuthorizationHeader();
+    }
+
+    /**
+     * @return the Authorization header for the current tokens, or null if there are none
+     */
+    public String getAuthorizationHeader() {
+        return authorizationHeader;
+    }
+
+    // Rebuilds the header from the tokens. Called by the token and policy preferences whenever they change.
+    private synchronized void updateAuthorizationHeader() {
+        String access = accessToken.get();
+        String id = idToken.get();
+
+        if (access != null && id != null) {
+            authorizationHeader = AuthorizationHeaderHelper.BEARER + " " + access + " " + id;
+        } else {
+            authorizationHeader = null;
+        }
     }
 
     /**
@@ -61,8 +85,8 @@ public class AuthorizationManagerPreferences extends SharedPreferencesManager {
 
         public void set(MCAAuthorizationManager.PersistencePolicy value) {
             this.value = value;
-            editor.putString(prefName, value.toString());
-            editor.commit();
+            write(prefName, value.toString());
+            updateAuthorizationHeader();
         }
     }
 
@@ -85,6 +109,7 @@ public class AuthorizationManagerPreferences extends SharedPreferencesManager {
             } else {
                 savedValue.clear();
             }
+            updateAuthorizationHeader();
         }
 
         public String get() {
@@ -100,11 +125,13 @@ public class AuthorizationManagerPreferences extends SharedPreferencesManager {
             } else {
                 savedValue.clear();
             }
+            updateAuthorizationHeader();
         }
 
         public void clear() {
             savedValue.clear();
             runtimeValue = null;
+            updateAuthorizationHeader();
         }
     }
 }
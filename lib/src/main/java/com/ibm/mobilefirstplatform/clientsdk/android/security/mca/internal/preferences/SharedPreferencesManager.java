@@ -24,25 +24,102 @@ import org.json.JSONObject;
 
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * General shared preferences
  * Created by cirilla on 7/16/15.
+ *
+ * Values are kept in memory, so they can be read back right after they are set. Writing them to disk is deferred
+ * for {@link #WRITE_DELAY} ms and done on a background thread, so the values set one after another are written
+ * together, in a single commit. Call {@link #flush()} to write the pending values before relying on them being on disk.
  */
 public class SharedPreferencesManager {
 
+    static final long WRITE_DELAY = 100;
+
+    private static final ScheduledExecutorService writer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BMSCore preferences writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     protected SharedPreferences sharedPreferences;
     protected SharedPreferences.Editor editor;
     protected StringEncryption stringEncryption;
 
 	private final static Logger logger = Logger.getLogger(Logger.INTERNAL_PREFIX + SharedPreferencesManager.class.getName());
 
+    // The values set since the last flush, by preference name, null for the removed ones. All guarded by pendingWrites
+    private final Map<String, String> pendingWrites = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    // Held while the pending values are taken and committed, so flushes commit in the order the values were set
+    private final Object flushLock = new Object();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
     public SharedPreferencesManager(Context context, String name, int mode) {
         this.sharedPreferences = context.getSharedPreferences(name, mode);
         this.editor = sharedPreferences.edit();
     }
 
+    /**
+     * Writes the given value with the next flush, replacing any value of the same preference waiting for it.
+     * @param prefName the name of the preference
+     * @param value the value to write, or null to remove the preference
+     */
+    protected void write(String prefName, String value) {
+        synchronized (pendingWrites) {
+            pendingWrites.put(prefName, value);
+            if (!flushScheduled) {
+                flushScheduled = true;
+                writer.schedule(flushTask, WRITE_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Writes the values set since the last flush to disk, in a single commit, and waits until they are written.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<String, String> writes;
+            synchronized (pendingWrites) {
+                flushScheduled = false;
+                if (pendingWrites.isEmpty()) {
+                    return;
+                }
+                writes = new LinkedHashMap<>(pendingWrites);
+                pendingWrites.clear();
+            }
+
+            for (Map.Entry<String, String> write : writes.entrySet()) {
+                if (write.getValue() == null) {
+                    editor.remove(write.getKey());
+                } else {
+                    editor.putString(write.getKey(), write.getValue());
+                }
+            }
+            if (!editor.commit()) {
+                logger.error("Failed to write " + writes.size() + " preferences");
+            }
+        }
+    }
+
     /**
      * Set encryption method for the using to save/load preferences
      * @param stringEncryption the method of encryption to use
@@ -83,8 +160,7 @@ public class SharedPreferencesManager {
         }
 
         private void commit() {
-            editor.putString(prefName, value);
-            editor.commit();
+            write(prefName, value);
         }
     }
 
@@ -0,0 +1,79 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class ExponentialBackoffRetryPolicyTests {
+
+    @Test
+    public void testDelayGrowsWithJitterUpToMaximum() {
+        RetryPolicy policy = new ExponentialBackoffRetryPolicy(100, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            long first = policy.getRetryDelay(0, null, new IOException());
+            long third = policy.getRetryDelay(2, null, new IOException());
+            long tenth = policy.getRetryDelay(9, null, new IOException());
+
+            assertTrue(first >= 0 && first < 100);
+            assertTrue(third >= 0 && third < 400);
+            assertTrue(tenth >= 0 && tenth < 1000);
+        }
+    }
+
+    @Test
+    public void testOnlyTemporaryErrorsAreRetried() {
+        RetryPolicy policy = new ExponentialBackoffRetryPolicy(0, 0);
+
+        assertEquals(0, policy.getRetryDelay(0, newResponse(503, null), null));
+        assertEquals(0, policy.getRetryDelay(0, newResponse(504, null), null));
+        assertEquals(0, policy.getRetryDelay(0, newResponse(429, null), null));
+        assertEquals(RetryPolicy.NO_RETRY, policy.getRetryDelay(0, newResponse(500, null), null));
+        assertEquals(RetryPolicy.NO_RETRY, policy.getRetryDelay(0, newResponse(404, null), null));
+    }
+
+    @Test
+    public void testRetryAfterIsHonored() {
+        RetryPolicy policy = new ExponentialBackoffRetryPolicy(100, 5000);
+
+        assertEquals(2000, policy.getRetryDelay(0, newResponse(503, "2"), null));
+        assertEquals(RetryPolicy.NO_RETRY, policy.getRetryDelay(0, newResponse(503, "60"), null));
+        assertEquals(0, policy.getRetryDelay(0, newResponse(429, "Wed, 21 Oct 2015 07:28:00 GMT"), null));
+
+        long invalid = policy.getRetryDelay(0, newResponse(503, "soon"), null);
+        assertTrue(invalid >= 0 && invalid < 100);
+    }
+
+    private Response newResponse(int status, String retryAfter) {
+        Map<String, List<String>> headers = retryAfter != null
+                ? Collections.singletonMap("retry-after", Collections.singletonList(retryAfter))
+                : Collections.<String, List<String>>emptyMap();
+
+        Response response = mock(Response.class);
+        when(response.getStatus()).thenReturn(status);
+        when(response.getHeaders()).thenReturn(headers);
+        return response;
+    }
+}
@@ -364,6 +364,16 @@ public class NetworkMonitorTests {
         assertTrue(latch.await(100, TimeUnit.MILLISECONDS));
     }
 
+    @Test
+    public void testIsActiveNetworkMeteredWithoutConnection() {
+        NetworkMonitor mockedMonitor = mock(NetworkMonitor.class);
+
+        when(mockedMonitor.isInternetAccessAvailable()).thenReturn(false);
+        when(mockedMonitor.isActiveNetworkMetered()).thenCallRealMethod();
+
+        assertTrue(mockedMonitor.isActiveNetworkMetered());
+    }
+
 
     private NetworkConnectionListener getNetworkListener() {
         NetworkConnectionListener listener = new NetworkConnectionListener() {
@@ -0,0 +1,138 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.api;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.security.DummyAuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+
+public class RequestTemplateTests {
+
+    @Test
+    public void testTemplateResolvesQueryParametersAndHeaders() throws Exception {
+        Request request = new Request("http://www.example.com/items", Request.GET, 5000, 2);
+        request.setQueryParameter("limit", "50");
+        request.addHeader("Accept", "application/json");
+        request.addHeader("Authorization", "Bearer stale");
+        request.setPriority(RequestPriority.INTERACTIVE);
+
+        RequestTemplate template = new RequestTemplate(request);
+        Request first = template.newRequest();
+
+        assertEquals("http://www.example.com/items?limit=50", template.getUrl());
+        assertEquals("http://www.example.com/items?limit=50", first.getUrl());
+        assertEquals(Request.GET, first.getMethod());
+        assertEquals(5000, first.getTimeout());
+        assertEquals(2, first.getNumberOfRetries());
+        assertEquals(RequestPriority.INTERACTIVE, first.getPriority());
+        assertEquals(Arrays.asList("application/json"), first.getHeaders("Accept"));
+        assertTrue(first.getHeaders("Authorization").isEmpty());
+        assertTrue(first.getQueryParameters().isEmpty());
+    }
+
+    @Test
+    public void testTemplateIsNotChangedByRequests() throws Exception {
+        Request request = new Request("http://www.example.com/items", Request.GET);
+        request.addHeader("Accept", "application/json");
+        RequestTemplate template = new RequestTemplate(request);
+
+        request.addHeader("Accept", "text/plain");
+        request.setQueryParameter("limit", "50");
+
+        Request first = template.newRequest();
+        first.addHeader("X-Trace", "1");
+        first.setQueryParameter("page", "2");
+        Request second = template.newRequest();
+
+        assertNotSame(first, second);
+        assertEquals("http://www.example.com/items", template.getUrl());
+        assertEquals(Arrays.asList("application/json"), second.getHeaders("Accept"));
+        assertTrue(second.getHeaders("X-Trace").isEmpty());
+        assertTrue(second.getQueryParameters().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentSendsFromTemplate() throws Exception {
+        AuthorizationManager mockAuthorizationManager = mock(DummyAuthorizationManager.class);
+        BMSClient.getInstance().setAuthorizationManager(mockAuthorizationManager);
+
+        final int requestCount = 8;
+        MockWebServer mockServer = new MockWebServer();
+        for (int i = 0; i < requestCount; i++) {
+            mockServer.enqueue(new MockResponse().setBody("OK"));
+        }
+        mockServer.start();
+
+        Request request = new Request(mockServer.url("/items").toString(), Request.GET);
+        request.setQueryParameter("limit", "50");
+        request.addHeader("Accept", "application/json");
+        final RequestTemplate template = new RequestTemplate(request);
+
+        final CountDownLatch latch = new CountDownLatch(requestCount);
+        final ResponseListener listener = new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+            }
+        };
+
+        for (int i = 0; i < requestCount; i++) {
+            final String page = String.valueOf(i);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Request pageRequest = template.newRequest();
+                    pageRequest.setQueryParameter("page", page);
+                    pageRequest.send(null, listener);
+                }
+            }).start();
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        Set<String> paths = new HashSet<>();
+        for (int i = 0; i < requestCount; i++) {
+            RecordedRequest recordedRequest = mockServer.takeRequest(1, TimeUnit.SECONDS);
+            paths.add(recordedRequest.getPath());
+            assertEquals("application/json", recordedRequest.getHeader("Accept"));
+        }
+        for (int i = 0; i < requestCount; i++) {
+            assertTrue(paths.contains("/items?limit=50&page=" + i));
+        }
+
+        mockServer.shutdown();
+    }
+}
@@ -78,6 +78,7 @@ public class RequestTests {
 
         int numberOfRetries = 3;
         Request request = new Request(mockServer.url("").toString(), Request.GET, 10, numberOfRetries);
+        request.setRetryPolicy(new ExponentialBackoffRetryPolicy(0, 0)); // Retry right away
         ResponseListener listener = new ResponseListener() {
             @Override
             public void onSuccess(Response response) {
@@ -117,6 +118,7 @@ public class RequestTests {
         mockServer.start();
 
         Request request = new Request(mockServer.url("").toString(), Request.GET, 10, numberOfRetries);
+        request.setRetryPolicy(new ExponentialBackoffRetryPolicy(0, 0)); // Retry right away
         ResponseListener listener = new ResponseListener() {
             @Override
             public void onSuccess(Response response) {
@@ -14,30 +14,59 @@
 package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
 
 
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CachePolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerOpenException;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerState;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ExponentialBackoffRetryPolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkMonitor;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ProgressListener;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
 import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RetryPolicy;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.UserIdentity;
+import okhttp3.Call;
 import okhttp3.Callback;
+import okhttp3.ConnectionPool;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+import okio.Okio;
 
 import org.json.JSONObject;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.mockito.Mockito.doCallRealMethod;
@@ -46,6 +75,9 @@ import static org.mockito.Mockito.when;
 
 public class BaseRequestTests {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private CountDownLatch latch = null;
 
     @Test
@@ -679,7 +711,7 @@ public class BaseRequestTests {
         when(mockedResponse.getResponseByteStream()).thenReturn(responseStream);
         when(mockedResponse.getContentLength()).thenReturn((long)expectedResponseBytes.length);
 
-        int expectedNumberOfOnProgressCalls = expectedResponseBytes.length / 2048;
+        int expectedNumberOfOnProgressCalls = expectedResponseBytes.length / BaseRequest.DOWNLOAD_SEGMENT_SIZE;
         latch = new CountDownLatch(expectedNumberOfOnProgressCalls + 1);
 
         ProgressListener progressListener = new ProgressListener() {
@@ -695,6 +727,875 @@ public class BaseRequestTests {
     }
 
 
+    @Test
+    public void testTimeoutsAreScopedToRequest() {
+        BaseRequest shortRequest = new BaseRequest("http://localhost", BaseRequest.GET, 1000);
+        BaseRequest longRequest = new BaseRequest("http://localhost", BaseRequest.GET, 120000);
+        longRequest.setReadTimeout(300000);
+
+        assertEquals(1000, shortRequest.getConnectTimeout());
+        assertEquals(1000, shortRequest.getReadTimeout());
+        assertEquals(1000, shortRequest.getWriteTimeout());
+        assertEquals(120000, longRequest.getConnectTimeout());
+        assertEquals(300000, longRequest.getReadTimeout());
+        assertEquals(0, longRequest.getCallTimeout());
+    }
+
+    @Test
+    public void testCallTimeout() throws Exception {
+        latch = new CountDownLatch(1);
+
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        mockServer.start();
+
+        try {
+            final Throwable[] failure = new Throwable[1];
+            BaseRequest request = new BaseRequest(mockServer.url("").toString(), BaseRequest.GET);
+            request.setCallTimeout(200);
+            request.send(new DummyResponseListener() {
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    failure[0] = t;
+                    latch.countDown();
+                }
+            });
+
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+            assertTrue(failure[0] instanceof InterruptedIOException);
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+
+    @Test
+    public void testDownloadToStreamsBodyIntoFile() throws Exception {
+        latch = new CountDownLatch(1);
+
+        byte[] expectedBytes = new byte[100000];
+        new Random().nextBytes(expectedBytes);
+
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setBody(new Buffer().write(expectedBytes)));
+        mockServer.start();
+
+        try {
+            final File destination = temporaryFolder.newFile("download.tmp");
+            final long[] lastProgress = new long[2];
+            final Response[] result = new Response[1];
+
+            BaseRequest request = new BaseRequest(mockServer.url("").toString(), BaseRequest.GET);
+            request.downloadTo(destination, new ProgressListener() {
+                @Override
+                public void onProgress(long bytesSoFar, long totalBytesExpected) {
+                    lastProgress[0] = bytesSoFar;
+                    lastProgress[1] = totalBytesExpected;
+                }
+            }, new DummyResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    result[0] = response;
+                    latch.countDown();
+                }
+            });
+
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+            assertEquals(200, result[0].getStatus());
+            assertEquals(expectedBytes.length, lastProgress[0]);
+            assertEquals(expectedBytes.length, lastProgress[1]);
+            assertTrue(Arrays.equals(expectedBytes, Okio.buffer(Okio.source(destination)).readByteArray()));
+            // The consumed body is empty, while the header still tells the downloaded length
+            assertEquals(0, ((ResponseImpl)result[0]).getContentLength());
+            assertEquals(String.valueOf(expectedBytes.length), result[0].getHeaders().get("Content-Length").get(0));
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testUploadResumableContinuesFromAcknowledgedOffset() throws Exception {
+        byte[] payload = new byte[250000];
+        new Random().nextBytes(payload);
+
+        File file = temporaryFolder.newFile("upload.bin");
+        Okio.buffer(Okio.sink(file)).write(payload).close();
+        File stateDirectory = new File(temporaryFolder.getRoot(), "upload-state");
+
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setResponseCode(308).setHeader("Range", "bytes=0-99999"));
+        mockServer.enqueue(new MockResponse().setResponseCode(500));
+        mockServer.enqueue(new MockResponse().setResponseCode(308).setHeader("Range", "bytes=0-199999"));
+        mockServer.enqueue(new MockResponse().setResponseCode(201));
+        mockServer.start();
+
+        try {
+            // The first attempt fails on the second chunk
+            latch = new CountDownLatch(1);
+            BaseRequest request = new BaseRequest(mockServer.url("").toString(), BaseRequest.PUT);
+            request.uploadResumable(file, 100000, stateDirectory, null, new DummyResponseListener() {
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+
+            // The second attempt, from a new request, continues with the second chunk
+            latch = new CountDownLatch(1);
+            final long[] lastProgress = new long[1];
+            final Response[] result = new Response[1];
+            request = new BaseRequest(mockServer.url("").toString(), BaseRequest.PUT);
+            request.uploadResumable(file, 100000, stateDirectory, new ProgressListener() {
+                @Override
+                public void onProgress(long bytesSoFar, long totalBytesExpected) {
+                    lastProgress[0] = bytesSoFar;
+                }
+            }, new DummyResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    result[0] = response;
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+            assertEquals(201, result[0].getStatus());
+            assertEquals(payload.length, lastProgress[0]);
+
+            assertEquals("bytes 0-99999/250000", mockServer.takeRequest().getHeader("Content-Range"));
+            assertEquals("bytes 100000-199999/250000", mockServer.takeRequest().getHeader("Content-Range"));
+            RecordedRequest resumedRequest = mockServer.takeRequest();
+            assertEquals("bytes 100000-199999/250000", resumedRequest.getHeader("Content-Range"));
+            assertTrue(Arrays.equals(Arrays.copyOfRange(payload, 100000, 200000), resumedRequest.getBody().readByteArray()));
+            RecordedRequest lastRequest = mockServer.takeRequest();
+            assertEquals("bytes 200000-249999/250000", lastRequest.getHeader("Content-Range"));
+            assertEquals(50000, lastRequest.getBodySize());
+
+            // The saved state is removed once the upload completes
+            assertEquals(0, stateDirectory.list().length);
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testUploadResumableDoesNotSkipChunkWithoutRange() throws Exception {
+        File file = temporaryFolder.newFile("upload.bin");
+        Okio.buffer(Okio.sink(file)).write(new byte[250000]).close();
+
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setResponseCode(308));
+        mockServer.start();
+
+        try {
+            latch = new CountDownLatch(1);
+            final Throwable[] failure = new Throwable[1];
+            BaseRequest request = new BaseRequest(mockServer.url("").toString(), BaseRequest.PUT);
+            request.uploadResumable(file, 100000, temporaryFolder.newFolder(), null, new DummyResponseListener() {
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    failure[0] = t;
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+
+            // A 308 without Range means the server stored nothing, so the next chunk is not sent
+            assertTrue(failure[0] instanceof IOException);
+            assertEquals(1, mockServer.getRequestCount());
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testDownloadResumableContinuesPartialFile() throws Exception {
+        final byte[] payload = new byte[200000];
+        new Random().nextBytes(payload);
+
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.setDispatcher(new RangeDispatcher(payload, true));
+        mockServer.start();
+
+        try {
+            File destination = new File(temporaryFolder.getRoot(), "download.bin");
+            File partFile = new File(destination.getPath() + ".part");
+
+            // The first attempt is interrupted in the middle of the body
+            latch = new CountDownLatch(1);
+            BaseRequest request = new BaseRequest(mockServer.url("").toString(), BaseRequest.GET);
+            request.downloadResumable(destination, 1, null, new DummyResponseListener() {
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+            assertTrue(partFile.exists());
+            long resumedFrom = partFile.length();
+            assertTrue(resumedFrom < payload.length);
+
+            // The second attempt only asks for the missing bytes
+            latch = new CountDownLatch(1);
+            final long[] lastProgress = new long[2];
+            request = new BaseRequest(mockServer.url("").toString(), BaseRequest.GET);
+            request.downloadResumable(destination, 1, new ProgressListener() {
+                @Override
+                public void onProgress(long bytesSoFar, long totalBytesExpected) {
+                    lastProgress[0] = bytesSoFar;
+                    lastProgress[1] = totalBytesExpected;
+                }
+            }, new DummyResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+
+            mockServer.takeRequest();
+            RecordedRequest resumedRequest = mockServer.takeRequest();
+            assertEquals("bytes=" + resumedFrom + "-", resumedRequest.getHeader("Range"));
+            assertEquals("\"v1\"", resumedRequest.getHeader("If-Range"));
+            assertFalse(partFile.exists());
+            assertTrue(Arrays.equals(payload, Okio.buffer(Okio.source(destination)).readByteArray()));
+            assertEquals(payload.length, lastProgress[0]);
+            assertEquals(payload.length, lastProgress[1]);
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testDownloadResumableInParallelRanges() throws Exception {
+        final byte[] payload = new byte[(int)(3 * ResumableDownload.MIN_PARALLEL_RANGE_SIZE) + 12345];
+        new Random().nextBytes(payload);
+
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.setDispatcher(new RangeDispatcher(payload, false));
+        mockServer.start();
+
+        try {
+            File destination = new File(temporaryFolder.getRoot(), "download.bin");
+
+            latch = new CountDownLatch(1);
+            BaseRequest request = new BaseRequest(mockServer.url("").toString(), BaseRequest.GET);
+            request.downloadResumable(destination, 3, null, new DummyResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(5000, TimeUnit.MILLISECONDS));
+
+            assertEquals(BaseRequest.HEAD, mockServer.takeRequest().getMethod());
+            Set<String> ranges = new HashSet<>();
+            for (int i = 0; i < 3; i++) {
+                ranges.add(mockServer.takeRequest().getHeader("Range"));
+            }
+            long rangeSize = payload.length / 3;
+            assertTrue(ranges.contains("bytes=0-" + (rangeSize - 1)));
+            assertTrue(ranges.contains("bytes=" + (2 * rangeSize) + "-" + (payload.length - 1)));
+            assertTrue(Arrays.equals(payload, Okio.buffer(Okio.source(destination)).readByteArray()));
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testDownloadResumableRejectsRangeFromAnotherOffset() throws Exception {
+        final byte[] payload = new byte[200000];
+        new Random().nextBytes(payload);
+
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.setDispatcher(new RangeDispatcher(payload, true));
+        mockServer.start();
+
+        try {
+            File destination = new File(temporaryFolder.getRoot(), "download.bin");
+            File partFile = new File(destination.getPath() + ".part");
+
+            latch = new CountDownLatch(1);
+            BaseRequest request = new BaseRequest(mockServer.url("").toString(), BaseRequest.GET);
+            request.downloadResumable(destination, 1, null, new DummyResponseListener() {
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+            long resumedFrom = partFile.length();
+
+            // The server answers the resumed request with the bytes from the start of the resource
+            mockServer.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    return new MockResponse().setResponseCode(206)
+                            .setHeader("ETag", "\"v1\"")
+                            .setHeader("Content-Range", "bytes 0-" + (payload.length - 1) + "/" + payload.length)
+                            .setBody(new Buffer().write(payload));
+                }
+            });
+
+            latch = new CountDownLatch(1);
+            final Throwable[] error = new Throwable[1];
+            request = new BaseRequest(mockServer.url("").toString(), BaseRequest.GET);
+            request.downloadResumable(destination, 1, null, new DummyResponseListener() {
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    error[0] = t;
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+
+            assertTrue(error[0] instanceof IOException);
+            assertEquals(resumedFrom, partFile.length());
+            assertFalse(destination.exists());
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testDownloadResumableCancelsOtherRangesWhenOneFails() throws Exception {
+        final byte[] payload = new byte[(int)(3 * ResumableDownload.MIN_PARALLEL_RANGE_SIZE)];
+        new Random().nextBytes(payload);
+
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.setDispatcher(new RangeDispatcher(payload, false) {
+            @Override
+            public synchronized MockResponse dispatch(RecordedRequest request) {
+                String range = request.getHeader("Range");
+                if (range != null && range.startsWith("bytes=0-")) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                // The other ranges arrive slowly enough to still be downloading when the first one fails
+                return super.dispatch(request).throttleBody(64 * 1024, 100, TimeUnit.MILLISECONDS);
+            }
+        });
+        mockServer.start();
+
+        try {
+            File destination = new File(temporaryFolder.getRoot(), "download.bin");
+
+            latch = new CountDownLatch(1);
+            BaseRequest request = new BaseRequest(mockServer.url("").toString(), BaseRequest.GET);
+            request.downloadResumable(destination, 3, null, new DummyResponseListener() {
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(2000, TimeUnit.MILLISECONDS));
+
+            // Once the failure is reported, the partial files of the other ranges stop growing
+            Thread.sleep(300);
+            long[] lengths = new long[3];
+            for (int i = 1; i < 3; i++) {
+                lengths[i] = new File(destination.getPath() + ".part" + i).length();
+            }
+            Thread.sleep(500);
+            for (int i = 1; i < 3; i++) {
+                File partFile = new File(destination.getPath() + ".part" + i);
+                assertEquals(lengths[i], partFile.length());
+                assertTrue(partFile.length() < ResumableDownload.MIN_PARALLEL_RANGE_SIZE);
+            }
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testResponseCacheRevalidatesWithETag() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setHeader("ETag", "\"a\"").setHeader("Cache-Control", "max-age=0").setBody("cached body"));
+        mockServer.enqueue(new MockResponse().setResponseCode(304));
+        mockServer.start();
+
+        BMSClient.getInstance().enableResponseCache(newCacheDirectory(), 1024 * 1024);
+        try {
+            String url = mockServer.url("/etag").toString();
+            assertEquals("cached body", sendAndWait(new BaseRequest(url, BaseRequest.GET)).getResponseText());
+            assertEquals("cached body", sendAndWait(new BaseRequest(url, BaseRequest.GET)).getResponseText());
+
+            mockServer.takeRequest();
+            assertEquals("\"a\"", mockServer.takeRequest().getHeader("If-None-Match"));
+            assertEquals(1, BMSClient.getInstance().getResponseCacheHitCount());
+            assertEquals(1, BMSClient.getInstance().getResponseCacheMissCount());
+        } finally {
+            BMSClient.getInstance().disableResponseCache();
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testCacheFirstIsScopedToAuthorization() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("user1"));
+        mockServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("user2"));
+        mockServer.start();
+
+        BMSClient.getInstance().enableResponseCache(newCacheDirectory(), 1024 * 1024);
+        try {
+            String url = mockServer.url("/user").toString();
+            BaseRequest request = new BaseRequest(url, BaseRequest.GET);
+            request.addHeader("Authorization", "Bearer 1");
+            request.setCachePolicy(CachePolicy.CACHE_FIRST);
+            assertEquals("user1", sendAndWait(request).getResponseText());
+            assertEquals("user1", sendAndWait(request).getResponseText());
+            assertEquals(1, mockServer.getRequestCount());
+
+            request.removeHeaders("Authorization");
+            request.addHeader("Authorization", "Bearer 2");
+            assertEquals("user2", sendAndWait(request).getResponseText());
+            assertEquals(2, mockServer.getRequestCount());
+        } finally {
+            BMSClient.getInstance().disableResponseCache();
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testResponseCacheIsScopedToUserWithoutStoringTokens() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("alice"));
+        mockServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("bob"));
+        mockServer.start();
+
+        UserIdentity user = mock(UserIdentity.class);
+        when(user.getId()).thenReturn("alice");
+        AuthorizationManager authorizationManager = mock(AuthorizationManager.class);
+        when(authorizationManager.getUserIdentity()).thenReturn(user);
+        BMSClient.getInstance().setAuthorizationManager(authorizationManager);
+
+        File directory = newCacheDirectory();
+        BMSClient.getInstance().enableResponseCache(directory, 1024 * 1024);
+        try {
+            String url = mockServer.url("/profile").toString();
+            BaseRequest request = new BaseRequest(url, BaseRequest.GET);
+            request.addHeader("Authorization", "Bearer secret-1");
+            request.setCachePolicy(CachePolicy.CACHE_FIRST);
+            assertEquals("alice", sendAndWait(request).getResponseText());
+            assertNull(mockServer.takeRequest().getHeader(HttpClientManager.CACHE_IDENTITY));
+
+            // A refreshed token still finds the responses cached for the same user
+            request.removeHeaders("Authorization");
+            request.addHeader("Authorization", "Bearer secret-2");
+            assertEquals("alice", sendAndWait(request).getResponseText());
+            assertEquals(1, mockServer.getRequestCount());
+
+            // The tokens are never written to the cache directory
+            for (File file : directory.listFiles()) {
+                String content = new String(Okio.buffer(Okio.source(file)).readByteArray(), "UTF-8");
+                assertFalse(file.getName(), content.contains("secret"));
+            }
+
+            when(user.getId()).thenReturn("bob");
+            assertEquals("bob", sendAndWait(request).getResponseText());
+            assertEquals(2, mockServer.getRequestCount());
+
+            BMSClient.getInstance().clearResponseCache();
+            assertEquals(0, HttpClientManager.getInstance().getCache().size());
+        } finally {
+            BMSClient.getInstance().disableResponseCache();
+            BMSClient.getInstance().setAuthorizationManager(null);
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("v1"));
+        mockServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("v2"));
+        mockServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("v3"));
+        mockServer.start();
+
+        BMSClient.getInstance().enableResponseCache(newCacheDirectory(), 1024 * 1024);
+        try {
+            String url = mockServer.url("/swr").toString();
+            BaseRequest request = new BaseRequest(url, BaseRequest.GET);
+            request.setCachePolicy(CachePolicy.STALE_WHILE_REVALIDATE);
+
+            // Nothing is cached yet, so the first response comes from the network
+            assertEquals("v1", sendAndWait(request).getResponseText());
+
+            // The stale response is delivered, and refreshed in the background
+            assertEquals("v1", sendAndWait(request).getResponseText());
+            mockServer.takeRequest();
+            mockServer.takeRequest(2, TimeUnit.SECONDS);
+            Thread.sleep(200);
+
+            assertEquals("v2", sendAndWait(request).getResponseText());
+        } finally {
+            BMSClient.getInstance().disableResponseCache();
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testStaleWhileRevalidateDoesNotRefreshThroughOpenCircuitBreaker() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("v1"));
+        mockServer.enqueue(new MockResponse().setHeader("Cache-Control", "max-age=0").setBody("v2"));
+        mockServer.start();
+
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setWindowSize(2);
+        config.setMinimumCalls(2);
+        BMSClient.getInstance().setCircuitBreakerConfig(config);
+        BMSClient.getInstance().enableResponseCache(newCacheDirectory(), 1024 * 1024);
+        try {
+            BaseRequest request = new BaseRequest(mockServer.url("/swr-breaker").toString(), BaseRequest.GET);
+            request.setCachePolicy(CachePolicy.STALE_WHILE_REVALIDATE);
+            assertEquals("v1", sendAndWait(request).getResponseText());
+
+            CircuitBreaker circuitBreaker = CircuitBreaker.forHost(mockServer.getHostName());
+            for (int i = 0; i < 2; i++) {
+                circuitBreaker.tryAcquire();
+                circuitBreaker.record(true, 0);
+            }
+            assertEquals(CircuitBreakerState.OPEN, circuitBreaker.getState());
+
+            // The cached response is still delivered, but the refresh is not sent to the failing host
+            assertEquals("v1", sendAndWait(request).getResponseText());
+            Thread.sleep(200);
+            assertEquals(1, mockServer.getRequestCount());
+        } finally {
+            BMSClient.getInstance().disableResponseCache();
+            BMSClient.getInstance().setCircuitBreakerConfig(null);
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testMemoryCacheSharesParsedResponse() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setBody("{\"n\":1}"));
+        mockServer.enqueue(new MockResponse().setBody("{\"n\":2}"));
+        mockServer.start();
+
+        try {
+            String url = mockServer.url("/memory").toString();
+            BaseRequest request = new BaseRequest(url, BaseRequest.GET);
+            request.addHeader("Authorization", "Bearer 1");
+            request.setMemoryCacheTimeToLive(60000);
+
+            Response first = sendAndWait(request);
+            Response second = sendAndWait(request);
+            assertSame(first, second);
+            assertSame(first.getResponseJSON(), second.getResponseJSON());
+            assertEquals(1, mockServer.getRequestCount());
+
+            // Another user does not see the cached response
+            request.removeHeaders("Authorization");
+            request.addHeader("Authorization", "Bearer 2");
+            assertEquals(2, sendAndWait(request).getResponseJSON().getInt("n"));
+            assertEquals(2, mockServer.getRequestCount());
+        } finally {
+            BMSClient.getInstance().clearMemoryCache();
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testIdenticalGetsInFlightShareOneCall() throws Exception {
+        final CountDownLatch releaseResponse = new CountDownLatch(1);
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                releaseResponse.await(2, TimeUnit.SECONDS);
+                return new MockResponse().setBody(request.getHeader("Accept"));
+            }
+        });
+        mockServer.start();
+
+        try {
+            String url = mockServer.url("/shared").toString();
+            final CountDownLatch responseLatch = new CountDownLatch(5);
+            final Response[] responses = new Response[5];
+            for (int i = 0; i < 5; i++) {
+                final int index = i;
+                BaseRequest request = new BaseRequest(url, BaseRequest.GET);
+                // A request with different headers is not identical, so it makes its own call
+                request.addHeader("Accept", i == 2 ? "text/html" : "text/plain");
+                // Neither is a request with a different cache policy or timeout
+                if (i == 3) {
+                    request.setCachePolicy(CachePolicy.NETWORK_ONLY);
+                } else if (i == 4) {
+                    request.setTimeout(5000);
+                }
+                request.send(new ResponseListener() {
+                    @Override
+                    public void onSuccess(Response response) {
+                        responses[index] = response;
+                        responseLatch.countDown();
+                    }
+
+                    @Override
+                    public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                        responseLatch.countDown();
+                    }
+                });
+            }
+            releaseResponse.countDown();
+
+            assertTrue(responseLatch.await(2, TimeUnit.SECONDS));
+            assertSame(responses[0], responses[1]);
+            assertEquals("text/plain", responses[0].getResponseText());
+            assertEquals("text/plain", responses[1].getResponseText());
+            assertEquals("text/html", responses[2].getResponseText());
+            assertNotSame(responses[0], responses[3]);
+            assertNotSame(responses[0], responses[4]);
+            assertEquals(4, mockServer.getRequestCount());
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testPostIsOnlyRetriedWithIdempotencyKey() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setResponseCode(503));
+        mockServer.enqueue(new MockResponse().setResponseCode(503));
+        mockServer.enqueue(new MockResponse().setBody("created"));
+        mockServer.start();
+
+        try {
+            String url = mockServer.url("/orders").toString();
+            BaseRequest request = new BaseRequest(url, BaseRequest.POST, 1000, 1);
+            request.setRetryPolicy(new ExponentialBackoffRetryPolicy(0, 0));
+            assertEquals(503, sendAndWait(request, "order").getStatus());
+            assertEquals(1, mockServer.getRequestCount());
+
+            request = new BaseRequest(url, BaseRequest.POST, 1000, 1);
+            request.setRetryPolicy(new ExponentialBackoffRetryPolicy(0, 0));
+            request.addHeader(BaseRequest.IDEMPOTENCY_KEY, "order-1");
+            assertEquals("created", sendAndWait(request, "order").getResponseText());
+            assertEquals(3, mockServer.getRequestCount());
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetryWaitsForBackoffDelay() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setResponseCode(504));
+        mockServer.enqueue(new MockResponse().setBody("ok"));
+        mockServer.start();
+
+        try {
+            BaseRequest request = new BaseRequest(mockServer.url("/slow").toString(), BaseRequest.GET, 1000, 2);
+            request.setRetryPolicy(new RetryPolicy() {
+                @Override
+                public long getRetryDelay(int retryCount, Response response, Throwable error) {
+                    return 300;
+                }
+            });
+
+            long start = System.currentTimeMillis();
+            assertEquals("ok", sendAndWait(request).getResponseText());
+            assertTrue(System.currentTimeMillis() - start >= 300);
+            assertEquals(2, mockServer.getRequestCount());
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testOpenCircuitFailsFast() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setResponseCode(500));
+        mockServer.enqueue(new MockResponse().setResponseCode(500));
+        mockServer.start();
+
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setWindowSize(2);
+        config.setMinimumCalls(2);
+        BMSClient.getInstance().setCircuitBreakerConfig(config);
+        try {
+            String url = mockServer.url("/failing").toString();
+            assertEquals(500, sendAndWait(new BaseRequest(url, BaseRequest.GET)).getStatus());
+            assertEquals(500, sendAndWait(new BaseRequest(url, BaseRequest.GET)).getStatus());
+            assertEquals(CircuitBreakerState.OPEN, BMSClient.getInstance().getCircuitBreakerState(mockServer.getHostName()));
+
+            final CountDownLatch failureLatch = new CountDownLatch(1);
+            final Throwable[] error = new Throwable[1];
+            new BaseRequest(url, BaseRequest.GET).send(new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                    error[0] = t;
+                    failureLatch.countDown();
+                }
+            });
+
+            assertTrue(failureLatch.await(1, TimeUnit.SECONDS));
+            assertTrue(error[0] instanceof CircuitBreakerOpenException);
+            assertEquals(2, mockServer.getRequestCount());
+        } finally {
+            BMSClient.getInstance().setCircuitBreakerConfig(null);
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testRequestsSentOfflineDoNotOpenCircuit() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.start();
+        String url = mockServer.url("/offline").toString();
+        mockServer.shutdown();
+
+        NetworkMonitor networkMonitor = mock(NetworkMonitor.class);
+        TransferGate transferGate = new TransferGate();
+        transferGate.setNetworkMonitor(networkMonitor);
+        TransferGate.install(transferGate);
+
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setWindowSize(2);
+        config.setMinimumCalls(2);
+        BMSClient.getInstance().setCircuitBreakerConfig(config);
+        try {
+            // Neither refused connections while the device has no network, nor failed DNS lookups, count against the host
+            when(networkMonitor.isInternetAccessAvailable()).thenReturn(false);
+            for (int i = 0; i < 3; i++) {
+                assertNull(sendAndWait(new BaseRequest(url, BaseRequest.GET)));
+            }
+            assertEquals(CircuitBreakerState.CLOSED, BMSClient.getInstance().getCircuitBreakerState(mockServer.getHostName()));
+
+            Callback callback = CircuitBreaker.forHost("unknown.invalid").wrap(mock(Callback.class));
+            for (int i = 0; i < 3; i++) {
+                assertTrue(CircuitBreaker.forHost("unknown.invalid").tryAcquire());
+                callback.onFailure(mock(Call.class), new UnknownHostException("unknown.invalid"));
+            }
+            assertEquals(CircuitBreakerState.CLOSED, BMSClient.getInstance().getCircuitBreakerState("unknown.invalid"));
+
+            // Once the device is online, the host refusing connections is a failure of the host
+            when(networkMonitor.isInternetAccessAvailable()).thenReturn(true);
+            for (int i = 0; i < 2; i++) {
+                assertNull(sendAndWait(new BaseRequest(url, BaseRequest.GET)));
+            }
+            assertEquals(CircuitBreakerState.OPEN, BMSClient.getInstance().getCircuitBreakerState(mockServer.getHostName()));
+        } finally {
+            BMSClient.getInstance().setCircuitBreakerConfig(null);
+            TransferGate.disable();
+        }
+    }
+
+    private File newCacheDirectory() throws IOException {
+        return temporaryFolder.newFolder();
+    }
+
+    @Test
+    public void testConnectionIsReusedAfterListenerThrows() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setBody("first"));
+        mockServer.enqueue(new MockResponse().setBody("second"));
+        mockServer.start();
+
+        try {
+            ConnectionPool connectionPool = HttpClientManager.getInstance().getClient().connectionPool();
+            connectionPool.evictAll();
+            String url = mockServer.url("/throws").toString();
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            new BaseRequest(url, BaseRequest.POST).send("payload", new ResponseListener() {
+                @Override
+                public void onSuccess(Response response) {
+                    latch.countDown();
+                    throw new IllegalStateException("The listener failed");
+                }
+
+                @Override
+                public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                }
+            });
+            assertTrue(latch.await(2, TimeUnit.SECONDS));
+
+            // The body that the listener did not read is released even though it threw
+            long deadline = System.currentTimeMillis() + 2000;
+            while (connectionPool.idleConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, connectionPool.idleConnectionCount());
+
+            assertEquals("second", sendAndWait(new BaseRequest(url, BaseRequest.POST), "payload").getResponseText());
+            assertEquals(0, mockServer.takeRequest().getSequenceNumber());
+            assertEquals(1, mockServer.takeRequest().getSequenceNumber());
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    private Response sendAndWait(BaseRequest request) throws InterruptedException {
+        return sendAndWait(request, null);
+    }
+
+    private Response sendAndWait(BaseRequest request, String body) throws InterruptedException {
+        final CountDownLatch responseLatch = new CountDownLatch(1);
+        final Response[] result = new Response[1];
+        request.send(body, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                result[0] = response;
+                responseLatch.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                result[0] = response;
+                responseLatch.countDown();
+            }
+        });
+        assertTrue(responseLatch.await(2000, TimeUnit.MILLISECONDS));
+        return result[0];
+    }
+
+    // Serves byte ranges of the payload. The first full response can be cut off in the middle of the body.
+    static class RangeDispatcher extends Dispatcher {
+        private final byte[] payload;
+        private boolean interruptFirstResponse;
+
+        RangeDispatcher(byte[] payload, boolean interruptFirstResponse) {
+            this.payload = payload;
+            this.interruptFirstResponse = interruptFirstResponse;
+        }
+
+        @Override
+        public synchronized MockResponse dispatch(RecordedRequest request) {
+            MockResponse response = new MockResponse()
+                    .setHeader("ETag", "\"v1\"")
+                    .setHeader("Accept-Ranges", "bytes");
+
+            if (BaseRequest.HEAD.equals(request.getMethod())) {
+                return response.setHeader("Content-Length", payload.length);
+            }
+
+            String range = request.getHeader("Range");
+            if (range == null) {
+                response.setBody(new Buffer().write(payload));
+                if (interruptFirstResponse) {
+                    interruptFirstResponse = false;
+                    response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+                }
+                return response;
+            }
+
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds[1].isEmpty() ? payload.length - 1 : Integer.parseInt(bounds[1]);
+            return response.setResponseCode(206)
+                    .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + payload.length)
+                    .setBody(new Buffer().write(payload, start, end - start + 1));
+        }
+    }
+
     class DummyResponseListener implements ResponseListener {
         public void onSuccess(Response response) {
             // Do nothing
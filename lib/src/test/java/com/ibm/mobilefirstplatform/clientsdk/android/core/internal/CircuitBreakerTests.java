@@ -0,0 +1,154 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerState;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class CircuitBreakerTests {
+
+    private CircuitBreakerConfig config;
+    private List<CircuitBreakerState> transitions;
+    private CircuitBreakerListener listener;
+
+    @Before
+    public void setUp() {
+        config = new CircuitBreakerConfig();
+        config.setWindowSize(4);
+        config.setMinimumCalls(4);
+        config.setOpenDuration(50);
+        config.setHalfOpenCalls(2);
+        config.setSlowCallDuration(1000);
+
+        transitions = new ArrayList<>();
+        listener = new CircuitBreakerListener() {
+            @Override
+            public void onStateChange(String host, CircuitBreakerState previousState, CircuitBreakerState newState) {
+                transitions.add(newState);
+            }
+        };
+        CircuitBreaker.addListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        CircuitBreaker.removeListener(listener);
+        CircuitBreaker.setConfig(null);
+    }
+
+    @Test
+    public void testOpensAtFailureRateAndRecovers() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("a", config);
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.record(i == 0, 10);
+        }
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+
+        // Two failures out of the four requests in the window reach the default rate of 0.5
+        assertTrue(breaker.tryAcquire());
+        breaker.record(true, 10);
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+
+        Thread.sleep(60);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.record(false, 10);
+        breaker.record(false, 10);
+
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+        assertEquals(Arrays.asList(CircuitBreakerState.OPEN, CircuitBreakerState.HALF_OPEN, CircuitBreakerState.CLOSED), transitions);
+    }
+
+    @Test
+    public void testCancelledCallsAreNotFailuresUnlessTheirDeadlinePassed() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("a", config);
+        Callback callback = breaker.wrap(mock(Callback.class));
+        Call cancelledCall = mock(Call.class);
+        when(cancelledCall.isCanceled()).thenReturn(true);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire());
+            callback.onFailure(cancelledCall, new IOException("Canceled"));
+        }
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire());
+            callback.onFailure(cancelledCall, new CallDeadline.DeadlineExceededException("Call did not complete"));
+        }
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+
+        // A cancelled trial gives its place back, so the half-open state can still close
+        Thread.sleep(60);
+        assertTrue(breaker.tryAcquire());
+        callback.onFailure(cancelledCall, new IOException("Canceled"));
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.record(false, 10);
+        breaker.record(false, 10);
+        assertEquals(CircuitBreakerState.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testSlowTrialOpensAgain() throws Exception {
+        config.setSlowCallRateThreshold(0.75f);
+        CircuitBreaker breaker = new CircuitBreaker("a", config);
+
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire();
+            breaker.record(false, i == 0 ? 10 : 2000);
+        }
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+
+        Thread.sleep(60);
+        assertTrue(breaker.tryAcquire());
+        breaker.record(false, 2000);
+        assertEquals(CircuitBreakerState.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testBreakersArePerHostAndOnlyWhenConfigured() {
+        assertNull(CircuitBreaker.forHost("a"));
+
+        CircuitBreaker.setConfig(config);
+        assertSame(CircuitBreaker.forHost("a"), CircuitBreaker.forHost("a"));
+        assertFalse(CircuitBreaker.forHost("a") == CircuitBreaker.forHost("b"));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.AuthorizationRequest;
+
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+public class HttpClientManagerTests {
+
+    @Test
+    public void testSharedClientIsReused() {
+        HttpClientManager manager = HttpClientManager.getInstance();
+
+        assertSame(manager.getClient(), manager.getClient());
+        assertSame(manager.getClient(), manager.getClient(BaseRequest.DEFAULT_TIMEOUT));
+    }
+
+    @Test
+    public void testDerivedClientSharesConnectionPool() {
+        HttpClientManager manager = HttpClientManager.getInstance();
+        OkHttpClient sharedClient = manager.getClient();
+        OkHttpClient derivedClient = manager.getClient(1000);
+
+        assertNotSame(sharedClient, derivedClient);
+        assertSame(derivedClient, manager.getClient(1000));
+        assertSame(sharedClient.connectionPool(), derivedClient.connectionPool());
+        assertSame(sharedClient.dispatcher(), derivedClient.dispatcher());
+        assertEquals(1000, derivedClient.readTimeoutMillis());
+    }
+
+    @Test
+    public void testClientIsRebuiltWhenInterceptorsChange() {
+        HttpClientManager manager = HttpClientManager.getInstance();
+        OkHttpClient clientBefore = manager.getClient();
+
+        Interceptor interceptor = new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                return chain.proceed(chain.request());
+            }
+        };
+
+        BaseRequest.registerInterceptor(interceptor);
+        OkHttpClient clientWithInterceptor = manager.getClient();
+        assertNotSame(clientBefore, clientWithInterceptor);
+        assertTrue(clientWithInterceptor.networkInterceptors().contains(interceptor));
+        assertSame(clientBefore.connectionPool(), clientWithInterceptor.connectionPool());
+
+        BaseRequest.unregisterInterceptor(interceptor);
+        assertTrue(!manager.getClient().networkInterceptors().contains(interceptor));
+    }
+
+    @Test
+    public void testAuthorizationClientHasItsOwnPoolAndDispatcher() {
+        HttpClientManager manager = HttpClientManager.getInstance();
+        OkHttpClient sharedClient = manager.getClient();
+        int timeout = BaseRequest.DEFAULT_TIMEOUT;
+        OkHttpClient authorizationClient = manager.getAuthorizationClient(timeout, timeout, timeout);
+
+        assertSame(authorizationClient, manager.getAuthorizationClient(timeout, timeout, timeout));
+        assertNotSame(sharedClient.connectionPool(), authorizationClient.connectionPool());
+        assertNotSame(sharedClient.dispatcher(), authorizationClient.dispatcher());
+        assertFalse(authorizationClient.followRedirects());
+        assertNull(authorizationClient.cache());
+
+        OkHttpClient derivedClient = manager.getAuthorizationClient(1000, 1000, 1000);
+        assertNotSame(manager.getClient(1000), derivedClient);
+        assertSame(authorizationClient.connectionPool(), derivedClient.connectionPool());
+        assertSame(authorizationClient.dispatcher(), derivedClient.dispatcher());
+    }
+
+    @Test
+    public void testAuthorizationRequestIsNotQueuedBehindAppRequests() throws Exception {
+        final CountDownLatch releaseAppRequest = new CountDownLatch(1);
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (request.getPath().equals("/app")) {
+                    releaseAppRequest.await(5, TimeUnit.SECONDS);
+                    return new MockResponse().setBody("app");
+                }
+                return new MockResponse().setResponseCode(302).setHeader("Location", "/redirected");
+            }
+        });
+        mockServer.start();
+
+        RequestScheduler scheduler = RequestScheduler.getInstance();
+        int maxRequests = scheduler.getMaxRequests();
+        scheduler.setMaxRequests(1);
+        try {
+            new BaseRequest(mockServer.url("/app").toString(), BaseRequest.GET).send(null);
+
+            final CountDownLatch authorizationLatch = new CountDownLatch(1);
+            final int[] status = new int[1];
+            new AuthorizationRequest(mockServer.url("/authorization").toString(), BaseRequest.GET).send(new ResponseListener() {
+                @Override
+                public void onSuccess(com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response response) {
+                    status[0] = response.getStatus();
+                    authorizationLatch.countDown();
+                }
+
+                @Override
+                public void onFailure(com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response response, Throwable t, JSONObject extendedInfo) {
+                    authorizationLatch.countDown();
+                }
+            });
+
+            // The app request holds the only slot of the scheduler, and the redirect is left for the authorization flow
+            assertTrue(authorizationLatch.await(2, TimeUnit.SECONDS));
+            assertEquals(302, status[0]);
+            assertEquals(1, scheduler.getRunningCount());
+        } finally {
+            releaseAppRequest.countDown();
+            scheduler.setMaxRequests(maxRequests);
+            mockServer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+
+public class InFlightRequestsTests {
+
+    @Test
+    public void testJoinedListenersReceiveTheSameResponse() {
+        ResponseListener first = mock(ResponseListener.class);
+        ResponseListener second = mock(ResponseListener.class);
+        Response response = mock(Response.class);
+
+        ResponseListener shared = InFlightRequests.join("GET http://a/joined", first);
+        assertNotNull(shared);
+        assertNull(InFlightRequests.join("GET http://a/joined", second));
+
+        shared.onSuccess(response);
+
+        // The body is read once so that both listeners can read it
+        verify(response).getResponseBytes();
+        verify(first).onSuccess(response);
+        verify(second).onSuccess(response);
+    }
+
+    @Test
+    public void testThrowingListenerDoesNotStopTheOthers() {
+        ResponseListener first = mock(ResponseListener.class);
+        ResponseListener second = mock(ResponseListener.class);
+        Response response = mock(Response.class);
+        IOException error = new IOException();
+        doThrow(new IllegalStateException()).when(first).onSuccess(response);
+        doThrow(new IllegalStateException()).when(first).onFailure(response, error, null);
+
+        ResponseListener shared = InFlightRequests.join("GET http://a/throwing", first);
+        InFlightRequests.join("GET http://a/throwing", second);
+        shared.onSuccess(response);
+        verify(second).onSuccess(response);
+
+        shared = InFlightRequests.join("GET http://a/throwing", first);
+        InFlightRequests.join("GET http://a/throwing", second);
+        shared.onFailure(response, error, null);
+        verify(second).onFailure(response, error, null);
+    }
+
+    @Test
+    public void testCompletedCallCannotBeJoined() {
+        ResponseListener first = mock(ResponseListener.class);
+        ResponseListener second = mock(ResponseListener.class);
+        IOException error = new IOException();
+
+        InFlightRequests.join("GET http://a/completed", first).onFailure(null, error, null);
+        ResponseListener shared = InFlightRequests.join("GET http://a/completed", second);
+
+        assertNotNull(shared);
+        verify(first).onFailure(null, error, null);
+        verify(second, never()).onFailure(null, error, null);
+    }
+
+    @Test
+    public void testSingleListenerDoesNotReadBody() {
+        Response response = mock(Response.class);
+
+        InFlightRequests.join("GET http://a/single", mock(ResponseListener.class)).onSuccess(response);
+
+        verify(response, never()).getResponseBytes();
+    }
+}
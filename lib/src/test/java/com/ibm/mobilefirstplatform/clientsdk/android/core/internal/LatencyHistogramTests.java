@@ -0,0 +1,90 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+
+public class LatencyHistogramTests {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        for (long value = 0; value < 100000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.highestValueOf(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.highestValueOf(bucket - 1));
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 10);
+        }
+
+        long[] percentiles = histogram.getPercentiles(50, 95, 99, 100);
+        assertWithinBucket(500, percentiles[0]);
+        assertWithinBucket(950, percentiles[1]);
+        assertWithinBucket(990, percentiles[2]);
+        assertEquals(1000, percentiles[3]);
+        assertEquals(100, histogram.getCount());
+        assertEquals(50500, histogram.getSum());
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        long[] percentiles = new LatencyHistogram().getPercentiles(50, 99);
+        assertEquals(0, percentiles[0]);
+        assertEquals(0, percentiles[1]);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i % 200);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        long total = 0;
+        for (long count : histogram.getBuckets()) {
+            total += count;
+        }
+        assertEquals(80000, total);
+        assertEquals(80000, histogram.getCount());
+        assertEquals(199, histogram.getMax());
+    }
+
+    // Buckets are at most 12.5% wide, and a percentile reports the highest value of its bucket
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue("Expected about " + expected + " but was " + actual, actual >= expected && actual <= expected * 1.125);
+    }
+}
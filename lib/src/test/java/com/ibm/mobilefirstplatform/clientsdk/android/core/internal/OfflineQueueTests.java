@@ -0,0 +1,266 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerConfig;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.CircuitBreakerState;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.security.api.AuthorizationManager;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+
+public class OfflineQueueTests {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        BMSClient.getInstance().setAuthorizationManager(mock(AuthorizationManager.class));
+        directory = File.createTempFile("queue", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        BMSClient.getInstance().setAuthorizationManager(null);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testOnlyConnectivityErrorsAreQueued() {
+        assertTrue(OfflineQueue.isConnectivityError(new ConnectException()));
+        assertFalse(OfflineQueue.isConnectivityError(new SocketTimeoutException()));
+    }
+
+    @Test
+    public void testReplaysInOrderAndDeduplicates() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setBody("first"));
+        mockServer.enqueue(new MockResponse().setBody("second"));
+        mockServer.start();
+
+        try {
+            OfflineQueue queue = new OfflineQueue(null, directory);
+            String url = mockServer.url("/items").toString();
+            final CountDownLatch replayed = new CountDownLatch(2);
+            final String[] responses = new String[2];
+
+            assertTrue(queue.enqueue(newPost(url, "one", "Bearer old"), 1000, null, newListener(responses, 0, replayed)));
+            assertTrue(queue.enqueue(newPost(url, "two", null), 1000, "item-2", null));
+            assertTrue(queue.enqueue(newPost(url, "three", null), 1000, "item-2", newListener(responses, 1, replayed)));
+            assertEquals(2, queue.size());
+
+            queue.replay();
+            assertTrue(replayed.await(2, TimeUnit.SECONDS));
+
+            RecordedRequest first = mockServer.takeRequest();
+            assertEquals("POST", first.getMethod());
+            assertEquals("one", first.getBody().readUtf8());
+            assertEquals("text/plain; charset=utf-8", first.getHeader("Content-Type"));
+            assertEquals("value", first.getHeader("X-Custom"));
+            assertNull(first.getHeader("Authorization"));
+            assertEquals("three", mockServer.takeRequest().getBody().readUtf8());
+
+            assertEquals("first", responses[0]);
+            assertEquals("second", responses[1]);
+            assertEquals(0, queue.size());
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testRequestsAreKeptWhileOffline() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.start();
+        String url = mockServer.url("/items").toString();
+        mockServer.shutdown();
+
+        OfflineQueue queue = new OfflineQueue(null, directory);
+        queue.enqueue(newPost(url, "one", null), 1000, null, null);
+        queue.enqueue(newPost(url, "two", null), 1000, null, null);
+
+        queue.replay();
+        Thread.sleep(500);
+
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testExpiredRequestsAreDiscarded() throws Exception {
+        OfflineQueue queue = new OfflineQueue(null, directory);
+        queue.setMaxAge(-1);
+        final CountDownLatch discarded = new CountDownLatch(1);
+
+        queue.enqueue(newPost("http://localhost/items", "one", null), 1000, null, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                discarded.countDown();
+            }
+        });
+        queue.replay();
+
+        assertTrue(discarded.await(1, TimeUnit.SECONDS));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testListenersAreReleasedAtMaxAgeWhileOffline() throws Exception {
+        OfflineQueue queue = new OfflineQueue(null, directory);
+        queue.setMaxAge(100);
+        final CountDownLatch released = new CountDownLatch(1);
+
+        queue.enqueue(newPost("http://localhost/items", "one", null), 1000, null, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                released.countDown();
+            }
+        });
+
+        // The request stays stored until the next replay discards it, but its listener is not held until then
+        assertTrue(released.await(1, TimeUnit.SECONDS));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void testRequestsThatMayHaveBeenProcessedAreOnlyKeptWhenSafeToResend() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        mockServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        mockServer.start();
+
+        try {
+            OfflineQueue queue = new OfflineQueue(null, directory);
+            String url = mockServer.url("/items").toString();
+            final CountDownLatch postFailed = new CountDownLatch(1);
+            final CountDownLatch putFailed = new CountDownLatch(1);
+
+            queue.enqueue(newPost(url, "one", null), 300, null, newListener(new String[1], 0, postFailed));
+            queue.enqueue(newPost(url, "two", null).newBuilder().put(RequestBody.create(null, "two")).build(),
+                    300, null, newListener(new String[1], 0, putFailed));
+
+            // The server may have processed the POST before timing out, so it is not sent again
+            queue.replay();
+            assertTrue(postFailed.await(2, TimeUnit.SECONDS));
+
+            // Sending the PUT again does no harm, so it is kept for the next replay
+            Thread.sleep(500);
+            assertEquals(2, mockServer.getRequestCount());
+            assertEquals(1, putFailed.getCount());
+            assertEquals(1, queue.size());
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testReplayContinuesAfterCircuitBreakerOpenDuration() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setBody("created"));
+        mockServer.start();
+
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setWindowSize(1);
+        config.setMinimumCalls(1);
+        config.setOpenDuration(300);
+        BMSClient.getInstance().setCircuitBreakerConfig(config);
+        try {
+            CircuitBreaker circuitBreaker = CircuitBreaker.forHost(mockServer.getHostName());
+            circuitBreaker.tryAcquire();
+            circuitBreaker.record(true, 0);
+            assertEquals(CircuitBreakerState.OPEN, circuitBreaker.getState());
+
+            OfflineQueue queue = new OfflineQueue(null, directory);
+            final CountDownLatch replayed = new CountDownLatch(1);
+            final String[] responses = new String[1];
+            queue.enqueue(newPost(mockServer.url("/items").toString(), "one", null), 1000, null, newListener(responses, 0, replayed));
+
+            // The device is already online, so the replay is tried again without waiting for a connection change
+            queue.replay();
+            assertTrue(replayed.await(2, TimeUnit.SECONDS));
+            assertEquals("created", responses[0]);
+            assertEquals(0, queue.size());
+        } finally {
+            BMSClient.getInstance().setCircuitBreakerConfig(null);
+            mockServer.shutdown();
+        }
+    }
+
+    private Request newPost(String url, String body, String authorization) {
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("X-Custom", "value")
+                .post(RequestBody.create(MediaType.parse("text/plain; charset=utf-8"), body));
+        if (authorization != null) {
+            builder.header("Authorization", authorization);
+        }
+        return builder.build();
+    }
+
+    private ResponseListener newListener(final String[] responses, final int index, final CountDownLatch latch) {
+        return new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                responses[index] = response.getResponseText();
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                latch.countDown();
+            }
+        };
+    }
+}
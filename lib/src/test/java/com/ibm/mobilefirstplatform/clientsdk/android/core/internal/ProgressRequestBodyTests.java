@@ -28,6 +28,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -111,7 +112,7 @@ public class ProgressRequestBodyTests {
             fail("Failed to get the length of the test payload");
         }
 
-        int numberOfOnProgressCalls = testPayload.length / ProgressRequestBody.SEGMENT_SIZE + 1;
+        int numberOfOnProgressCalls = (int)(testPayload.length / ProgressRequestBody.PROGRESS_INTERVAL_BYTES) + 1;
         latch = new CountDownLatch(numberOfOnProgressCalls);
 
         ProgressListener listener = new ProgressListener() {
@@ -150,7 +151,7 @@ public class ProgressRequestBodyTests {
             fail("Failed to get the length of the test payload");
         }
 
-        // If the upload size is very small (smaller than the ProgressRequestBody.SEGMENT_SIZE),
+        // If the upload size is very small (smaller than the ProgressRequestBody.PROGRESS_INTERVAL_BYTES),
         // then onProgress() should only be called once.
         int numberOfOnProgressCalls = 1;
         latch = new CountDownLatch(numberOfOnProgressCalls);
@@ -178,6 +179,36 @@ public class ProgressRequestBodyTests {
         assertTrue(latch.await(100, TimeUnit.MILLISECONDS));
     }
 
+    @Test
+    public void testWriteToWithFile() throws Exception {
+        final byte[] testPayload = new byte[300000];
+        new Random().nextBytes(testPayload);
+
+        File file = temporaryFolder.newFile("upload.bin");
+        BufferedSink fileSink = Okio.buffer(Okio.sink(file));
+        fileSink.write(testPayload);
+        fileSink.close();
+
+        final long[] lastProgress = new long[2];
+        ProgressListener listener = new ProgressListener() {
+            @Override
+            public void onProgress(long bytesSoFar, long totalBytesExpected) {
+                lastProgress[0] = bytesSoFar;
+                lastProgress[1] = totalBytesExpected;
+            }
+        };
+
+        RequestBody fileBody = RequestBody.create(MediaType.parse("application/octet-stream"), file);
+        ProgressRequestBody progressRequestBody = new ProgressRequestBody(file, fileBody, listener);
+
+        Buffer sink = new Buffer();
+        progressRequestBody.writeTo(sink);
+
+        assertTrue(Arrays.equals(testPayload, sink.readByteArray()));
+        assertEquals(testPayload.length, lastProgress[0]);
+        assertEquals(testPayload.length, lastProgress[1]);
+    }
+
     @Test
     public void testWriteToWithNullSource() throws Exception {
         ProgressListener listener = new ProgressListener() {
@@ -0,0 +1,155 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.MetricsExporter;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestMetricsSnapshot;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+
+public class RequestMetricsRegistryTests {
+
+    @Test
+    public void testEndpointReplacesIdentifiers() {
+        assertEquals("GET /users/{id}/orders/{id}", RequestMetricsRegistry.endpointOf("GET",
+                HttpUrl.parse("https://host/users/42/orders/123e4567-e89b-12d3-a456-426655440000?page=2")));
+        assertEquals("POST /v1/cafe/{id}", RequestMetricsRegistry.endpointOf("POST",
+                HttpUrl.parse("https://host/v1/cafe/0123456789abcdef0123")));
+        assertEquals("GET /", RequestMetricsRegistry.endpointOf("GET", HttpUrl.parse("https://host")));
+    }
+
+    @Test
+    public void testSnapshotsOfHostAndEndpoints() {
+        RequestMetricsRegistry registry = new RequestMetricsRegistry();
+        registry.record("host", "GET /a", 100, false, 0, 1000);
+        registry.record("host", "GET /a", 300, true, 0, 1000);
+        registry.record("host", "POST /b", 50, false, 200, 10);
+
+        List<RequestMetricsSnapshot> snapshots = registry.snapshot();
+        assertEquals(3, snapshots.size());
+
+        RequestMetricsSnapshot host = snapshots.get(0);
+        assertEquals("host", host.getHost());
+        assertNull(host.getEndpoint());
+        assertEquals(3, host.getRequestCount());
+        assertEquals(1, host.getErrorCount());
+        assertEquals(200, host.getBytesSent());
+        assertEquals(2010, host.getBytesReceived());
+        assertEquals(300, host.getMaxLatency());
+        assertEquals(150, host.getMeanLatency());
+
+        RequestMetricsSnapshot endpoint = find(snapshots, "GET /a");
+        assertEquals(2, endpoint.getRequestCount());
+        assertEquals(0.5, endpoint.getErrorRate());
+        assertEquals(300, endpoint.getLatencyP99());
+
+        registry.reset();
+        assertTrue(registry.snapshot().isEmpty());
+    }
+
+    @Test
+    public void testEndpointsPerHostAreCapped() {
+        RequestMetricsRegistry registry = new RequestMetricsRegistry();
+        for (int i = 0; i < RequestMetricsRegistry.MAX_ENDPOINTS_PER_HOST + 10; i++) {
+            registry.record("host", "GET /" + i, 1, false, 0, 0);
+        }
+
+        List<RequestMetricsSnapshot> snapshots = registry.snapshot();
+        assertEquals(RequestMetricsRegistry.MAX_ENDPOINTS_PER_HOST + 1, snapshots.size());
+        assertEquals(RequestMetricsRegistry.MAX_ENDPOINTS_PER_HOST + 10, snapshots.get(0).getRequestCount());
+    }
+
+    @Test
+    public void testRequestsAreRecordedAndExported() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setBody("ok"));
+        mockServer.enqueue(new MockResponse().setResponseCode(503));
+        mockServer.start();
+
+        RequestMetricsRegistry registry = RequestMetricsRegistry.getInstance();
+        final BlockingQueue<List<RequestMetricsSnapshot>> exported = new ArrayBlockingQueue<>(10);
+        registry.setEnabled(true);
+        registry.reset();
+        try {
+            send(new BaseRequest(mockServer.url("/items/1").toString(), BaseRequest.GET));
+            send(new BaseRequest(mockServer.url("/items/2").toString(), BaseRequest.GET, BaseRequest.DEFAULT_TIMEOUT, 0));
+
+            registry.setExporter(new MetricsExporter() {
+                @Override
+                public void export(List<RequestMetricsSnapshot> snapshots) {
+                    exported.add(snapshots);
+                }
+            }, 50);
+
+            List<RequestMetricsSnapshot> snapshots = exported.poll(2, TimeUnit.SECONDS);
+            assertNotNull(snapshots);
+            RequestMetricsSnapshot endpoint = find(snapshots, "GET /items/{id}");
+            assertEquals(mockServer.getHostName(), endpoint.getHost());
+            assertEquals(2, endpoint.getRequestCount());
+            assertEquals(1, endpoint.getErrorCount());
+            assertEquals(2, endpoint.getBytesReceived());
+        } finally {
+            registry.setExporter(null, 0);
+            registry.setEnabled(false);
+            registry.reset();
+            mockServer.shutdown();
+        }
+    }
+
+    private static RequestMetricsSnapshot find(List<RequestMetricsSnapshot> snapshots, String endpoint) {
+        for (RequestMetricsSnapshot snapshot : snapshots) {
+            if (endpoint.equals(snapshot.getEndpoint())) {
+                return snapshot;
+            }
+        }
+        throw new AssertionError("No metrics for " + endpoint);
+    }
+
+    // Waits for the call to end, which is when it is recorded
+    private static void send(BaseRequest request) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        request.send(new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                response.getResponseText();
+                done.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestPriority;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class RequestSchedulerTests {
+
+    private RequestScheduler scheduler;
+    private List<String> started;
+    private List<Callback> callbacks;
+
+    @Before
+    public void setUp() {
+        scheduler = new RequestScheduler();
+        started = new ArrayList<>();
+        callbacks = new ArrayList<>();
+    }
+
+    @Test
+    public void testPerHostLimitDoesNotBlockOtherHosts() throws Exception {
+        scheduler.setMaxRequestsPerHost(1);
+
+        scheduler.enqueue(newCall("http://a/1"), mock(Callback.class), RequestPriority.NORMAL, 0);
+        scheduler.enqueue(newCall("http://a/2"), mock(Callback.class), RequestPriority.NORMAL, 0);
+        scheduler.enqueue(newCall("http://b/1"), mock(Callback.class), RequestPriority.NORMAL, 0);
+
+        assertEquals(Arrays.asList("/1", "/1"), started);
+        assertEquals(1, scheduler.getQueuedCount(RequestPriority.NORMAL));
+        assertEquals(2, scheduler.getRunningCount());
+
+        callbacks.get(0).onFailure(null, new IOException());
+
+        assertEquals(Arrays.asList("/1", "/1", "/2"), started);
+        assertEquals(0, scheduler.getQueuedCount(RequestPriority.NORMAL));
+        assertEquals(2, scheduler.getRunningCount());
+    }
+
+    @Test
+    public void testPrioritiesTakeWeightedTurns() throws Exception {
+        scheduler.setMaxRequests(1);
+
+        scheduler.enqueue(newCall("http://a/blocker"), mock(Callback.class), RequestPriority.NORMAL, 0);
+        for (int i = 0; i < 3; i++) {
+            scheduler.enqueue(newCall("http://a/background"), mock(Callback.class), RequestPriority.BACKGROUND, 0);
+        }
+        for (int i = 0; i < 6; i++) {
+            scheduler.enqueue(newCall("http://a/interactive"), mock(Callback.class), RequestPriority.INTERACTIVE, 0);
+        }
+        assertEquals(6, scheduler.getQueuedCount(RequestPriority.INTERACTIVE));
+        assertEquals(3, scheduler.getQueuedCount(RequestPriority.BACKGROUND));
+
+        // Each finished call lets the next one start
+        for (int i = 0; i < 9; i++) {
+            callbacks.get(i).onFailure(null, new IOException());
+        }
+
+        // The blocker used the first normal turn, so background gets a turn before the interactive queue comes back
+        assertEquals(Arrays.asList("/blocker", "/background",
+                "/interactive", "/interactive", "/interactive", "/interactive",
+                "/background",
+                "/interactive", "/interactive",
+                "/background"), started);
+    }
+
+    private Call newCall(String url) {
+        final Request request = new Request.Builder().url(url).build();
+        Call call = mock(Call.class);
+        when(call.request()).thenReturn(request);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                started.add(request.url().encodedPath());
+                callbacks.add((Callback)invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(call).enqueue(any(Callback.class));
+        return call;
+    }
+}
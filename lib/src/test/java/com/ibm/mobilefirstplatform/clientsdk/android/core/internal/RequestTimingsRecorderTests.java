@@ -0,0 +1,145 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.BMSClient;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimings;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.RequestTimingsListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+
+public class RequestTimingsRecorderTests {
+
+    @Test
+    public void testTimingsAreAttachedToResponse() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.enqueue(new MockResponse().setBody("first"));
+        mockServer.enqueue(new MockResponse().setBody("second response"));
+        mockServer.start();
+
+        try {
+            String url = mockServer.url("/timed").toString();
+
+            RequestTimings first = ((ResponseImpl)send(new BaseRequest(url, BaseRequest.POST), "request body")).getTimings();
+            assertNotNull(first);
+            assertEquals("POST", first.getMethod());
+            assertEquals(url, first.getUrl());
+            assertFalse(first.isConnectionReused());
+            assertTrue(first.getConnectDuration() >= 0);
+            assertEquals(-1, first.getSecureConnectDuration());
+            assertTrue(first.getRequestDuration() >= 0);
+            assertTrue(first.getTimeToFirstByte() >= 0);
+            assertTrue(first.getResponseDuration() >= 0);
+            assertTrue(first.getTotalDuration() >= first.getTimeToFirstByte());
+            assertEquals("request body".length(), first.getBytesSent());
+            assertEquals("first".length(), first.getBytesReceived());
+            assertFalse(first.isFailed());
+
+            RequestTimings second = ((ResponseImpl)send(new BaseRequest(url, BaseRequest.GET), null)).getTimings();
+            assertTrue(second.isConnectionReused());
+            assertEquals(-1, second.getDnsDuration());
+            assertEquals(-1, second.getConnectDuration());
+            assertEquals("second response".length(), second.getBytesReceived());
+        } finally {
+            mockServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testListenersAreNotifiedOfFailures() throws Exception {
+        MockWebServer mockServer = new MockWebServer();
+        mockServer.start();
+        String url = mockServer.url("/unreachable").toString();
+        mockServer.shutdown();
+
+        final BlockingQueue<RequestTimings> reported = new ArrayBlockingQueue<>(10);
+        RequestTimingsListener listener = new RequestTimingsListener() {
+            @Override
+            public void onRequestTimings(RequestTimings timings) {
+                reported.add(timings);
+            }
+        };
+
+        BMSClient.getInstance().addRequestTimingsListener(listener);
+        try {
+            BaseRequest request = new BaseRequest(url, BaseRequest.GET, BaseRequest.DEFAULT_TIMEOUT, 0);
+            assertNotNull(sendForFailure(request));
+
+            RequestTimings timings = reported.poll(2, TimeUnit.SECONDS);
+            assertNotNull(timings);
+            assertEquals(url, timings.getUrl());
+            assertTrue(timings.isFailed());
+            assertEquals(-1, timings.getTimeToFirstByte());
+        } finally {
+            BMSClient.getInstance().removeRequestTimingsListener(listener);
+        }
+    }
+
+    private Response send(BaseRequest request, String body) throws InterruptedException {
+        final BlockingQueue<Object> result = new ArrayBlockingQueue<>(1);
+        ResponseListener listener = new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                response.getResponseText();
+                result.add(response);
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                result.add(t != null ? t : response);
+            }
+        };
+
+        if (body != null) {
+            request.send(body, listener);
+        } else {
+            request.send(listener);
+        }
+
+        Object response = result.poll(2, TimeUnit.SECONDS);
+        assertTrue(String.valueOf(response), response instanceof ResponseImpl);
+        return (Response)response;
+    }
+
+    private Throwable sendForFailure(BaseRequest request) throws InterruptedException {
+        final BlockingQueue<Throwable> result = new ArrayBlockingQueue<>(1);
+        request.send(new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                result.add(t);
+            }
+        });
+        return result.poll(2, TimeUnit.SECONDS);
+    }
+}
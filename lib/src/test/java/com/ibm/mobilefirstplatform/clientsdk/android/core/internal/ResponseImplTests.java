@@ -13,9 +13,11 @@
 
 package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
 
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseConverter;
 
 import okhttp3.Headers;
 import okhttp3.MediaType;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
@@ -28,6 +30,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -38,9 +41,13 @@ import java.util.Set;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 
@@ -279,6 +286,128 @@ public class ResponseImplTests {
         assertTrue(Arrays.equals(expectedBytes, response.getResponseBytes()));
     }
 
+    @Test
+    public void testBodyIsNotReadUntilRequested() throws IOException {
+        ResponseBody mockedResponseBody = mock(ResponseBody.class);
+        when(mockedOkHttpResponse.body()).thenReturn(mockedResponseBody);
+
+        ResponseImpl response = new ResponseImpl(mockedOkHttpResponse);
+
+        verify(mockedResponseBody, never()).byteStream();
+        verify(mockedResponseBody, never()).bytes();
+    }
+
+    @Test
+    public void testBodyIsReadOnceAndTextIsMemoized() throws IOException {
+        ResponseBody mockedResponseBody = mock(ResponseBody.class);
+        when(mockedResponseBody.byteStream()).thenReturn(IOUtils.toInputStream("{\"key\":\"value\"}", "UTF-8"));
+        when(mockedOkHttpResponse.body()).thenReturn(mockedResponseBody);
+
+        ResponseImpl response = new ResponseImpl(mockedOkHttpResponse);
+
+        String text = response.getResponseText();
+        assertSame(text, response.getResponseText());
+        assertSame(response.getResponseJSON(), response.getResponseJSON());
+        assertEquals("value", response.getResponseJSON().optString("key"));
+        assertEquals(text, new String(response.getResponseBytes(), "UTF-8"));
+        verify(mockedResponseBody, times(1)).byteStream();
+    }
+
+    @Test
+    public void testGetResponseByteStreamIsUnconsumed() throws IOException {
+        Response okHttpResponse = new Response.Builder()
+                .request(new Request.Builder().url("http://localhost").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.parse("text/plain"), "Test bytes"))
+                .build();
+
+        ResponseImpl response = new ResponseImpl(okHttpResponse);
+        InputStream stream = response.getResponseByteStream();
+
+        assertEquals("Test bytes", IOUtils.toString(stream, "UTF-8"));
+        assertSame(stream, response.getResponseByteStream());
+    }
+
+    @Test
+    public void testReleaseBuffersUnreadBody() throws IOException {
+        Response okHttpResponse = new Response.Builder()
+                .request(new Request.Builder().url("http://localhost").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.parse("text/plain"), "Test bytes"))
+                .build();
+
+        ResponseImpl response = new ResponseImpl(okHttpResponse);
+        response.release();
+
+        assertEquals("Test bytes", response.getResponseText());
+        assertEquals("Test bytes", IOUtils.toString(response.getResponseByteStream(), "UTF-8"));
+    }
+
+    @Test
+    public void testGetResponseAsReadsBodyDirectly() throws IOException {
+        ResponseBody mockedResponseBody = mock(ResponseBody.class);
+        when(mockedResponseBody.contentType()).thenReturn(MediaType.parse("text/plain; charset=UTF-16"));
+        when(mockedResponseBody.byteStream()).thenReturn(IOUtils.toInputStream("Test text", "UTF-16"));
+        when(mockedOkHttpResponse.body()).thenReturn(mockedResponseBody);
+
+        ResponseImpl response = new ResponseImpl(mockedOkHttpResponse);
+
+        assertEquals("Test text", response.getResponseAs(new TextConverter()));
+        verify(mockedResponseBody, never()).bytes();
+        verify(mockedResponseBody).close();
+        assertNull(response.getResponseBytes());
+    }
+
+    @Test
+    public void testGetResponseAsAfterBodyWasRead() throws IOException {
+        Response okHttpResponse = new Response.Builder()
+                .request(new Request.Builder().url("http://localhost").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.parse("text/plain"), "Test bytes"))
+                .build();
+
+        ResponseImpl response = new ResponseImpl(okHttpResponse);
+
+        assertEquals("Test bytes", response.getResponseText());
+        assertEquals("Test bytes", response.getResponseAs(new TextConverter()));
+        assertEquals("Test bytes", response.getResponseAs(new TextConverter()));
+    }
+
+    @Test
+    public void testGetResponseAsWithoutBody() throws IOException {
+        ResponseImpl response = new ResponseImpl(null);
+
+        assertNull(response.getResponseAs(new TextConverter()));
+    }
+
+    @Test
+    public void testGetResponseAsClosesBodyWhenConversionFails() throws IOException {
+        ResponseBody mockedResponseBody = mock(ResponseBody.class);
+        when(mockedResponseBody.byteStream()).thenReturn(IOUtils.toInputStream("Test text", "UTF-8"));
+        when(mockedOkHttpResponse.body()).thenReturn(mockedResponseBody);
+
+        ResponseImpl response = new ResponseImpl(mockedOkHttpResponse);
+
+        try {
+            response.getResponseAs(new ResponseConverter<Object>() {
+                @Override
+                public Object convert(InputStream body, Charset charset) throws IOException {
+                    throw new IOException("Unexpected body");
+                }
+            });
+            fail("The IOException of the converter was expected");
+        } catch (IOException e) {
+            assertEquals("Unexpected body", e.getMessage());
+        }
+        verify(mockedResponseBody).close();
+    }
+
     @Test
     public void testSetResponseBytes() {
         ResponseImpl response = new ResponseImpl(mockedOkHttpResponse);
@@ -410,4 +539,11 @@ public class ResponseImplTests {
 
         assertNull(response.getResponseHeadersNames());
     }
+
+    private static class TextConverter implements ResponseConverter<String> {
+        @Override
+        public String convert(InputStream body, Charset charset) throws IOException {
+            return IOUtils.toString(body, charset);
+        }
+    }
 }
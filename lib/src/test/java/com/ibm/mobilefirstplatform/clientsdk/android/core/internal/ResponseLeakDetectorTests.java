@@ -0,0 +1,95 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+
+public class ResponseLeakDetectorTests {
+
+    private MockWebServer mockServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mockServer = new MockWebServer();
+        mockServer.start();
+        ResponseLeakDetector.getInstance().setEnabled(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ResponseLeakDetector.getInstance().setEnabled(false);
+        mockServer.shutdown();
+    }
+
+    @Test
+    public void testClosedAndExhaustedBodiesAreNotTracked() throws Exception {
+        mockServer.enqueue(new MockResponse().setBody("closed"));
+        mockServer.enqueue(new MockResponse().setBody("read"));
+        OkHttpClient client = HttpClientManager.getInstance().getClient();
+
+        Response closed = client.newCall(new Request.Builder().url(mockServer.url("/closed")).build()).execute();
+        assertEquals(1, ResponseLeakDetector.getInstance().getTrackedCount());
+        closed.close();
+        assertEquals(0, ResponseLeakDetector.getInstance().getTrackedCount());
+
+        Response read = client.newCall(new Request.Builder().url(mockServer.url("/read")).build()).execute();
+        byte[] buffer = new byte[16];
+        while (read.body().byteStream().read(buffer) != -1) {
+            // Read the body to the end without closing it
+        }
+        assertEquals(0, ResponseLeakDetector.getInstance().getTrackedCount());
+    }
+
+    @Test
+    public void testUnclosedBodyIsReportedOnceCollected() throws Exception {
+        mockServer.enqueue(new MockResponse().setBody("leaked"));
+        Request.Builder requestBuilder = new Request.Builder().url(mockServer.url("/leaked"));
+        requestBuilder.tag(new CallTag(ResponseLeakDetector.getInstance().getAllocationSite()));
+
+        HttpClientManager.getInstance().getClient().newCall(requestBuilder.build()).execute();
+        assertEquals(1, ResponseLeakDetector.getInstance().getTrackedCount());
+
+        int leaks = 0;
+        for (int i = 0; i < 50 && leaks == 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+            leaks = ResponseLeakDetector.getInstance().reportLeaks();
+        }
+        assertEquals(1, leaks);
+        assertEquals(0, ResponseLeakDetector.getInstance().getTrackedCount());
+    }
+
+    @Test
+    public void testDisabledDetectorDoesNotTrack() throws Exception {
+        ResponseLeakDetector.getInstance().setEnabled(false);
+        mockServer.enqueue(new MockResponse().setBody("untracked"));
+
+        Response response = HttpClientManager.getInstance().getClient()
+                .newCall(new Request.Builder().url(mockServer.url("/untracked")).build()).execute();
+        assertEquals(0, ResponseLeakDetector.getInstance().getTrackedCount());
+        assertTrue(response.body().string().equals("untracked"));
+    }
+}
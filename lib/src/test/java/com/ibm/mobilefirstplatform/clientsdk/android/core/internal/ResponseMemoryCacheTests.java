@@ -0,0 +1,98 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+
+public class ResponseMemoryCacheTests {
+
+    private ResponseMemoryCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ResponseMemoryCache();
+        cache.setMaxSize(100);
+    }
+
+    @Test
+    public void testKeyIncludesAuthorization() {
+        assertEquals("http://a/b", ResponseMemoryCache.key("http://a/b", null));
+        assertEquals("http://a/b\nBearer 1", ResponseMemoryCache.key("http://a/b", "Bearer 1"));
+    }
+
+    @Test
+    public void testGetCountsHitsAndMisses() {
+        ResponseImpl response = mock(ResponseImpl.class);
+        assertNull(cache.get("a"));
+
+        cache.put("a", response, 10, 60000);
+        assertSame(response, cache.get("a"));
+        assertSame(response, cache.get("a"));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemoved() throws Exception {
+        cache.put("a", mock(ResponseImpl.class), 10, 1);
+        Thread.sleep(10);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        ResponseImpl a = mock(ResponseImpl.class);
+        cache.put("a", a, 40, 60000);
+        cache.put("b", mock(ResponseImpl.class), 40, 60000);
+        cache.get("a");
+        cache.put("c", mock(ResponseImpl.class), 40, 60000);
+
+        assertSame(a, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(80, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testOversizedResponseIsNotCached() {
+        cache.put("a", mock(ResponseImpl.class), 101, 60000);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testClearAndShrink() {
+        cache.put("a", mock(ResponseImpl.class), 40, 60000);
+        cache.put("b", mock(ResponseImpl.class), 40, 60000);
+
+        cache.setMaxSize(50);
+        assertNull(cache.get("a"));
+        assertEquals(40, cache.getSize());
+
+        cache.clear();
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.getSize());
+    }
+}
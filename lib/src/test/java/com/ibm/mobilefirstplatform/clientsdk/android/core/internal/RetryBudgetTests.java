@@ -0,0 +1,58 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import org.junit.Test;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+
+public class RetryBudgetTests {
+
+    @Test
+    public void testReserveIsSpentThenRefilledByRequests() {
+        RetryBudget budget = new RetryBudget();
+
+        for (int i = 0; i < RetryBudget.MAX_BALANCE; i++) {
+            assertTrue(budget.tryRetry());
+        }
+        assertFalse(budget.tryRetry());
+        assertEquals(1, budget.getRejectedCount());
+
+        // With the default ratio, every 5 requests allow one more retry
+        for (int i = 0; i < 5; i++) {
+            budget.recordRequest();
+        }
+        assertTrue(budget.tryRetry());
+        assertFalse(budget.tryRetry());
+    }
+
+    @Test
+    public void testBalanceIsCapped() {
+        RetryBudget budget = new RetryBudget();
+        budget.setRatio(1);
+
+        for (int i = 0; i < 100; i++) {
+            budget.recordRequest();
+        }
+
+        int retries = 0;
+        while (budget.tryRetry()) {
+            retries++;
+        }
+        assertEquals((int)RetryBudget.MAX_BALANCE, retries);
+    }
+}
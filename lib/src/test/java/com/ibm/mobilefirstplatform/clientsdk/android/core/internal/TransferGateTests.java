@@ -0,0 +1,170 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.core.internal;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkConnectionType;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.NetworkMonitor;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.Response;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.ResponseListener;
+import com.ibm.mobilefirstplatform.clientsdk.android.core.api.TransferConstraint;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class TransferGateTests {
+
+    private NetworkMonitor networkMonitor;
+    private TransferGate transferGate;
+    private MockWebServer mockServer;
+
+    @Before
+    public void setUp() throws Exception {
+        networkMonitor = mock(NetworkMonitor.class);
+        transferGate = new TransferGate();
+        transferGate.setNetworkMonitor(networkMonitor);
+        TransferGate.install(transferGate);
+
+        mockServer = new MockWebServer();
+        mockServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TransferGate.disable();
+        mockServer.shutdown();
+    }
+
+    @Test
+    public void testConstraints() {
+        when(networkMonitor.getCurrentConnectionType()).thenReturn(NetworkConnectionType.ETHERNET);
+        when(networkMonitor.isActiveNetworkMetered()).thenReturn(false);
+
+        assertTrue(transferGate.allows(TransferConstraint.ANY));
+        assertTrue(transferGate.allows(TransferConstraint.UNMETERED));
+        assertFalse(transferGate.allows(TransferConstraint.WIFI_ONLY));
+
+        when(networkMonitor.getCurrentConnectionType()).thenReturn(NetworkConnectionType.MOBILE);
+        when(networkMonitor.isActiveNetworkMetered()).thenReturn(true);
+
+        assertTrue(transferGate.allows(TransferConstraint.ANY));
+        assertFalse(transferGate.allows(TransferConstraint.UNMETERED));
+    }
+
+    @Test
+    public void testRequestWaitsForQualifyingNetwork() throws Exception {
+        mockServer.enqueue(new MockResponse().setBody("synced"));
+        setConnection(NetworkConnectionType.MOBILE);
+
+        Result result = send(TransferConstraint.WIFI_ONLY);
+        assertEquals(1, transferGate.getWaitingCount());
+        assertFalse(result.done.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(0, mockServer.getRequestCount());
+
+        setConnection(NetworkConnectionType.WIFI);
+        transferGate.networkChanged(NetworkConnectionType.WIFI);
+
+        assertTrue(result.done.await(2, TimeUnit.SECONDS));
+        assertEquals("synced", result.text);
+        assertEquals(0, transferGate.getWaitingCount());
+        assertEquals(0, transferGate.getRunningCount());
+    }
+
+    @Test
+    public void testTransferIsPausedAndResumedOnNetworkChange() throws Exception {
+        mockServer.enqueue(new MockResponse().setBody("interrupted").setBodyDelay(3, TimeUnit.SECONDS));
+        mockServer.enqueue(new MockResponse().setBody("complete"));
+        setConnection(NetworkConnectionType.WIFI);
+
+        Result result = send(TransferConstraint.WIFI_ONLY);
+        assertNotNull(mockServer.takeRequest(2, TimeUnit.SECONDS));
+
+        setConnection(NetworkConnectionType.MOBILE);
+        transferGate.networkChanged(NetworkConnectionType.MOBILE);
+
+        // The cancelled call is not reported, and the request waits for Wifi again
+        assertFalse(result.done.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(1, transferGate.getWaitingCount());
+
+        setConnection(NetworkConnectionType.WIFI);
+        transferGate.networkChanged(NetworkConnectionType.WIFI);
+
+        assertTrue(result.done.await(2, TimeUnit.SECONDS));
+        assertNull(result.error);
+        assertEquals("complete", result.text);
+        assertEquals(2, mockServer.getRequestCount());
+    }
+
+    @Test
+    public void testDisablingSendsWaitingRequests() throws Exception {
+        mockServer.enqueue(new MockResponse().setBody("released"));
+        setConnection(NetworkConnectionType.NO_CONNECTION);
+
+        Result result = send(TransferConstraint.UNMETERED);
+        assertEquals(1, transferGate.getWaitingCount());
+
+        TransferGate.disable();
+
+        assertTrue(result.done.await(2, TimeUnit.SECONDS));
+        assertEquals("released", result.text);
+    }
+
+    private void setConnection(NetworkConnectionType connectionType) {
+        when(networkMonitor.getCurrentConnectionType()).thenReturn(connectionType);
+        when(networkMonitor.isActiveNetworkMetered()).thenReturn(connectionType != NetworkConnectionType.WIFI);
+    }
+
+    private Result send(TransferConstraint constraint) {
+        BaseRequest request = new BaseRequest(mockServer.url("/sync").toString(), BaseRequest.GET);
+        request.setTransferConstraint(constraint);
+
+        final Result result = new Result();
+        request.send(new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                result.text = response.getResponseText();
+                result.done.countDown();
+            }
+
+            @Override
+            public void onFailure(Response response, Throwable t, JSONObject extendedInfo) {
+                result.error = t;
+                result.done.countDown();
+            }
+        });
+        return result;
+    }
+
+    private static class Result {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String text;
+        volatile Throwable error;
+    }
+}
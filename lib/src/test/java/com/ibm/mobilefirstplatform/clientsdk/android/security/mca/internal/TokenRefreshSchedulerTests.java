@@ -0,0 +1,145 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okio.ByteString;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+
+public class TokenRefreshSchedulerTests {
+
+    // A JWT whose payload is base64url encoded without padding, like the ones the server returns
+    private static String token(long expSeconds) {
+        String payload = ByteString.encodeUtf8("{\"exp\":" + expSeconds + ",\"imf.user\":{\"id\":\"a?b>\"}}").base64Url();
+        return "eyJhbGciOiJSUzI1NiJ9." + payload.replace("=", "") + ".signature";
+    }
+
+    private static String token(long iatSeconds, long expSeconds) {
+        String payload = ByteString.encodeUtf8("{\"iat\":" + iatSeconds + ",\"exp\":" + expSeconds + "}").base64Url();
+        return "eyJhbGciOiJSUzI1NiJ9." + payload.replace("=", "") + ".signature";
+    }
+
+    @Test
+    public void testExpirationIsDecodedFromToken() {
+        assertEquals(1500000000000L, TokenRefreshScheduler.getExpiration(token(1500000000L)));
+        assertEquals(0, TokenRefreshScheduler.getExpiration("not a token"));
+        assertEquals(0, TokenRefreshScheduler.getExpiration("a.bm90IGpzb24.c"));
+        assertEquals(0, TokenRefreshScheduler.getExpiration(null));
+    }
+
+    @Test
+    public void testTokensExpireAtTheEarlierExpiration() {
+        TokenRefreshScheduler scheduler = new TokenRefreshScheduler(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        long now = System.currentTimeMillis() / 1000;
+        scheduler.setTokens(token(now + 3600), token(now + 600));
+        assertEquals((now + 600) * 1000, scheduler.getExpiration());
+        assertFalse(scheduler.isExpired());
+
+        scheduler.setTokens(token(now - 10), token(now + 600));
+        assertTrue(scheduler.isExpired());
+
+        scheduler.clear();
+        assertFalse(scheduler.isExpired());
+    }
+
+    @Test
+    public void testRefreshRunsSkewAheadOfExpiration() throws InterruptedException {
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        TokenRefreshScheduler scheduler = new TokenRefreshScheduler(new Runnable() {
+            @Override
+            public void run() {
+                refreshed.countDown();
+            }
+        });
+        scheduler.setSkew(1400);
+
+        // Expires in 2 to 3 seconds, so the refresh is due in 1 to 1.6 seconds
+        long expiration = System.currentTimeMillis() / 1000 + 3;
+        scheduler.setTokens(token(expiration), token(expiration));
+        assertFalse(refreshed.await(500, TimeUnit.MILLISECONDS));
+        assertTrue(refreshed.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLongSkewRefreshesHalfwayThroughLifetime() throws InterruptedException {
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        TokenRefreshScheduler scheduler = new TokenRefreshScheduler(new Runnable() {
+            @Override
+            public void run() {
+                refreshed.countDown();
+            }
+        });
+
+        // The default skew is longer than the lifetime, which would otherwise refresh the tokens right away
+        long expiration = System.currentTimeMillis() / 1000 + 3;
+        scheduler.setTokens(token(expiration), token(expiration));
+        assertFalse(refreshed.await(500, TimeUnit.MILLISECONDS));
+        assertTrue(refreshed.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTokenLifetimeIsCountedFromReceiptWhenClocksDiffer() throws InterruptedException {
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        TokenRefreshScheduler scheduler = new TokenRefreshScheduler(new Runnable() {
+            @Override
+            public void run() {
+                refreshed.countDown();
+            }
+        });
+        scheduler.setSkew(1000);
+
+        // The device clock is a day ahead of the server, so the exp claim of a new 3 second token already passed
+        long serverNow = System.currentTimeMillis() / 1000 - 24 * 60 * 60;
+        String token = token(serverNow, serverNow + 3);
+        long receivedAt = System.currentTimeMillis();
+        scheduler.setTokens(token, token);
+        assertFalse(scheduler.isExpired());
+        assertTrue(scheduler.getExpiration() >= receivedAt + 3000);
+        assertTrue(refreshed.await(3, TimeUnit.SECONDS));
+
+        // Saved tokens were received at an unknown time, so only their exp claim can be trusted
+        scheduler.restoreTokens(token, token);
+        assertTrue(scheduler.isExpired());
+    }
+
+    @Test
+    public void testClearCancelsRefresh() throws InterruptedException {
+        final CountDownLatch refreshed = new CountDownLatch(1);
+        TokenRefreshScheduler scheduler = new TokenRefreshScheduler(new Runnable() {
+            @Override
+            public void run() {
+                refreshed.countDown();
+            }
+        });
+        scheduler.setSkew(0);
+
+        long expiration = System.currentTimeMillis() / 1000 + 2;
+        scheduler.setTokens(token(expiration), token(expiration));
+        scheduler.clear();
+        assertFalse(refreshed.await(2500, TimeUnit.MILLISECONDS));
+    }
+}
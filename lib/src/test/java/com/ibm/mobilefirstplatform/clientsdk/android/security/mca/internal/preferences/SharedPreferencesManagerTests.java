@@ -0,0 +1,115 @@
+/*
+ *     Copyright 2017 IBM Corp.
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+package com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.preferences;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.ibm.mobilefirstplatform.clientsdk.android.security.mca.internal.encryption.StringEncryption;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+
+public class SharedPreferencesManagerTests {
+
+    private SharedPreferences.Editor editor;
+    private SharedPreferencesManager manager;
+
+    @Before
+    public void setUp() {
+        SharedPreferences sharedPreferences = mock(SharedPreferences.class);
+        when(sharedPreferences.getString(anyString(), (String)isNull())).thenReturn(null);
+        editor = mock(SharedPreferences.Editor.class);
+        when(editor.commit()).thenReturn(true);
+        when(sharedPreferences.edit()).thenReturn(editor);
+
+        Context context = mock(Context.class);
+        when(context.getSharedPreferences(anyString(), anyInt())).thenReturn(sharedPreferences);
+
+        manager = new SharedPreferencesManager(context, "test", Context.MODE_PRIVATE);
+        manager.setStringEncryption(new StringEncryption() {
+            @Override
+            public String encrypt(String str) {
+                return "encrypted:" + str;
+            }
+
+            @Override
+            public String decrypt(String str) {
+                return str.substring("encrypted:".length());
+            }
+        });
+    }
+
+    @Test
+    public void testValuesAreReadBeforeTheyAreWritten() {
+        SharedPreferencesManager.StringPreference preference = manager.new StringPreference("token");
+
+        preference.set("abc");
+        assertEquals("abc", preference.get());
+        verify(editor, never()).commit();
+
+        preference.clear();
+        assertNull(preference.get());
+    }
+
+    @Test
+    public void testFlushWritesPendingValuesInOneCommit() {
+        SharedPreferencesManager.StringPreference accessToken = manager.new StringPreference("accessToken");
+        SharedPreferencesManager.StringPreference idToken = manager.new StringPreference("idToken");
+
+        accessToken.set("first");
+        idToken.set("id");
+        accessToken.set("second");
+        idToken.clear();
+        manager.flush();
+
+        InOrder inOrder = inOrder(editor);
+        inOrder.verify(editor).putString("accessToken", "encrypted:second");
+        inOrder.verify(editor).remove("idToken");
+        inOrder.verify(editor).commit();
+        verify(editor, never()).putString("accessToken", "encrypted:first");
+
+        // Nothing is left for the next flush
+        manager.flush();
+        verify(editor, times(1)).commit();
+    }
+
+    @Test
+    public void testValuesAreWrittenInTheBackground() {
+        SharedPreferencesManager.StringPreference accessToken = manager.new StringPreference("accessToken");
+        SharedPreferencesManager.StringPreference idToken = manager.new StringPreference("idToken");
+
+        accessToken.set("access");
+        idToken.set("id");
+
+        verify(editor, timeout(2000)).commit();
+        verify(editor).putString("accessToken", "encrypted:access");
+        verify(editor).putString("idToken", "encrypted:id");
+    }
+}